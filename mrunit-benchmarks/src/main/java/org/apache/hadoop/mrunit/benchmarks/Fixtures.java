@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mrunit.types.Pair;
+
+/**
+ * Deterministic input and output data shared by the benchmarks
+ */
+final class Fixtures {
+
+  /** number of distinct words, and therefore distinct keys after a map */
+  static final int VOCABULARY = 1000;
+
+  static final int WORDS_PER_LINE = 8;
+
+  private Fixtures() {
+    // dont create this class
+  }
+
+  static String word(final int i) {
+    return "word" + (i % VOCABULARY);
+  }
+
+  /**
+   * @param lineNumber
+   * @return a line of {@link #WORDS_PER_LINE} words
+   */
+  static Text line(final int lineNumber) {
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < WORDS_PER_LINE; i++) {
+      if (i > 0) {
+        sb.append(' ');
+      }
+      sb.append(word(lineNumber * 31 + i * 7));
+    }
+    return new Text(sb.toString());
+  }
+
+  /**
+   * @param records
+   * @return (offset, line) pairs as a TextInputFormat would produce
+   */
+  static List<Pair<LongWritable, Text>> lines(final int records) {
+    final List<Pair<LongWritable, Text>> lines = new ArrayList<Pair<LongWritable, Text>>(
+        records);
+    for (int i = 0; i < records; i++) {
+      lines.add(new Pair<LongWritable, Text>(new LongWritable(i), line(i)));
+    }
+    return lines;
+  }
+
+  /**
+   * @param records
+   * @return (word, count) pairs as a word count mapper would produce
+   */
+  static List<Pair<Text, LongWritable>> wordCounts(final int records) {
+    final List<Pair<Text, LongWritable>> counts = new ArrayList<Pair<Text, LongWritable>>(
+        records);
+    for (int i = 0; i < records; i++) {
+      counts.add(new Pair<Text, LongWritable>(new Text(word(i * 7)),
+          new LongWritable(i)));
+    }
+    return counts;
+  }
+}
@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.lib.TokenCountMapper;
+import org.apache.hadoop.mapreduce.lib.map.TokenCounterMapper;
+import org.apache.hadoop.mrunit.MapDriver;
+import org.apache.hadoop.mrunit.types.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of a full MapDriver.run for the mapred and mapreduce APIs, using a word
+ * count mapper emitting {@link Fixtures#WORDS_PER_LINE} outputs per input
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+@SuppressWarnings("deprecation")
+public class MapDriverBenchmark {
+
+  private MapDriver<LongWritable, Text, Text, LongWritable> mapredDriver;
+  private org.apache.hadoop.mrunit.mapreduce.MapDriver<Object, Text, Text, IntWritable> mapreduceDriver;
+
+  @Setup
+  public void setUp() {
+    mapredDriver = MapDriver.newMapDriver(
+        new TokenCountMapper<LongWritable>()).withInput(new LongWritable(0),
+        Fixtures.line(0));
+    mapreduceDriver = org.apache.hadoop.mrunit.mapreduce.MapDriver
+        .newMapDriver(new TokenCounterMapper());
+    mapreduceDriver.withInput(new LongWritable(0), Fixtures.line(0));
+  }
+
+  @Benchmark
+  public List<Pair<Text, LongWritable>> mapredRun() throws IOException {
+    return mapredDriver.run();
+  }
+
+  @Benchmark
+  public List<Pair<Text, IntWritable>> mapreduceRun() throws IOException {
+    return mapreduceDriver.run();
+  }
+}
@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.lib.map.TokenCounterMapper;
+import org.apache.hadoop.mapreduce.lib.reduce.IntSumReducer;
+import org.apache.hadoop.mrunit.MapReduceDriverBase;
+import org.apache.hadoop.mrunit.mapreduce.MapReduceDriver;
+import org.apache.hadoop.mrunit.types.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End to end cost of a mapreduce API word count over the given number of input
+ * lines, shuffling the map outputs as objects, in binary, in binary with
+ * {@link #SPILL_MEMORY_BYTES} of memory before spilling, or in binary after a
+ * map sort buffer of {@link #SORT_MB} combining each spill. The inputs are
+ * mapped in mapParallelism splits at once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MapReduceDriverBenchmark {
+
+  static final long SPILL_MEMORY_BYTES = 8 << 20;
+
+  static final int SORT_MB = 4;
+
+  @Param({ "1000", "100000" })
+  public int records;
+
+  @Param({ "object", "binary", "spilling", "combining" })
+  public String shuffle;
+
+  @Param({ "1", "4" })
+  public int mapParallelism;
+
+  private MapReduceDriver<Object, Text, Text, IntWritable, Text, IntWritable> driver;
+
+  @Setup
+  public void setUp() {
+    driver = MapReduceDriver.newMapReduceDriver(new TokenCounterMapper(),
+        new IntSumReducer<Text>());
+    driver.setMapParallelism(mapParallelism);
+    if (!"object".equals(shuffle)) {
+      driver.getConfiguration().setBoolean(
+          MapReduceDriverBase.BINARY_SHUFFLE_KEY, true);
+    }
+    if ("spilling".equals(shuffle)) {
+      driver.getConfiguration().setLong(
+          MapReduceDriverBase.SHUFFLE_MEMORY_BYTES_KEY, SPILL_MEMORY_BYTES);
+    }
+    if ("combining".equals(shuffle)) {
+      driver.getConfiguration().setBoolean(
+          MapReduceDriverBase.MAP_SORT_BUFFER_KEY, true);
+      driver.getConfiguration().setInt("io.sort.mb", SORT_MB);
+      driver.setCombiner(new IntSumReducer<Text>());
+    }
+    for (final Pair<LongWritable, Text> line : Fixtures.lines(records)) {
+      driver.addInput(line.getFirst(), line.getSecond());
+    }
+  }
+
+  @Benchmark
+  public List<Pair<Text, IntWritable>> run() throws IOException {
+    return driver.run();
+  }
+}
@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mrunit.internal.mapreduce.MockMapContextWrapper;
+import org.apache.hadoop.mrunit.internal.mapreduce.MockReduceContextWrapper;
+import org.apache.hadoop.mrunit.internal.output.MockOutputCollector;
+import org.apache.hadoop.mrunit.types.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of reading every input through the mapreduce mock contexts, with
+ * nothing done per record. The Mockito variant uses values of a class a real
+ * reduce context cannot deserialize, so the Mockito fallback context is used.
+ * Each run reads a copy of the inputs as older contexts consumed their list.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MockContextBenchmark {
+
+  @Param({ "100000", "1000000" })
+  public int records;
+
+  private Configuration conf;
+  private List<Pair<LongWritable, Text>> mapInputs;
+  private List<Pair<Text, List<LongWritable>>> reduceInputs;
+  private List<Pair<Text, List<Object>>> mixedReduceInputs;
+
+  @Setup
+  public void setUp() {
+    conf = new Configuration();
+    final Text line = Fixtures.line(0);
+    mapInputs = new ArrayList<Pair<LongWritable, Text>>(records);
+    reduceInputs = new ArrayList<Pair<Text, List<LongWritable>>>(records);
+    mixedReduceInputs = new ArrayList<Pair<Text, List<Object>>>(records);
+    for (int i = 0; i < records; i++) {
+      final LongWritable offset = new LongWritable(i);
+      mapInputs.add(new Pair<LongWritable, Text>(offset, line));
+      reduceInputs.add(new Pair<Text, List<LongWritable>>(line, Collections
+          .singletonList(offset)));
+      mixedReduceInputs.add(new Pair<Text, List<Object>>(line, Collections
+          .<Object> singletonList(i % 2 == 0 ? offset : line)));
+    }
+  }
+
+  @Benchmark
+  public long mapContext() throws IOException, InterruptedException {
+    final Mapper<LongWritable, Text, Text, Text>.Context context = new MockMapContextWrapper<LongWritable, Text, Text, Text>(
+        new ArrayList<Pair<LongWritable, Text>>(mapInputs), new Counters(),
+        conf, new MockOutputCollector<Text, Text>(conf)).getMockContext();
+    long read = 0;
+    while (context.nextKeyValue()) {
+      read += context.getCurrentKey().get();
+    }
+    return read;
+  }
+
+  @Benchmark
+  public long reduceContext() throws IOException, InterruptedException {
+    final Reducer<Text, LongWritable, Text, Text>.Context context = new MockReduceContextWrapper<Text, LongWritable, Text, Text>(
+        new ArrayList<Pair<Text, List<LongWritable>>>(reduceInputs),
+        new Counters(), conf, new MockOutputCollector<Text, Text>(conf))
+        .getMockContext();
+    long read = 0;
+    while (context.nextKey()) {
+      for (final LongWritable value : context.getValues()) {
+        read += value.get();
+      }
+    }
+    return read;
+  }
+
+  @Benchmark
+  public long mockitoReduceContext() throws IOException,
+      InterruptedException {
+    final Reducer<Text, Object, Text, Text>.Context context = new MockReduceContextWrapper<Text, Object, Text, Text>(
+        new ArrayList<Pair<Text, List<Object>>>(mixedReduceInputs),
+        new Counters(), conf, new MockOutputCollector<Text, Text>(conf))
+        .getMockContext();
+    long read = 0;
+    while (context.nextKey()) {
+      for (final Object value : context.getValues()) {
+        read += value.hashCode();
+      }
+    }
+    return read;
+  }
+}
@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mrunit.internal.output.MockOutputCollector;
+import org.apache.hadoop.mrunit.types.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per record cost of {@link MockOutputCollector#collect(Object, Object)}, the
+ * sink behind every OutputCollector and Context.write in the drivers
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MockOutputCollectorBenchmark {
+
+  private static final int BATCH = 1000;
+
+  private Configuration conf;
+  private List<Pair<Text, LongWritable>> outputs;
+
+  @Setup
+  public void setUp() {
+    conf = new Configuration();
+    outputs = Fixtures.wordCounts(BATCH);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public List<Pair<Text, LongWritable>> collect() throws IOException {
+    final MockOutputCollector<Text, LongWritable> collector = new MockOutputCollector<Text, LongWritable>(
+        conf);
+    for (final Pair<Text, LongWritable> output : outputs) {
+      collector.collect(output.getFirst(), output.getSecond());
+    }
+    return collector.getOutputs();
+  }
+}
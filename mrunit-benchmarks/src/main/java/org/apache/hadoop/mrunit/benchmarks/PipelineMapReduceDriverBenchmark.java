@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.lib.IdentityMapper;
+import org.apache.hadoop.mapred.lib.IdentityReducer;
+import org.apache.hadoop.mapred.lib.LongSumReducer;
+import org.apache.hadoop.mapred.lib.TokenCountMapper;
+import org.apache.hadoop.mrunit.PipelineMapReduceDriver;
+import org.apache.hadoop.mrunit.types.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End to end cost of a two job pipeline: a word count followed by an identity
+ * job over its results
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+@SuppressWarnings("deprecation")
+public class PipelineMapReduceDriverBenchmark {
+
+  @Param({ "100", "10000" })
+  public int records;
+
+  private PipelineMapReduceDriver<LongWritable, Text, Text, LongWritable> driver;
+
+  @Setup
+  public void setUp() {
+    driver = PipelineMapReduceDriver.newPipelineMapReduceDriver();
+    driver.withMapReduce(new TokenCountMapper<LongWritable>(),
+        new LongSumReducer<Text>());
+    driver.withMapReduce(new IdentityMapper<Text, LongWritable>(),
+        new IdentityReducer<Text, LongWritable>());
+    for (final Pair<LongWritable, Text> line : Fixtures.lines(records)) {
+      driver.addInput(line);
+    }
+  }
+
+  @Benchmark
+  public List<Pair<Text, LongWritable>> run() throws IOException {
+    return driver.run();
+  }
+}
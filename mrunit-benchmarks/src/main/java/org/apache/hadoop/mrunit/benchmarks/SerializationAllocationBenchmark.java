@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.mrunit.internal.io.Serialization;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Bytes allocated by a {@link Serialization#copy(Object, Object)} into an
+ * existing record, over a range of record sizes. Run with
+ * 
+ * <pre>
+ * java -jar target/benchmarks-hadoop1.jar SerializationAllocation -prof gc
+ * </pre>
+ * 
+ * and read gc.alloc.rate.norm, the bytes allocated per copy. Copy buffers are
+ * reused so it should not grow with the record size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationAllocationBenchmark {
+
+  @Param({ "16", "1024", "65536" })
+  public int recordBytes;
+
+  private Serialization serialization;
+  private BytesWritable record;
+  private BytesWritable copy;
+
+  @Setup
+  public void setUp() {
+    serialization = new Serialization(new Configuration());
+    final byte[] bytes = new byte[recordBytes];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) i;
+    }
+    record = new BytesWritable(bytes);
+    copy = new BytesWritable();
+  }
+
+  @Benchmark
+  public BytesWritable copyInto() {
+    return serialization.copy(record, copy);
+  }
+}
@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.serializer.Deserializer;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.hadoop.mrunit.internal.io.Serialization;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of a single {@link Serialization#copy(Object)}, which every driver pays
+ * at least twice per input and output record
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+  private Configuration conf;
+  private Serialization serialization;
+  private Text text;
+  private LongWritable longWritable;
+  private DataOutputBuffer outputBuffer;
+  private DataInputBuffer inputBuffer;
+  private Serializer<Text> serializer;
+  private Deserializer<Text> deserializer;
+
+  @Setup
+  public void setUp() throws IOException {
+    conf = new Configuration();
+    serialization = new Serialization(conf);
+    text = Fixtures.line(42);
+    longWritable = new LongWritable(42);
+
+    final SerializationFactory factory = new SerializationFactory(conf);
+    outputBuffer = new DataOutputBuffer();
+    inputBuffer = new DataInputBuffer();
+    serializer = factory.getSerializer(Text.class);
+    deserializer = factory.getDeserializer(Text.class);
+    serializer.open(outputBuffer);
+    deserializer.open(inputBuffer);
+  }
+
+  @Benchmark
+  public Text copyText() {
+    return serialization.copy(text);
+  }
+
+  @Benchmark
+  public LongWritable copyLongWritable() {
+    return serialization.copy(longWritable);
+  }
+
+  @Benchmark
+  public Text copyTextInto() {
+    return serialization.copy(text, new Text());
+  }
+
+  /** the path taken by TestDriver.copy for every addInput / addOutput */
+  @Benchmark
+  public Text copyTextWithConf() {
+    return serialization.copyWithConf(text, conf);
+  }
+
+  /**
+   * a copy through the factory's opened serializer and deserializer, the
+   * reference for the Writable copier
+   */
+  @Benchmark
+  public Text copyTextThroughSerializer() throws IOException {
+    outputBuffer.reset();
+    serializer.serialize(text);
+    inputBuffer.reset(outputBuffer.getData(), outputBuffer.getLength());
+    return deserializer.deserialize(null);
+  }
+}
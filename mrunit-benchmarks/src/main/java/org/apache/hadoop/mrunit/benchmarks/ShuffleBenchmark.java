@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.benchmarks;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mrunit.MapReduceDriver;
+import org.apache.hadoop.mrunit.MapReduceDriverBase;
+import org.apache.hadoop.mrunit.types.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of {@link MapReduceDriverBase#shuffle(List)} and
+ * {@link MapReduceDriverBase#binaryShuffle(List)} grouping word count style
+ * map outputs over {@link Fixtures#VOCABULARY} distinct keys
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ShuffleBenchmark {
+
+  @Param({ "1000", "100000" })
+  public int records;
+
+  private MapReduceDriver<Text, LongWritable, Text, LongWritable, Text, LongWritable> driver;
+  private List<Pair<Text, LongWritable>> mapOutputs;
+
+  @Setup
+  public void setUp() {
+    driver = MapReduceDriver.newMapReduceDriver();
+    mapOutputs = Fixtures.wordCounts(records);
+  }
+
+  @Benchmark
+  public List<Pair<Text, List<LongWritable>>> shuffle() {
+    return driver.shuffle(mapOutputs);
+  }
+
+  /** reads every key and value of the groups, as a reducer would */
+  @Benchmark
+  public void binaryShuffle(final Blackhole blackhole) throws IOException {
+    final Iterator<Pair<Text, List<LongWritable>>> groups = driver
+        .binaryShuffle(mapOutputs);
+    while (groups.hasNext()) {
+      final Pair<Text, List<LongWritable>> group = groups.next();
+      blackhole.consume(group.getFirst());
+      for (final LongWritable value : group.getSecond()) {
+        blackhole.consume(value);
+      }
+    }
+  }
+}
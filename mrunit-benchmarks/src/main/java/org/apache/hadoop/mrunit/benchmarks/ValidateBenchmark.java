@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mrunit.MapDriver;
+import org.apache.hadoop.mrunit.TestDriver;
+import org.apache.hadoop.mrunit.types.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of {@link TestDriver} output validation on a passing test, with and
+ * without ordering
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ValidateBenchmark {
+
+  @Param({ "1000", "100000" })
+  public int records;
+
+  @Param({ "true", "false" })
+  public boolean orderMatters;
+
+  private ValidatingDriver driver;
+  private List<Pair<Text, LongWritable>> outputs;
+
+  @Setup
+  public void setUp() {
+    driver = new ValidatingDriver();
+    for (final Pair<Text, LongWritable> expected : Fixtures
+        .wordCounts(records)) {
+      driver.addOutput(expected);
+    }
+    outputs = Fixtures.wordCounts(records);
+    if (!orderMatters) {
+      Collections.reverse(outputs);
+    }
+  }
+
+  @Benchmark
+  public void validate() {
+    driver.check(outputs, orderMatters);
+  }
+
+  /**
+   * Exposes the protected validate method, the driver is never run
+   */
+  static class ValidatingDriver extends
+      MapDriver<LongWritable, Text, Text, LongWritable> {
+    void check(final List<Pair<Text, LongWritable>> actual,
+        final boolean orderMatters) {
+      validate(new ArrayList<Pair<Text, LongWritable>>(actual), orderMatters);
+    }
+  }
+}
@@ -0,0 +1,222 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The latencies of the records of a phase, such as each call to map or to
+ * reduce, counted in buckets of logarithmic size as an HDR histogram does:
+ * each power of two nanoseconds is split into 32 buckets, so percentiles are
+ * within about 3% of the true latency. The slowest records are kept with
+ * their keys, to find the inputs a mapper or reducer is slow on.
+ * 
+ * A histogram is not thread safe, each thread timing records fills one of
+ * its own which are added together.
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  /** latencies below this each have a bucket of their own */
+  private static final int LINEAR_BUCKETS = 2 * SUB_BUCKETS;
+  private static final int BUCKETS = LINEAR_BUCKETS
+      + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+  private static final Comparator<Sample> FASTEST_FIRST = new Comparator<Sample>() {
+    @Override
+    public int compare(final Sample s1, final Sample s2) {
+      return s1.nanos < s2.nanos ? -1 : s1.nanos == s2.nanos ? 0 : 1;
+    }
+  };
+
+  private final long[] counts = new long[BUCKETS];
+  private final int slowest;
+  private final PriorityQueue<Sample> slowestSamples;
+  private long count;
+  private long totalNanos;
+  private long maxNanos;
+
+  /**
+   * @param slowest
+   *          the number of slowest records to keep the keys of
+   */
+  public LatencyHistogram(final int slowest) {
+    if (slowest < 0) {
+      throw new IllegalArgumentException(
+          "The number of slowest records must not be negative, not "
+              + slowest);
+    }
+    this.slowest = slowest;
+    slowestSamples = new PriorityQueue<Sample>(slowest + 1, FASTEST_FIRST);
+  }
+
+  /**
+   * @param nanos
+   *          the latency of a record
+   * @param key
+   *          the key of the record, only turned into a string if the record
+   *          is one of the slowest
+   */
+  public void record(final long nanos, final Object key) {
+    final long latency = Math.max(nanos, 0);
+    counts[bucket(latency)]++;
+    count++;
+    totalNanos += latency;
+    maxNanos = Math.max(maxNanos, latency);
+    if (slowestSamples.size() < slowest) {
+      slowestSamples.add(new Sample(latency, String.valueOf(key)));
+    } else if (slowest > 0 && latency > slowestSamples.peek().nanos) {
+      slowestSamples.poll();
+      slowestSamples.add(new Sample(latency, String.valueOf(key)));
+    }
+  }
+
+  /**
+   * Adds the records of other to this histogram, keeping the slowest of both
+   * 
+   * @param other
+   */
+  public void add(final LatencyHistogram other) {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] += other.counts[i];
+    }
+    count += other.count;
+    totalNanos += other.totalNanos;
+    maxNanos = Math.max(maxNanos, other.maxNanos);
+    for (final Sample sample : other.slowestSamples) {
+      if (slowestSamples.size() < slowest) {
+        slowestSamples.add(sample);
+      } else if (slowest > 0 && sample.nanos > slowestSamples.peek().nanos) {
+        slowestSamples.poll();
+        slowestSamples.add(sample);
+      }
+    }
+  }
+
+  /** @return a copy of this histogram */
+  public LatencyHistogram copy() {
+    final LatencyHistogram copy = new LatencyHistogram(slowest);
+    copy.add(this);
+    return copy;
+  }
+
+  private static int bucket(final long nanos) {
+    if (nanos < LINEAR_BUCKETS) {
+      return (int) nanos;
+    }
+    final int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+    return shift * SUB_BUCKETS + (int) (nanos >>> shift);
+  }
+
+  /** @return the highest latency counted in bucket */
+  private static long highest(final int bucket) {
+    if (bucket < LINEAR_BUCKETS) {
+      return bucket;
+    }
+    final int shift = bucket / SUB_BUCKETS - 1;
+    final long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+
+  /** @return the number of records */
+  public long getCount() {
+    return count;
+  }
+
+  /** @return the latency of every record added together */
+  public long getTotalNanos() {
+    return totalNanos;
+  }
+
+  public long getMaxNanos() {
+    return maxNanos;
+  }
+
+  /**
+   * @param percentile
+   *          above 0 and at most 100
+   * @return the latency that percentile of the records took at most, to
+   *         within a bucket, or 0 if there are no records
+   */
+  public long getPercentileNanos(final double percentile) {
+    if (!(percentile > 0 && percentile <= 100)) {
+      throw new IllegalArgumentException(
+          "A percentile must be above 0 and at most 100, not " + percentile);
+    }
+    final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(highest(i), maxNanos);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * @return the slowest records, slowest first, at most as many as were
+   *         asked to be kept
+   */
+  public List<Sample> getSlowest() {
+    final List<Sample> samples = new ArrayList<Sample>(slowestSamples);
+    Collections.sort(samples, Collections.reverseOrder(FASTEST_FIRST));
+    return samples;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%d record(s), p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms, "
+            + "slowest %s", count, getPercentileNanos(50) / 1e6,
+        getPercentileNanos(90) / 1e6, getPercentileNanos(99) / 1e6,
+        maxNanos / 1e6, getSlowest());
+  }
+
+  /**
+   * The latency of one record, with its key
+   */
+  public static final class Sample {
+    private final long nanos;
+    private final String key;
+
+    private Sample(final long nanos, final String key) {
+      this.nanos = nanos;
+      this.key = key;
+    }
+
+    public long getNanos() {
+      return nanos;
+    }
+
+    /** @return the key of the record, as a string */
+    public String getKey() {
+      return key;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s (%.3f ms)", key, nanos / 1e6);
+    }
+  }
+}
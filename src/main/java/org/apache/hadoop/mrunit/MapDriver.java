@@ -19,8 +19,12 @@ package org.apache.hadoop.mrunit;
 
 import static org.apache.hadoop.mrunit.internal.util.ArgumentChecker.returnNonNull;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -31,10 +35,13 @@ import org.apache.hadoop.mapred.InputFormat;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.Mapper;
 import org.apache.hadoop.mapred.OutputFormat;
+import org.apache.hadoop.mrunit.RunReport.Phase;
 import org.apache.hadoop.mrunit.internal.counters.CounterWrapper;
 import org.apache.hadoop.mrunit.internal.mapred.MockReporter;
+import org.apache.hadoop.mrunit.internal.output.CountingOutputCollector;
 import org.apache.hadoop.mrunit.internal.output.MockOutputCreator;
 import org.apache.hadoop.mrunit.internal.output.OutputCollectable;
+import org.apache.hadoop.mrunit.types.OutputDigest;
 import org.apache.hadoop.mrunit.types.Pair;
 
 /**
@@ -217,6 +224,88 @@ public class MapDriver<K1, V1, K2, V2> extends MapDriverBase<K1, V1, K2, V2> {
     return this;
   }
 
+  @Override
+  public MapDriver<K1, V1, K2, V2> withExpectedOutputDigest(
+      final OutputDigest digest) {
+    super.withExpectedOutputDigest(digest);
+    return this;
+  }
+
+  @Override
+  public MapDriver<K1, V1, K2, V2> withSerializedMatching(
+      final boolean serializedMatching) {
+    super.withSerializedMatching(serializedMatching);
+    return this;
+  }
+
+  @Override
+  public MapDriver<K1, V1, K2, V2> withRecordLatency(
+      final int slowestRecords) {
+    super.withRecordLatency(slowestRecords);
+    return this;
+  }
+
+  @Override
+  public MapDriver<K1, V1, K2, V2> withAllocationProfiling(
+      final boolean allocationProfiling) {
+    super.withAllocationProfiling(allocationProfiling);
+    return this;
+  }
+
+  @Override
+  public MapDriver<K1, V1, K2, V2> withMaxAllocatedBytesPerRecord(
+      final long maxAllocatedBytesPerRecord) {
+    super.withMaxAllocatedBytesPerRecord(maxAllocatedBytesPerRecord);
+    return this;
+  }
+
+  @Override
+  public MapDriver<K1, V1, K2, V2> withMaxRecordsLatency(
+      final long p99, final TimeUnit unit) {
+    super.withMaxRecordsLatency(p99, unit);
+    return this;
+  }
+
+  @Override
+  public MapDriver<K1, V1, K2, V2> withMinThroughput(
+      final double recordsPerSecond) {
+    super.withMinThroughput(recordsPerSecond);
+    return this;
+  }
+
+  @Override
+  public MapDriver<K1, V1, K2, V2> withMaxOutputAmplification(
+      final double ratio) {
+    super.withMaxOutputAmplification(ratio);
+    return this;
+  }
+
+  @Override
+  public MapDriver<K1, V1, K2, V2> withPerformanceRuns(
+      final int warmUpRuns, final int measuredRuns) {
+    super.withPerformanceRuns(warmUpRuns, measuredRuns);
+    return this;
+  }
+
+  @Override
+  public MapDriver<K1, V1, K2, V2> withPerformanceBaseline(
+      final File file, final String testName) {
+    super.withPerformanceBaseline(file, testName);
+    return this;
+  }
+
+  @Override
+  public MapDriver<K1, V1, K2, V2> withBaselineTolerance(
+      final double tolerance) {
+    super.withBaselineTolerance(tolerance);
+    return this;
+  }
+
+  @Override
+  protected List<Class<?>> getClassesUnderTest() {
+    return classesOf(getMapper());
+  }
+
   public MapDriver<K1, V1, K2, V2> withOutputFormat(
       final Class<? extends OutputFormat> outputFormatClass,
       final Class<? extends InputFormat> inputFormatClass) {
@@ -224,6 +313,17 @@ public class MapDriver<K1, V1, K2, V2> extends MapDriverBase<K1, V1, K2, V2> {
     return this;
   }
 
+  @Override
+  protected List<Pair<K2, V2>> runDiscardingCounters() throws IOException {
+    final Counters kept = getCounters();
+    setCounters(new Counters());
+    try {
+      return run();
+    } finally {
+      setCounters(kept);
+    }
+  }
+
   @Override
   public List<Pair<K2, V2>> run() throws IOException {
     if (inputKey == null || inputVal == null) {
@@ -233,18 +333,32 @@ public class MapDriver<K1, V1, K2, V2> extends MapDriverBase<K1, V1, K2, V2> {
       throw new IllegalStateException("No Mapper class was provided");
     }
 
-    final OutputCollectable<K2, V2> outputCollectable = mockOutputCreator
-        .createOutputCollectable(getConfiguration());
+    newRunReport();
+    final OutputCollectable<K2, V2> outputCollectable = createOutputCollectable(mockOutputCreator);
+    final CountingOutputCollector<K2, V2> output = new CountingOutputCollector<K2, V2>(
+        outputCollectable);
     final MockReporter reporter = new MockReporter(
         MockReporter.ReporterType.Mapper, getCounters());
 
-    if (myMapper instanceof Configurable) {
-      ((Configurable) myMapper).setConf(getConfiguration());
+    final RunReport.Timer map = startPhase(Phase.MAP);
+    try {
+      if (myMapper instanceof Configurable) {
+        ((Configurable) myMapper).setConf(getConfiguration());
+      }
+      myMapper.configure(new JobConf(getConfiguration()));
+      final Iterator<Pair<K1, V1>> inputs = timeRecords(Phase.MAP,
+          Collections.singletonList(new Pair<K1, V1>(inputKey, inputVal))
+              .iterator());
+      while (inputs.hasNext()) {
+        final Pair<K1, V1> input = inputs.next();
+        myMapper.map(input.getFirst(), input.getSecond(), output, reporter);
+      }
+      myMapper.close();
+      map.stop(1, output.getCount());
+    } finally {
+      map.close();
     }
-    myMapper.configure(new JobConf(getConfiguration()));
-    myMapper.map(inputKey, inputVal, outputCollectable, reporter);
-    myMapper.close();
-    return outputCollectable.getOutputs();
+    return getOutputs(outputCollectable);
   }
 
   @Override
@@ -145,9 +145,10 @@ public abstract class MapDriverBase<K1, V1, K2, V2> extends
   public void runTest(final boolean orderMatters) {
     LOG.debug("Mapping input (" + inputKey + ", " + inputVal + ")");
     try {
-      final List<Pair<K2, V2>> outputs = run();
+      final List<Pair<K2, V2>> outputs = runForTest();
       validate(outputs, orderMatters);
       validate(counterWrapper);
+      validate(getRunReport());
     } catch (final IOException ioe) {
       LOG.error("IOException in mapper", ioe);
       throw new RuntimeException("IOException in mapper: ", ioe);
@@ -23,16 +23,30 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.RawComparator;
 import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mrunit.internal.io.Serialization;
+import org.apache.hadoop.mrunit.internal.output.OutputCollectable;
+import org.apache.hadoop.mrunit.internal.shuffle.BinaryShuffle;
+import org.apache.hadoop.mrunit.internal.shuffle.Combiner;
+import org.apache.hadoop.mrunit.internal.shuffle.MapOutputBuffer;
+import org.apache.hadoop.mrunit.internal.util.ChainedIterator;
+import org.apache.hadoop.mrunit.internal.util.ParallelTasks;
+import org.apache.hadoop.mrunit.types.InstanceFactory;
+import org.apache.hadoop.mrunit.types.OutputSink;
 import org.apache.hadoop.mrunit.types.Pair;
+import org.apache.hadoop.util.ReflectionUtils;
 
 /**
  * Harness that allows you to test a Mapper and a Reducer instance together You
@@ -50,14 +64,51 @@ public abstract class MapReduceDriverBase<K1, V1, K2, V2, K3, V3> extends
 
   public static final Log LOG = LogFactory.getLog(MapReduceDriverBase.class);
 
+  /**
+   * Configuration key which, when true, makes the driver shuffle with
+   * {@link #binaryShuffle(List)} rather than {@link #shuffle(List)}
+   */
+  public static final String BINARY_SHUFFLE_KEY = "mrunit.shuffle.binary";
+
+  /**
+   * Configuration key for the bytes of serialized map outputs, and their
+   * index, the binary shuffle holds in memory before sorting them and
+   * spilling them to local disk. The spills are then merged into the reducer.
+   * When unset only 1GB is held.
+   */
+  public static final String SHUFFLE_MEMORY_BYTES_KEY = "mrunit.shuffle.memory.bytes";
+
+  /**
+   * Configuration key which, when true, makes the driver collect map outputs
+   * in a {@link MapOutputBuffer} of io.sort.mb as a map task does, running
+   * the combiner over each spill of the buffer rather than once over all the
+   * shuffled map outputs
+   */
+  public static final String MAP_SORT_BUFFER_KEY = "mrunit.map.sort.buffer";
+
+  /**
+   * The Hadoop 2 name of mapred.reduce.tasks, read first so either works in
+   * both versions
+   */
+  private static final String NUM_REDUCES_KEY = "mapreduce.job.reduces";
+
   protected List<Pair<K1, V1>> inputList = new ArrayList<Pair<K1, V1>>();
 
+  /** inputs read by the next run after those of inputList, may be null */
+  private Iterator<Pair<K1, V1>> inputIterator;
+
   /** Key group comparator */
   protected Comparator<K2> keyGroupComparator;
 
   /** Key value order comparator */
   protected Comparator<K2> keyValueOrderComparator;
 
+  /** the number of splits the inputs are mapped in, each on its own thread */
+  private int mapParallelism = 1;
+
+  /** the outputs of each reduce partition of the last run */
+  private List<List<Pair<K3, V3>>> partitionOutputs = Collections.emptyList();
+
   /**
    * Adds an input to send to the mapper
    * 
@@ -78,6 +129,40 @@ public abstract class MapReduceDriverBase<K1, V1, K2, V2, K3, V3> extends
     addInput(input.getFirst(), input.getSecond());
   }
 
+  /**
+   * Sets inputs to send to the Mapper as it asks for them, after any added
+   * one at a time. They are read once, by the next run, and are not copied
+   * or kept, so can be generated as they are read. With the binary shuffle
+   * and {@link #run(OutputSink)} only the shuffle is then held in memory.
+   * 
+   * @param inputs
+   *          replaces any set before
+   */
+  public void setInputs(final Iterator<Pair<K1, V1>> inputs) {
+    inputIterator = returnNonNull(inputs);
+  }
+
+  /**
+   * @return whether any inputs were added or set
+   */
+  protected boolean hasInputs() {
+    return !inputList.isEmpty() || inputIterator != null;
+  }
+
+  /**
+   * @return the inputs added followed by those set with
+   *         {@link #setInputs(Iterator)}, which are then forgotten
+   */
+  protected Iterator<Pair<K1, V1>> takeInputs() {
+    final Iterator<Pair<K1, V1>> inputs = inputIterator;
+    inputIterator = null;
+    if (inputs == null) {
+      return inputList.iterator();
+    }
+    return inputList.isEmpty() ? inputs : new ChainedIterator<Pair<K1, V1>>(
+        inputList.iterator(), inputs);
+  }
+
   /**
    * Adds an output (k, v) pair we expect from the Reducer
    * 
@@ -131,12 +216,41 @@ public abstract class MapReduceDriverBase<K1, V1, K2, V2, K3, V3> extends
   @Override
   public abstract List<Pair<K3, V3>> run() throws IOException;
 
+  /**
+   * Runs the job as {@link #run()} does, but sends each output of the Reducer
+   * to sink as it is collected rather than keeping them, and without any
+   * output format. With more than one reduce task the partitions call sink
+   * one at a time from their own threads, so the outputs of a partition are
+   * in order but interleave with those of the others.
+   * 
+   * @param sink
+   */
+  public abstract void run(OutputSink<K3, V3> sink) throws IOException;
+
+  /**
+   * @param sink
+   * @return an output collector passing every output to sink, holding its
+   *         lock so partitions can share it
+   */
+  protected static <K, V> OutputCollector<K, V> toCollector(
+      final OutputSink<K, V> sink) {
+    return new OutputCollector<K, V>() {
+      @Override
+      public void collect(final K key, final V value) throws IOException {
+        synchronized (sink) {
+          sink.collect(key, value);
+        }
+      }
+    };
+  }
+
   @Override
   public void runTest(final boolean orderMatters) {
     try {
-      final List<Pair<K3, V3>> reduceOutputs = run();
+      final List<Pair<K3, V3>> reduceOutputs = runForTest();
       validate(reduceOutputs, orderMatters);
       validate(counterWrapper);
+      validate(getRunReport());
     } catch (final IOException ioe) {
       LOG.error(ioe);
       throw new RuntimeException(ioe);
@@ -209,6 +323,456 @@ public abstract class MapReduceDriverBase<K1, V1, K2, V2, K3, V3> extends
     return outputKeyValuesList;
   }
 
+  /**
+   * Take the outputs from the Mapper and sort and group them as a reduce task
+   * would: serialized, sorted by the key order comparator and grouped by
+   * comparing neighbouring keys with the key group comparator, both through
+   * {@link RawComparator#compare(byte[], int, int, byte[], int, int)}. When
+   * unset the comparators of the job configuration are used, the group
+   * comparator defaulting to the order comparator. Each group is given its
+   * first key, and its values are deserialized as the reducer reads them
+   * with iteration reusing a single value instance.
+   * 
+   * Used in place of {@link #shuffle(List)} when {@link #BINARY_SHUFFLE_KEY}
+   * is true. The keys, and the values, must each be of a single class. Spills
+   * made on reaching {@link #SHUFFLE_MEMORY_BYTES_KEY} are deleted when the
+   * last group is read.
+   * 
+   * @param mapOutputs
+   *          An unordered list of (key, val) pairs from the mapper
+   * @return the sorted (key, list(val))'s to present to the reducer
+   */
+  public Iterator<Pair<K2, List<V2>>> binaryShuffle(
+      final List<Pair<K2, V2>> mapOutputs) throws IOException {
+    final BinaryShuffle<K2, V2> shuffle = newBinaryShuffle();
+    for (final Pair<K2, V2> mapOutput : mapOutputs) {
+      shuffle.collect(mapOutput.getFirst(), mapOutput.getSecond());
+    }
+    return shuffle.getGroups();
+  }
+
+  @SuppressWarnings("unchecked")
+  protected BinaryShuffle<K2, V2> newBinaryShuffle() {
+    return new BinaryShuffle<K2, V2>(getConfiguration(),
+        (RawComparator<K2>) keyValueOrderComparator,
+        (RawComparator<K2>) keyGroupComparator, getConfiguration().getLong(
+            SHUFFLE_MEMORY_BYTES_KEY, 0));
+  }
+
+  /**
+   * Adds the spills of a binary shuffle to the {@link ShuffleCounters}, from
+   * any reduce partition's thread
+   * 
+   * @param shuffle
+   */
+  protected synchronized void countSpills(final BinaryShuffle<?, ?> shuffle) {
+    counterWrapper.increment(ShuffleCounters.SPILLS, shuffle.getSpills());
+    counterWrapper.increment(ShuffleCounters.SPILLED_RECORDS,
+        shuffle.getSpilledRecords());
+    counterWrapper.increment(ShuffleCounters.SPILLED_BYTES,
+        shuffle.getSpilledBytes());
+  }
+
+  /**
+   * @param combiner
+   *          run over each spill, may be null
+   * @return a map output buffer sorting with the key order comparator
+   */
+  @SuppressWarnings("unchecked")
+  protected MapOutputBuffer<K2, V2> newMapOutputBuffer(
+      final Combiner<K2, V2> combiner) {
+    return new MapOutputBuffer<K2, V2>(getConfiguration(),
+        (RawComparator<K2>) keyValueOrderComparator, combiner);
+  }
+
+  /**
+   * Adds the spills of a map output buffer to the {@link ShuffleCounters}
+   * 
+   * @param buffer
+   */
+  protected void countMapSpills(final MapOutputBuffer<?, ?> buffer) {
+    counterWrapper.increment(ShuffleCounters.MAP_SPILLS, buffer.getSpills());
+    counterWrapper.increment(ShuffleCounters.MAP_SPILLED_RECORDS,
+        buffer.getSpilledRecords());
+    counterWrapper.increment(ShuffleCounters.MAP_SPILLED_BYTES,
+        buffer.getSpilledBytes());
+  }
+
+  /**
+   * @return whether {@link #MAP_SORT_BUFFER_KEY} is set in the configuration
+   */
+  protected boolean isMapSortBuffer() {
+    return getConfiguration().getBoolean(MAP_SORT_BUFFER_KEY, false);
+  }
+
+  /**
+   * @return whether {@link #BINARY_SHUFFLE_KEY} is set in the configuration
+   */
+  protected boolean isBinaryShuffle() {
+    return getConfiguration().getBoolean(BINARY_SHUFFLE_KEY, false);
+  }
+
+  /**
+   * Wraps the values of each shuffled key group so that iterating them copies
+   * every value into a single reused instance, as ReduceDriver does
+   * 
+   * @param groups
+   *          the output of {@link #shuffle(List)}
+   * @return the groups to present to the reducer
+   */
+  protected List<Pair<K2, List<V2>>> reuseValueInstances(
+      final List<Pair<K2, List<V2>>> groups) {
+    final Serialization serialization = new Serialization(getConfiguration());
+    final List<Pair<K2, List<V2>>> reusing = new ArrayList<Pair<K2, List<V2>>>(
+        groups.size());
+    for (final Pair<K2, List<V2>> group : groups) {
+      reusing.add(new Pair<K2, List<V2>>(group.getFirst(),
+          new ReduceDriverBase.ValueClassInstanceReuseList<V2>(group
+              .getSecond(), serialization)));
+    }
+    return reusing;
+  }
+
+  /**
+   * Logs each key group at debug level before it is reduced
+   * 
+   * @param groups
+   */
+  protected void logReduceInputs(final List<Pair<K2, List<V2>>> groups) {
+    if (!LOG.isDebugEnabled()) {
+      return;
+    }
+    for (final Pair<K2, List<V2>> group : groups) {
+      final StringBuilder sb = new StringBuilder();
+      formatValueList(group.getSecond(), sb);
+      LOG.debug("Reducing input (" + group.getFirst() + ", " + sb + ")");
+    }
+  }
+
+  /**
+   * Maps the inputs as mapParallelism input splits, each of them with a new
+   * instance of the mapper, and of the combiner if there is one, on a thread
+   * of its own. The inputs are split in order into splits of near equal
+   * size, and the outputs of the splits put together in split order, so the
+   * result is the same whatever order the splits finish in. With the map sort
+   * buffer each split has a buffer of its own, as a map task does.
+   * 
+   * The new instances come from the mapper and combiner factories when they
+   * are set on the driver, so that a mapper with constructor arguments or
+   * state set on it can be split. Otherwise they are created with the no
+   * argument constructor of the class of the mapper and combiner, so do not
+   * share any state set on the instances given to the driver. Counters are
+   * added to those of the driver as each split finishes.
+   * 
+   * @param mapParallelism
+   *          the number of splits, 1 maps every input with the mapper given
+   *          on the calling thread
+   */
+  public void setMapParallelism(final int mapParallelism) {
+    if (mapParallelism < 1) {
+      throw new IllegalArgumentException(
+          "Map parallelism must be at least 1, not " + mapParallelism);
+    }
+    this.mapParallelism = mapParallelism;
+  }
+
+  /**
+   * @return the number of splits the inputs are mapped in
+   */
+  public int getMapParallelism() {
+    return mapParallelism;
+  }
+
+  /**
+   * Maps one split of the inputs, on a thread of its own
+   */
+  protected interface SplitMapper<K1, V1, K2, V2> {
+    /**
+     * @param split
+     *          the inputs of the split, in order
+     * @return the map outputs of the split, in order
+     */
+    List<Pair<K2, V2>> map(List<Pair<K1, V1>> split) throws IOException;
+  }
+
+  @Override
+  protected void checkRepeatable() {
+    if (inputIterator != null) {
+      throw new IllegalStateException("Performance budgets need inputs "
+          + "added to the driver, not set as an iterator");
+    }
+  }
+
+  /**
+   * Splits the inputs as {@link #setMapParallelism(int)} describes and maps
+   * the splits at once, sending their outputs to output in split order
+   */
+  protected void runMapSplits(final SplitMapper<K1, V1, K2, V2> splitMapper,
+      final OutputCollector<K2, V2> output) throws IOException {
+    if (inputIterator != null) {
+      throw new IllegalStateException("Map parallelism of " + mapParallelism
+          + " needs inputs added to the driver, not set as an iterator");
+    }
+    final int splits = Math.min(mapParallelism, inputList.size());
+    final List<Callable<List<Pair<K2, V2>>>> tasks = new ArrayList<Callable<List<Pair<K2, V2>>>>(
+        splits);
+    for (int i = 0; i < splits; i++) {
+      final List<Pair<K1, V1>> split = inputList.subList(i * inputList.size()
+          / splits, (i + 1) * inputList.size() / splits);
+      tasks.add(new Callable<List<Pair<K2, V2>>>() {
+        @Override
+        public List<Pair<K2, V2>> call() throws IOException {
+          return splitMapper.map(split);
+        }
+      });
+    }
+    LOG.debug("Mapping " + inputList.size() + " inputs in " + splits
+        + " splits");
+    for (final List<Pair<K2, V2>> splitOutputs : ParallelTasks.run(tasks,
+        splits, "mrunit-map")) {
+      for (final Pair<K2, V2> splitOutput : splitOutputs) {
+        output.collect(splitOutput.getFirst(), splitOutput.getSecond());
+      }
+    }
+  }
+
+  /**
+   * @param object
+   *          a mapper or combiner
+   * @param factory
+   *          the factory of instances set on the driver, or null
+   * @return a new instance from factory, else of the class of object, for a
+   *         map split
+   * @throws IllegalStateException
+   *           if there is no factory and the class has no no argument
+   *           constructor
+   */
+  protected <T> T newSplitInstance(final T object,
+      final InstanceFactory<? extends T> factory) {
+    if (factory != null) {
+      return newInstance(factory, "split");
+    }
+    return newInstance(object, "Map parallelism of " + mapParallelism
+        + " needs", "split");
+  }
+
+  /**
+   * @param object
+   *          a reducer
+   * @param factory
+   *          the factory of instances set on the driver, or null
+   * @param partitions
+   * @return a new instance from factory, else of the class of object, for a
+   *         reduce partition
+   * @throws IllegalStateException
+   *           if there is no factory and the class has no no argument
+   *           constructor
+   */
+  protected <T> T newPartitionInstance(final T object,
+      final InstanceFactory<? extends T> factory, final int partitions) {
+    if (factory != null) {
+      return newInstance(factory, "partition");
+    }
+    return newInstance(object, partitions + " reduce tasks need", "partition");
+  }
+
+  private static <T> T newInstance(final InstanceFactory<? extends T> factory,
+      final String each) {
+    final T instance = factory.newInstance();
+    if (instance == null) {
+      throw new IllegalStateException("The factory "
+          + factory.getClass().getName() + " gave no instance for a " + each);
+    }
+    return instance;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T newInstance(final T object, final String need,
+      final String each) {
+    final Class<T> clazz = (Class<T>) object.getClass();
+    try {
+      clazz.getDeclaredConstructor();
+    } catch (final NoSuchMethodException e) {
+      throw new IllegalStateException(need + " a new instance of "
+          + clazz.getName() + " for each " + each
+          + ", but it has no no argument constructor and no factory of "
+          + "instances is set on the driver", e);
+    }
+    return ReflectionUtils.newInstance(clazz, null);
+  }
+
+  /**
+   * @return the number of reduce partitions, from mapreduce.job.reduces or
+   *         mapred.reduce.tasks
+   * @throws IllegalStateException
+   *           if it is less than 1, as the map outputs have to be reduced
+   */
+  protected int getNumReduceTasks() {
+    final Configuration conf = getConfiguration();
+    final int reduces = conf.getInt(NUM_REDUCES_KEY,
+        new JobConf(conf).getNumReduceTasks());
+    if (reduces < 1) {
+      throw new IllegalStateException(
+          "A MapReduceDriver needs at least 1 reduce task, not " + reduces);
+    }
+    return reduces;
+  }
+
+  /**
+   * Routes a map output to a reduce partition, as the Partitioner of either
+   * API does
+   */
+  protected interface PartitionFunction<K2, V2> {
+    /**
+     * @return the partition of the map output, from 0 to numPartitions - 1
+     */
+    int getPartition(K2 key, V2 value, int numPartitions);
+  }
+
+  /**
+   * Reduces one partition, on a thread of its own when there is more than
+   * one
+   */
+  protected interface PartitionReducer<K3, V3> {
+    /**
+     * @param partition
+     * @return the collectable of the reduce outputs of the partition, or null
+     *         if they were sent to an output sink
+     */
+    OutputCollectable<K3, V3> reduce(int partition) throws IOException;
+  }
+
+  /**
+   * @param mapOutputs
+   * @param partitions
+   * @param partitioner
+   *          only called with more than 1 partition, may be null for 1
+   * @return the map outputs of each partition, in the order they were in
+   */
+  protected List<List<Pair<K2, V2>>> partition(
+      final List<Pair<K2, V2>> mapOutputs, final int partitions,
+      final PartitionFunction<K2, V2> partitioner) throws IOException {
+    if (partitions == 1) {
+      return Collections.singletonList(mapOutputs);
+    }
+    final List<List<Pair<K2, V2>>> partitioned = new ArrayList<List<Pair<K2, V2>>>(
+        partitions);
+    for (int i = 0; i < partitions; i++) {
+      partitioned.add(new ArrayList<Pair<K2, V2>>());
+    }
+    for (final Pair<K2, V2> mapOutput : mapOutputs) {
+      partitioned.get(
+          getPartition(partitioner, mapOutput.getFirst(),
+              mapOutput.getSecond(), partitions)).add(mapOutput);
+    }
+    return partitioned;
+  }
+
+  /**
+   * @param partitions
+   *          collectors of the map outputs of each partition
+   * @param partitioner
+   *          only called with more than 1 partition, may be null for 1
+   * @return a collector sending each map output to the collector of its
+   *         partition
+   */
+  protected OutputCollector<K2, V2> partition(
+      final List<? extends OutputCollector<K2, V2>> partitions,
+      final PartitionFunction<K2, V2> partitioner) {
+    if (partitions.size() == 1) {
+      return partitions.get(0);
+    }
+    return new OutputCollector<K2, V2>() {
+      @Override
+      public void collect(final K2 key, final V2 value) throws IOException {
+        partitions.get(getPartition(partitioner, key, value, partitions.size()))
+            .collect(key, value);
+      }
+    };
+  }
+
+  private static <K, V> int getPartition(
+      final PartitionFunction<K, V> partitioner, final K key, final V value,
+      final int partitions) throws IOException {
+    final int partition = partitioner.getPartition(key, value, partitions);
+    if (partition < 0 || partition >= partitions) {
+      throw new IOException("Illegal partition for " + key + " ("
+          + partition + ")");
+    }
+    return partition;
+  }
+
+  /**
+   * @param partitions
+   * @return a binary shuffle for each reduce partition
+   */
+  protected List<BinaryShuffle<K2, V2>> newBinaryShuffles(final int partitions) {
+    final List<BinaryShuffle<K2, V2>> shuffles = new ArrayList<BinaryShuffle<K2, V2>>(
+        partitions);
+    for (int i = 0; i < partitions; i++) {
+      shuffles.add(newBinaryShuffle());
+    }
+    return shuffles;
+  }
+
+  /**
+   * Reduces the partitions, each on a thread of its own when there is more
+   * than one, and keeps their outputs for {@link #getPartitionOutputs()}
+   * 
+   * @return the outputs of every partition, in partition order
+   */
+  protected List<Pair<K3, V3>> runReducePartitions(final int partitions,
+      final PartitionReducer<K3, V3> partitionReducer) throws IOException {
+    final List<OutputCollectable<K3, V3>> collectables;
+    if (partitions == 1) {
+      collectables = Collections.singletonList(partitionReducer.reduce(0));
+    } else {
+      final List<Callable<OutputCollectable<K3, V3>>> tasks = new ArrayList<Callable<OutputCollectable<K3, V3>>>(
+          partitions);
+      for (int i = 0; i < partitions; i++) {
+        final int partition = i;
+        tasks.add(new Callable<OutputCollectable<K3, V3>>() {
+          @Override
+          public OutputCollectable<K3, V3> call() throws IOException {
+            return partitionReducer.reduce(partition);
+          }
+        });
+      }
+      LOG.debug("Reducing " + partitions + " partitions");
+      collectables = ParallelTasks.run(tasks, partitions, "mrunit-reduce");
+    }
+    partitionOutputs = Collections.unmodifiableList(getOutputs(collectables));
+    if (partitions == 1) {
+      return partitionOutputs.get(0);
+    }
+    final List<Pair<K3, V3>> outputs = new ArrayList<Pair<K3, V3>>();
+    for (final List<Pair<K3, V3>> partitionOutput : partitionOutputs) {
+      outputs.addAll(partitionOutput);
+    }
+    return outputs;
+  }
+
+  /**
+   * The outputs of each reduce partition of the last run, which run returns
+   * one after the other. Map outputs are routed to mapreduce.job.reduces, or
+   * mapred.reduce.tasks, partitions by the Partitioner class of the job
+   * configuration and each partition is shuffled and reduced on a thread of
+   * its own, with a new instance of the reducer and counters that are added
+   * to those of the driver once it is done. The new reducers come from the
+   * reducer factory when one is set on the driver, else are created with the
+   * no argument constructor of the class of the reducer given. Comparators given to the driver are shared by
+   * the partitions so must not keep state between calls.
+   * 
+   * With a single reduce task, the default, every map output is reduced with
+   * the reducer given on the calling thread and no partitioner is called.
+   * After {@link #run(OutputSink)} the partitions' outputs are empty.
+   * 
+   * @return the outputs of each partition, in partition order
+   */
+  public List<List<Pair<K3, V3>>> getPartitionOutputs() {
+    return partitionOutputs;
+  }
+
   /**
    * Set the key grouping comparator, similar to calling the following API calls
    * but passing a real instance rather than just the class:
@@ -0,0 +1,255 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit;
+
+import static org.apache.hadoop.mrunit.internal.util.ArgumentChecker.returnNonNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.mrunit.RunReport.Phase;
+import org.apache.hadoop.mrunit.internal.counters.CounterWrapper;
+import org.apache.hadoop.mrunit.internal.util.ValidationErrors;
+
+/**
+ * A file of the metrics of runs known to be good, which later runs are
+ * compared with in place of absolute budgets, as those differ from machine to
+ * machine. The metrics of a driver are keyed by the name of its test and the
+ * classes it tests. A run whose key is not in the file stores its metrics, as
+ * does every run while the system property {@value #UPDATE_PROPERTY} is true.
+ * 
+ * What a run determines, the records, serialized bytes and copies of each
+ * phase and the {@link ShuffleCounters}, must equal the baseline. The bytes
+ * allocated per record may grow by the tolerance. The throughput regresses
+ * only if its median drops by more than the tolerance, and by more than
+ * {@value #SIGNIFICANT_DEVIATIONS} times the median absolute deviations of
+ * the measured runs, so the noise of a busy machine does not fail a test.
+ * 
+ * The file is a properties file sorted by key, to be kept under version
+ * control with the tests.
+ */
+public final class PerformanceBaseline {
+
+  public static final Log LOG = LogFactory.getLog(PerformanceBaseline.class);
+
+  /** the system property which makes every run store its metrics */
+  public static final String UPDATE_PROPERTY = "mrunit.baseline.update";
+
+  /**
+   * how many median absolute deviations of the runs the throughput must drop
+   * by to regress
+   */
+  public static final double SIGNIFICANT_DEVIATIONS = 3;
+
+  /** allocations this close to the baseline per record do not regress */
+  public static final double ALLOCATION_SLACK_BYTES = 64;
+
+  private static final String THROUGHPUT = "throughput";
+  private static final String THROUGHPUT_DEVIATION = "throughput.deviation";
+  private static final String ALLOCATED = ".allocatedBytesPerRecord";
+
+  private final File file;
+
+  /**
+   * @param file
+   *          read if it exists, created when a run stores its metrics
+   */
+  public PerformanceBaseline(final File file) {
+    this.file = returnNonNull(file);
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Compares the metrics of a run with those of key in the baseline, adding an
+   * error for each regression, or stores them if the baseline has none
+   * 
+   * @param key
+   *          the test and the classes it tests
+   * @param report
+   *          of the run
+   * @param counters
+   *          of the run
+   * @param throughputs
+   *          the input records per second of each measured run
+   * @param tolerance
+   *          the fraction the allocations and throughput may regress by
+   * @param errors
+   */
+  public void check(final String key, final RunReport report,
+      final CounterWrapper counters, final double[] throughputs,
+      final double tolerance, final ValidationErrors errors)
+      throws IOException {
+    final SortedMap<String, Number> metrics = metricsOf(report, counters,
+        throughputs);
+    final String prefix = key + ".";
+    final Map<String, Double> baseline = new HashMap<String, Double>();
+    // tests of a baseline may run at once, each rewriting the file
+    synchronized (PerformanceBaseline.class) {
+      final Properties properties = load();
+      for (final String name : properties.stringPropertyNames()) {
+        if (name.startsWith(prefix)) {
+          baseline.put(name.substring(prefix.length()),
+              Double.valueOf(properties.getProperty(name)));
+        }
+      }
+      if (baseline.isEmpty() || Boolean.getBoolean(UPDATE_PROPERTY)) {
+        for (final String name : new ArrayList<String>(
+            properties.stringPropertyNames())) {
+          if (name.startsWith(prefix)) {
+            properties.remove(name);
+          }
+        }
+        for (final Map.Entry<String, Number> metric : metrics.entrySet()) {
+          properties.setProperty(prefix + metric.getKey(), metric.getValue()
+              .toString());
+        }
+        store(properties);
+        LOG.info("Stored the performance baseline of " + key + " in " + file);
+        return;
+      }
+    }
+    compare(metrics, baseline, tolerance, errors);
+  }
+
+  static SortedMap<String, Number> metricsOf(final RunReport report,
+      final CounterWrapper counters, final double[] throughputs) {
+    final SortedMap<String, Number> metrics = new TreeMap<String, Number>();
+    for (final Phase phase : Phase.values()) {
+      final RunReport.PhaseReport phaseReport = report.getPhase(phase);
+      metrics.put(phase + ".inputRecords", phaseReport.getInputRecords());
+      metrics.put(phase + ".outputRecords", phaseReport.getOutputRecords());
+      metrics.put(phase + ".bytes", phaseReport.getBytes());
+      metrics.put(phase + ".copies", phaseReport.getCopies());
+    }
+    if (report.isMeasuringAllocations()) {
+      for (final Phase phase : new Phase[] { Phase.MAP, Phase.COMBINE,
+          Phase.REDUCE }) {
+        metrics.put(phase + ALLOCATED, report.getPhase(phase)
+            .getAllocatedBytesPerInputRecord());
+      }
+    }
+    for (final ShuffleCounters counter : ShuffleCounters.values()) {
+      metrics.put("shuffle." + counter, counters.findCounterValue(counter));
+    }
+    if (throughputs != null && throughputs.length > 0) {
+      final double median = median(throughputs);
+      final double[] deviations = new double[throughputs.length];
+      for (int i = 0; i < throughputs.length; i++) {
+        deviations[i] = Math.abs(throughputs[i] - median);
+      }
+      metrics.put(THROUGHPUT, median);
+      metrics.put(THROUGHPUT_DEVIATION, median(deviations));
+    }
+    return metrics;
+  }
+
+  private static double median(final double[] values) {
+    final double[] sorted = values.clone();
+    Arrays.sort(sorted);
+    return sorted[sorted.length / 2];
+  }
+
+  private static void compare(final Map<String, Number> metrics,
+      final Map<String, Double> baseline, final double tolerance,
+      final ValidationErrors errors) {
+    for (final Map.Entry<String, Number> metric : metrics.entrySet()) {
+      final String name = metric.getKey();
+      final Double base = baseline.get(name);
+      // a metric the baseline predates is stored when it is next updated
+      if (base == null || name.equals(THROUGHPUT_DEVIATION)) {
+        continue;
+      }
+      final double value = metric.getValue().doubleValue();
+      if (name.equals(THROUGHPUT)) {
+        final Double baseDeviation = baseline.get(THROUGHPUT_DEVIATION);
+        final double deviations = metrics.get(THROUGHPUT_DEVIATION)
+            .doubleValue() + (baseDeviation == null ? 0 : baseDeviation);
+        if (value < base * (1 - tolerance)
+            && base - value > SIGNIFICANT_DEVIATIONS * deviations) {
+          errors.add("Throughput of %.1f records per second is more than "
+              + "%.0f%% below the baseline of %.1f", value, tolerance * 100,
+              base);
+        }
+      } else if (name.endsWith(ALLOCATED)) {
+        if (value > Math.max(base * (1 + tolerance), base
+            + ALLOCATION_SLACK_BYTES)) {
+          errors.add("%s of %.1f bytes is more than %.0f%% above the "
+              + "baseline of %.1f", name, value, tolerance * 100, base);
+        }
+      } else if (value != base) {
+        errors.add("%s of %d differs from the baseline of %d", name, metric
+            .getValue().longValue(), base.longValue());
+      }
+    }
+  }
+
+  private Properties load() throws IOException {
+    final Properties properties = new Properties();
+    if (file.exists()) {
+      final InputStream in = new FileInputStream(file);
+      try {
+        properties.load(in);
+      } finally {
+        in.close();
+      }
+    }
+    return properties;
+  }
+
+  private void store(final Properties properties) throws IOException {
+    final Properties sorted = new Properties() {
+      private static final long serialVersionUID = 1L;
+
+      // store() writes the properties in the order of their keys
+      @Override
+      public synchronized Enumeration<Object> keys() {
+        return Collections.enumeration(new TreeSet<Object>(super.keySet()));
+      }
+    };
+    sorted.putAll(properties);
+    final File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+      throw new IOException("Could not create the directory of " + file);
+    }
+    final OutputStream out = new FileOutputStream(file);
+    try {
+      sorted.store(out, "MRUnit performance baseline");
+    } finally {
+      out.close();
+    }
+  }
+}
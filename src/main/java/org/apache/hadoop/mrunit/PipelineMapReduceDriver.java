@@ -19,9 +19,11 @@ package org.apache.hadoop.mrunit;
 
 import static org.apache.hadoop.mrunit.internal.util.ArgumentChecker.returnNonNull;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -30,6 +32,7 @@ import org.apache.hadoop.mapred.Counters;
 import org.apache.hadoop.mapred.Mapper;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mrunit.internal.counters.CounterWrapper;
+import org.apache.hadoop.mrunit.types.OutputDigest;
 import org.apache.hadoop.mrunit.types.Pair;
 
 /**
@@ -292,6 +295,92 @@ public class PipelineMapReduceDriver<K1, V1, K2, V2> extends
     return this;
   }
 
+  @Override
+  public PipelineMapReduceDriver<K1, V1, K2, V2> withExpectedOutputDigest(
+      final OutputDigest digest) {
+    super.withExpectedOutputDigest(digest);
+    return this;
+  }
+
+  @Override
+  public PipelineMapReduceDriver<K1, V1, K2, V2> withSerializedMatching(
+      final boolean serializedMatching) {
+    super.withSerializedMatching(serializedMatching);
+    return this;
+  }
+
+  @Override
+  public PipelineMapReduceDriver<K1, V1, K2, V2> withRecordLatency(
+      final int slowestRecords) {
+    super.withRecordLatency(slowestRecords);
+    return this;
+  }
+
+  @Override
+  public PipelineMapReduceDriver<K1, V1, K2, V2> withAllocationProfiling(
+      final boolean allocationProfiling) {
+    super.withAllocationProfiling(allocationProfiling);
+    return this;
+  }
+
+  @Override
+  public PipelineMapReduceDriver<K1, V1, K2, V2> withMaxAllocatedBytesPerRecord(
+      final long maxAllocatedBytesPerRecord) {
+    super.withMaxAllocatedBytesPerRecord(maxAllocatedBytesPerRecord);
+    return this;
+  }
+
+  @Override
+  public PipelineMapReduceDriver<K1, V1, K2, V2> withMaxRecordsLatency(
+      final long p99, final TimeUnit unit) {
+    super.withMaxRecordsLatency(p99, unit);
+    return this;
+  }
+
+  @Override
+  public PipelineMapReduceDriver<K1, V1, K2, V2> withMinThroughput(
+      final double recordsPerSecond) {
+    super.withMinThroughput(recordsPerSecond);
+    return this;
+  }
+
+  @Override
+  public PipelineMapReduceDriver<K1, V1, K2, V2> withMaxOutputAmplification(
+      final double ratio) {
+    super.withMaxOutputAmplification(ratio);
+    return this;
+  }
+
+  @Override
+  public PipelineMapReduceDriver<K1, V1, K2, V2> withPerformanceRuns(
+      final int warmUpRuns, final int measuredRuns) {
+    super.withPerformanceRuns(warmUpRuns, measuredRuns);
+    return this;
+  }
+
+  @Override
+  public PipelineMapReduceDriver<K1, V1, K2, V2> withPerformanceBaseline(
+      final File file, final String testName) {
+    super.withPerformanceBaseline(file, testName);
+    return this;
+  }
+
+  @Override
+  public PipelineMapReduceDriver<K1, V1, K2, V2> withBaselineTolerance(
+      final double tolerance) {
+    super.withBaselineTolerance(tolerance);
+    return this;
+  }
+
+  @Override
+  protected List<Class<?>> getClassesUnderTest() {
+    final List<Class<?>> classes = new ArrayList<Class<?>>();
+    for (final Pair<Mapper, Reducer> job : mapReducePipeline) {
+      classes.addAll(classesOf(job.getFirst(), job.getSecond()));
+    }
+    return classes;
+  }
+
   /**
    * Expects an input of the form "key \t val" Forces the Reducer output types
    * to Text.
@@ -324,6 +413,17 @@ public class PipelineMapReduceDriver<K1, V1, K2, V2> extends
     return this;
   }
 
+  @Override
+  protected List<Pair<K2, V2>> runDiscardingCounters() throws IOException {
+    final Counters kept = getCounters();
+    setCounters(new Counters());
+    try {
+      return run();
+    } finally {
+      setCounters(kept);
+    }
+  }
+
   @Override
   @SuppressWarnings({ "unchecked" })
   public List<Pair<K2, V2>> run() throws IOException {
@@ -336,6 +436,7 @@ public class PipelineMapReduceDriver<K1, V1, K2, V2> extends
     if (mapReducePipeline.isEmpty()) {
       throw new IllegalStateException("No Mappers or Reducers in pipeline");
     }
+    newRunReport();
 
     for (final Pair<Mapper, Reducer> job : mapReducePipeline) {
       // Create a MapReduceDriver to run this phase of the pipeline.
@@ -344,6 +445,10 @@ public class PipelineMapReduceDriver<K1, V1, K2, V2> extends
 
       mrDriver.setCounters(getCounters());
       mrDriver.setConfiguration(configuration);
+      if (isTimingRecords()) {
+        mrDriver.setRecordLatency(Math.max(getRecordLatency(), 0));
+      }
+      mrDriver.setAllocationProfiling(isAllocationProfiling());
 
       // Add the inputs from the user, or from the previous stage of the
       // pipeline.
@@ -354,6 +459,7 @@ public class PipelineMapReduceDriver<K1, V1, K2, V2> extends
       // Run the MapReduce "job". The output of this job becomes
       // the input to the next job.
       inputs = mrDriver.run();
+      getRunReport().add(mrDriver.getRunReport());
     }
 
     // The last list of values stored in "inputs" is actually the outputs.
@@ -365,9 +471,10 @@ public class PipelineMapReduceDriver<K1, V1, K2, V2> extends
   @Override
   public void runTest(final boolean orderMatters) {
     try {
-      final List<Pair<K2, V2>> outputs = run();
+      final List<Pair<K2, V2>> outputs = runForTest();
       validate(outputs, orderMatters);
       validate(counterWrapper);
+      validate(getRunReport());
     } catch (final IOException ioe) {
       LOG.error(ioe);
       throw new RuntimeException(ioe);
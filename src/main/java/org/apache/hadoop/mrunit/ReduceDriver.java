@@ -19,8 +19,12 @@ package org.apache.hadoop.mrunit;
 
 import static org.apache.hadoop.mrunit.internal.util.ArgumentChecker.returnNonNull;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -30,10 +34,13 @@ import org.apache.hadoop.mapred.InputFormat;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.OutputFormat;
 import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mrunit.RunReport.Phase;
 import org.apache.hadoop.mrunit.internal.counters.CounterWrapper;
 import org.apache.hadoop.mrunit.internal.mapred.MockReporter;
+import org.apache.hadoop.mrunit.internal.output.CountingOutputCollector;
 import org.apache.hadoop.mrunit.internal.output.MockOutputCreator;
 import org.apache.hadoop.mrunit.internal.output.OutputCollectable;
+import org.apache.hadoop.mrunit.types.OutputDigest;
 import org.apache.hadoop.mrunit.types.Pair;
 
 /**
@@ -227,6 +234,88 @@ public class ReduceDriver<K1, V1, K2, V2> extends
     return this;
   }
 
+  @Override
+  public ReduceDriver<K1, V1, K2, V2> withExpectedOutputDigest(
+      final OutputDigest digest) {
+    super.withExpectedOutputDigest(digest);
+    return this;
+  }
+
+  @Override
+  public ReduceDriver<K1, V1, K2, V2> withSerializedMatching(
+      final boolean serializedMatching) {
+    super.withSerializedMatching(serializedMatching);
+    return this;
+  }
+
+  @Override
+  public ReduceDriver<K1, V1, K2, V2> withRecordLatency(
+      final int slowestRecords) {
+    super.withRecordLatency(slowestRecords);
+    return this;
+  }
+
+  @Override
+  public ReduceDriver<K1, V1, K2, V2> withAllocationProfiling(
+      final boolean allocationProfiling) {
+    super.withAllocationProfiling(allocationProfiling);
+    return this;
+  }
+
+  @Override
+  public ReduceDriver<K1, V1, K2, V2> withMaxAllocatedBytesPerRecord(
+      final long maxAllocatedBytesPerRecord) {
+    super.withMaxAllocatedBytesPerRecord(maxAllocatedBytesPerRecord);
+    return this;
+  }
+
+  @Override
+  public ReduceDriver<K1, V1, K2, V2> withMaxRecordsLatency(
+      final long p99, final TimeUnit unit) {
+    super.withMaxRecordsLatency(p99, unit);
+    return this;
+  }
+
+  @Override
+  public ReduceDriver<K1, V1, K2, V2> withMinThroughput(
+      final double recordsPerSecond) {
+    super.withMinThroughput(recordsPerSecond);
+    return this;
+  }
+
+  @Override
+  public ReduceDriver<K1, V1, K2, V2> withMaxOutputAmplification(
+      final double ratio) {
+    super.withMaxOutputAmplification(ratio);
+    return this;
+  }
+
+  @Override
+  public ReduceDriver<K1, V1, K2, V2> withPerformanceRuns(
+      final int warmUpRuns, final int measuredRuns) {
+    super.withPerformanceRuns(warmUpRuns, measuredRuns);
+    return this;
+  }
+
+  @Override
+  public ReduceDriver<K1, V1, K2, V2> withPerformanceBaseline(
+      final File file, final String testName) {
+    super.withPerformanceBaseline(file, testName);
+    return this;
+  }
+
+  @Override
+  public ReduceDriver<K1, V1, K2, V2> withBaselineTolerance(
+      final double tolerance) {
+    super.withBaselineTolerance(tolerance);
+    return this;
+  }
+
+  @Override
+  protected List<Class<?>> getClassesUnderTest() {
+    return classesOf(getReducer());
+  }
+
   public ReduceDriver<K1, V1, K2, V2> withOutputFormat(
       final Class<? extends OutputFormat> outputFormatClass,
       final Class<? extends InputFormat> inputFormatClass) {
@@ -234,6 +323,17 @@ public class ReduceDriver<K1, V1, K2, V2> extends
     return this;
   }
 
+  @Override
+  protected List<Pair<K2, V2>> runDiscardingCounters() throws IOException {
+    final Counters kept = getCounters();
+    setCounters(new Counters());
+    try {
+      return run();
+    } finally {
+      setCounters(kept);
+    }
+  }
+
   @Override
   public List<Pair<K2, V2>> run() throws IOException {
     if (inputKey == null || getInputValues().isEmpty()) {
@@ -243,16 +343,30 @@ public class ReduceDriver<K1, V1, K2, V2> extends
       throw new IllegalStateException("No Reducer class was provided");
     }
 
-    final OutputCollectable<K2, V2> outputCollectable = mockOutputCreator
-        .createOutputCollectable(getConfiguration());
+    newRunReport();
+    final OutputCollectable<K2, V2> outputCollectable = createOutputCollectable(mockOutputCreator);
+    final CountingOutputCollector<K2, V2> output = new CountingOutputCollector<K2, V2>(
+        outputCollectable);
     final MockReporter reporter = new MockReporter(
         MockReporter.ReporterType.Reducer, getCounters());
 
-    myReducer.configure(new JobConf(getConfiguration()));
-    myReducer.reduce(inputKey, getInputValues().iterator(), outputCollectable,
-        reporter);
-    myReducer.close();
-    return outputCollectable.getOutputs();
+    final RunReport.Timer reduce = startPhase(Phase.REDUCE);
+    try {
+      myReducer.configure(new JobConf(getConfiguration()));
+      final Iterator<Pair<K1, List<V1>>> inputs = timeRecords(Phase.REDUCE,
+          Collections.singletonList(
+              new Pair<K1, List<V1>>(inputKey, getInputValues())).iterator());
+      while (inputs.hasNext()) {
+        final Pair<K1, List<V1>> input = inputs.next();
+        myReducer.reduce(input.getFirst(), input.getSecond().iterator(),
+            output, reporter);
+      }
+      myReducer.close();
+      reduce.stop(getInputValues().size(), output.getCount());
+    } finally {
+      reduce.close();
+    }
+    return getOutputs(outputCollectable);
   }
 
   @Override
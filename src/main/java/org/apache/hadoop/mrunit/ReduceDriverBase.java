@@ -174,9 +174,10 @@ public abstract class ReduceDriverBase<K1, V1, K2, V2> extends
 
     List<Pair<K2, V2>> outputs = null;
     try {
-      outputs = run();
+      outputs = runForTest();
       validate(outputs, orderMatters);
       validate(counterWrapper);
+      validate(getRunReport());
     } catch (final IOException ioe) {
       LOG.error("IOException in reducer", ioe);
       throw new RuntimeException("IOException in reducer: ", ioe);
@@ -191,8 +192,13 @@ public abstract class ReduceDriverBase<K1, V1, K2, V2> extends
     @SuppressWarnings("unchecked")
     public ValueClassInstanceReuseList(final List<T> list,
         final Configuration conf) {
+      this(list, new Serialization(conf));
+    }
+
+    public ValueClassInstanceReuseList(final List<T> list,
+        final Serialization serialization) {
       super(list);
-      serialization = new Serialization(conf);
+      this.serialization = serialization;
     }
 
     @Override
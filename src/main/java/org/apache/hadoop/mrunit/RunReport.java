@@ -0,0 +1,530 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.hadoop.mrunit.internal.io.Serialization;
+import org.apache.hadoop.mrunit.internal.util.AllocationAccounting;
+import org.apache.hadoop.mrunit.types.Pair;
+
+/**
+ * Where a run of a driver, and its validation by runTest, spent its time: the
+ * wall clock and CPU time of each phase, the records the phase read and
+ * wrote, the bytes it serialized and the copies it made of keys and values.
+ * 
+ * Phases running on several threads, such as map splits or reduce
+ * partitions, are timed on each of them and their times added together, so
+ * may add up to more than the run took.
+ * 
+ * When asked for, the latency of each map and reduce call is also kept in a
+ * {@link LatencyHistogram} of its phase, and the bytes each phase allocated
+ * are measured.
+ */
+public class RunReport {
+
+  private static final ThreadMXBean THREADS = ManagementFactory
+      .getThreadMXBean();
+
+  public enum Phase {
+    /**
+     * the mapper over the inputs, with any map sort buffer and the binary
+     * shuffles written to
+     */
+    MAP,
+    /** the combiner over the map outputs, once they are all mapped */
+    COMBINE,
+    /**
+     * the sort and grouping of the map outputs of each reduce partition into
+     * key groups. A binary shuffle only sorts, counting the bytes it holds,
+     * and groups as the reducer reads.
+     */
+    SHUFFLE,
+    /** the reducer over the key groups of each reduce partition */
+    REDUCE,
+    /** the round trip of the outputs through an output and input format */
+    OUTPUT_FORMAT,
+    /** the check of the outputs by runTest, counting their bytes */
+    VALIDATE
+  }
+
+  private final Map<Phase, PhaseReport> phases = new EnumMap<Phase, PhaseReport>(
+      Phase.class);
+  private final Map<Phase, LatencyHistogram> latencies = new EnumMap<Phase, LatencyHistogram>(
+      Phase.class);
+  private final boolean allocations;
+
+  public RunReport() {
+    this(false);
+  }
+
+  /**
+   * @param allocations
+   *          whether to measure the bytes each phase allocates, other than
+   *          what MRUnit allocates to collect and copy outputs, on JVMs which
+   *          measure what each thread allocates
+   */
+  public RunReport(final boolean allocations) {
+    this.allocations = allocations && AllocationAccounting.isSupported();
+  }
+
+  /** @return whether the bytes each phase allocates are measured */
+  public boolean isMeasuringAllocations() {
+    return allocations;
+  }
+
+  /**
+   * @param phase
+   * @return a timer of phase on the current thread, added to the report when
+   *         stopped
+   */
+  public Timer start(final Phase phase) {
+    return new Timer(phase);
+  }
+
+  /**
+   * Times each record read from records, from when it is read to when the
+   * next is asked for, which is when a mapper or reducer is done with it.
+   * The latencies are added to those of phase once records is exhausted.
+   * 
+   * @param phase
+   * @param records
+   * @param slowest
+   *          the number of slowest records to keep the keys of
+   * @return records, timed
+   */
+  public <K, V> Iterator<Pair<K, V>> timeRecords(final Phase phase,
+      final Iterator<Pair<K, V>> records, final int slowest) {
+    return new TimedRecords<K, V>(records, timeRecords(phase, slowest));
+  }
+
+  /**
+   * @param phase
+   * @param slowest
+   *          the number of slowest records to keep the keys of
+   * @return a timer of the records of phase, for readers which know better
+   *         than an iterator when a mapper or reducer starts on each record
+   */
+  public RecordTimer timeRecords(final Phase phase, final int slowest) {
+    return new RecordTimer(phase, new LatencyHistogram(slowest));
+  }
+
+  /**
+   * @param phase
+   * @return the latencies of the records of phase, or null if they were not
+   *         timed
+   */
+  public synchronized LatencyHistogram getLatency(final Phase phase) {
+    final LatencyHistogram latency = latencies.get(phase);
+    return latency == null ? null : latency.copy();
+  }
+
+  /**
+   * @param phase
+   * @return the report of phase, with all zeros if it did not run
+   */
+  public synchronized PhaseReport getPhase(final Phase phase) {
+    final PhaseReport report = phases.get(phase);
+    return report == null ? new PhaseReport() : report.copy();
+  }
+
+  /**
+   * @return the wall clock nanoseconds of every phase
+   */
+  public synchronized long getWallNanos() {
+    long nanos = 0;
+    for (final PhaseReport report : phases.values()) {
+      nanos += report.wallNanos;
+    }
+    return nanos;
+  }
+
+  /**
+   * @return the CPU nanoseconds of every phase, 0 if the JVM does not measure
+   *         the CPU time of threads
+   */
+  public synchronized long getCpuNanos() {
+    long nanos = 0;
+    for (final PhaseReport report : phases.values()) {
+      nanos += report.cpuNanos;
+    }
+    return nanos;
+  }
+
+  /**
+   * @return the copies of keys and values made by every phase
+   */
+  public synchronized long getCopies() {
+    long copies = 0;
+    for (final PhaseReport report : phases.values()) {
+      copies += report.copies;
+    }
+    return copies;
+  }
+
+  /**
+   * Adds the phases of other to those of this report, as for the jobs of a
+   * pipeline
+   * 
+   * @param other
+   */
+  public void add(final RunReport other) {
+    for (final Phase phase : Phase.values()) {
+      final PhaseReport report = other.getPhase(phase);
+      if (report.getTasks() > 0) {
+        add(phase, report);
+      }
+      final LatencyHistogram latency = other.getLatency(phase);
+      if (latency != null) {
+        add(phase, latency);
+      }
+    }
+  }
+
+  private synchronized void add(final Phase phase,
+      final LatencyHistogram latency) {
+    final LatencyHistogram total = latencies.get(phase);
+    if (total == null) {
+      latencies.put(phase, latency.copy());
+    } else {
+      total.add(latency);
+    }
+  }
+
+  private synchronized void add(final Phase phase, final PhaseReport report) {
+    PhaseReport total = phases.get(phase);
+    if (total == null) {
+      total = new PhaseReport();
+      phases.put(phase, total);
+    }
+    total.add(report);
+  }
+
+  @Override
+  public synchronized String toString() {
+    final StringBuilder sb = new StringBuilder("RunReport (");
+    boolean first = true;
+    for (final Map.Entry<Phase, PhaseReport> entry : phases.entrySet()) {
+      if (!first) {
+        sb.append(", ");
+      }
+      first = false;
+      sb.append(entry.getKey()).append(": ").append(entry.getValue());
+    }
+    for (final Map.Entry<Phase, LatencyHistogram> entry : latencies
+        .entrySet()) {
+      sb.append(", ").append(entry.getKey()).append(" latency: ")
+          .append(entry.getValue());
+    }
+    return sb.append(")").toString();
+  }
+
+  /**
+   * What the tasks of one phase of a run did
+   */
+  public static final class PhaseReport {
+    private int tasks;
+    private long wallNanos;
+    private long cpuNanos;
+    private long inputRecords;
+    private long outputRecords;
+    private long bytes;
+    private long copies;
+    private long allocatedBytes;
+
+    private void add(final PhaseReport other) {
+      tasks += other.tasks;
+      wallNanos += other.wallNanos;
+      cpuNanos += other.cpuNanos;
+      inputRecords += other.inputRecords;
+      outputRecords += other.outputRecords;
+      bytes += other.bytes;
+      copies += other.copies;
+      allocatedBytes += other.allocatedBytes;
+    }
+
+    private PhaseReport copy() {
+      final PhaseReport copy = new PhaseReport();
+      copy.add(this);
+      return copy;
+    }
+
+    /** @return the number of times the phase was run, by splits or partitions */
+    public int getTasks() {
+      return tasks;
+    }
+
+    public long getWallNanos() {
+      return wallNanos;
+    }
+
+    /**
+     * @return the CPU time of the threads running the phase, 0 if the JVM
+     *         does not measure it
+     */
+    public long getCpuNanos() {
+      return cpuNanos;
+    }
+
+    public long getInputRecords() {
+      return inputRecords;
+    }
+
+    public long getOutputRecords() {
+      return outputRecords;
+    }
+
+    /**
+     * @return the bytes of the keys and values the phase serialized, to copy
+     *         them or otherwise, 0 if it only handled objects
+     */
+    public long getBytes() {
+      return bytes;
+    }
+
+    /** @return the keys and values the phase copied */
+    public long getCopies() {
+      return copies;
+    }
+
+    /**
+     * @return the bytes the phase allocated, other than to collect and copy
+     *         outputs, 0 if they were not measured
+     */
+    public long getAllocatedBytes() {
+      return allocatedBytes;
+    }
+
+    /** @return the bytes allocated per input record, 0 if there were none */
+    public double getAllocatedBytesPerInputRecord() {
+      return inputRecords == 0 ? 0 : (double) allocatedBytes / inputRecords;
+    }
+
+    /** @return the bytes allocated per output record, 0 if there were none */
+    public double getAllocatedBytesPerOutputRecord() {
+      return outputRecords == 0 ? 0 : (double) allocatedBytes / outputRecords;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%d task(s), %.3f ms, %.3f ms CPU, %d records in, %d records out, "
+              + "%d bytes, %d copies, %d bytes allocated", tasks,
+          wallNanos / 1e6, cpuNanos / 1e6, inputRecords, outputRecords,
+          bytes, copies, allocatedBytes);
+    }
+  }
+
+  /**
+   * Times one task of a phase on the thread that started it. A timer must be
+   * closed in a finally block around the task, so the allocation accounting
+   * it started on the thread is ended even if the task throws.
+   */
+  public final class Timer {
+    private final Phase phase;
+    private final long startWall;
+    private final long startCpu;
+    private final long startCopies;
+    private final long startCopiedBytes;
+    private final long startExcluded;
+    private final long startAllocated;
+    private boolean stopped;
+
+    private Timer(final Phase phase) {
+      this.phase = phase;
+      startCopies = Serialization.getThreadCopies();
+      startCopiedBytes = Serialization.getThreadCopiedBytes();
+      if (allocations) {
+        AllocationAccounting.start();
+        startExcluded = AllocationAccounting.getExcludedBytes();
+        startAllocated = AllocationAccounting.getAllocatedBytes();
+      } else {
+        startExcluded = 0;
+        startAllocated = 0;
+      }
+      startCpu = threadCpuNanos();
+      startWall = System.nanoTime();
+    }
+
+    /**
+     * @param inputRecords
+     * @param outputRecords
+     */
+    public void stop(final long inputRecords, final long outputRecords) {
+      stop(inputRecords, outputRecords, 0);
+    }
+
+    /**
+     * Adds the task to the report
+     * 
+     * @param inputRecords
+     * @param outputRecords
+     * @param bytes
+     *          serialized by the task, other than to copy keys and values,
+     *          which are counted as they are copied
+     */
+    public void stop(final long inputRecords, final long outputRecords,
+        final long bytes) {
+      if (stopped) {
+        throw new IllegalStateException("The " + phase
+            + " timer was already stopped");
+      }
+      stopped = true;
+      final long wallNanos = System.nanoTime() - startWall;
+      final long cpuNanos = threadCpuNanos() - startCpu;
+      long allocatedBytes = 0;
+      if (allocations) {
+        allocatedBytes = AllocationAccounting.getAllocatedBytes()
+            - startAllocated
+            - (AllocationAccounting.getExcludedBytes() - startExcluded);
+        AllocationAccounting.stop();
+      }
+      final PhaseReport report = new PhaseReport();
+      report.wallNanos = wallNanos;
+      report.cpuNanos = cpuNanos;
+      report.allocatedBytes = Math.max(allocatedBytes, 0);
+      report.copies = Serialization.getThreadCopies() - startCopies;
+      report.tasks = 1;
+      report.inputRecords = inputRecords;
+      report.outputRecords = outputRecords;
+      report.bytes = bytes + Serialization.getThreadCopiedBytes()
+          - startCopiedBytes;
+      add(phase, report);
+    }
+
+    /**
+     * Ends the allocation accounting of the task if it was not stopped, as
+     * when it threw, without adding it to the report
+     */
+    public void close() {
+      if (stopped) {
+        return;
+      }
+      stopped = true;
+      if (allocations) {
+        AllocationAccounting.stop();
+      }
+    }
+  }
+
+  /**
+   * Times records of a phase one at a time, each from when it is started to
+   * when the next is started or the timer is stopped. The latencies are added
+   * to those of the phase once the timer is finished.
+   */
+  public final class RecordTimer {
+    private final Phase phase;
+    private final LatencyHistogram latency;
+    private Object key;
+    private boolean timing;
+    private long start;
+    private boolean done;
+
+    private RecordTimer(final Phase phase, final LatencyHistogram latency) {
+      this.phase = phase;
+      this.latency = latency;
+    }
+
+    /**
+     * Stops timing the current record, if any, and starts timing the next
+     * 
+     * @param key
+     *          the key of the next record
+     */
+    public void start(final Object key) {
+      stop();
+      this.key = key;
+      timing = true;
+      start = System.nanoTime();
+    }
+
+    /**
+     * Stops timing the current record, if any
+     */
+    public void stop() {
+      if (timing) {
+        latency.record(System.nanoTime() - start, key);
+        key = null;
+        timing = false;
+      }
+    }
+
+    /**
+     * Stops timing the current record, if any, and adds the latencies to
+     * those of the phase. Later calls do nothing.
+     */
+    public void finish() {
+      stop();
+      if (!done) {
+        done = true;
+        add(phase, latency);
+      }
+    }
+  }
+
+  /**
+   * Times each record of an iterator as {@link RunReport#timeRecords}
+   * describes. A record is timed until hasNext or next is next called, before
+   * the iterator reads ahead, so its key is still the one it was read with.
+   */
+  private static final class TimedRecords<K, V> implements
+      Iterator<Pair<K, V>> {
+    private final Iterator<Pair<K, V>> records;
+    private final RecordTimer timer;
+
+    private TimedRecords(final Iterator<Pair<K, V>> records,
+        final RecordTimer timer) {
+      this.records = records;
+      this.timer = timer;
+    }
+
+    @Override
+    public boolean hasNext() {
+      timer.stop();
+      final boolean hasNext = records.hasNext();
+      if (!hasNext) {
+        timer.finish();
+      }
+      return hasNext;
+    }
+
+    @Override
+    public Pair<K, V> next() {
+      timer.stop();
+      final Pair<K, V> current = records.next();
+      timer.start(current.getFirst());
+      return current;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static long threadCpuNanos() {
+    if (!THREADS.isCurrentThreadCpuTimeSupported()) {
+      return 0;
+    }
+    return Math.max(THREADS.getCurrentThreadCpuTime(), 0);
+  }
+}
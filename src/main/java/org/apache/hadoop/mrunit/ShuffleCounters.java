@@ -0,0 +1,56 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit;
+
+/**
+ * Counters a MapReduceDriver adds to its counters when shuffling with
+ * {@link MapReduceDriverBase#BINARY_SHUFFLE_KEY} or
+ * {@link MapReduceDriverBase#MAP_SORT_BUFFER_KEY} set, so they can be checked
+ * with withCounter like any other
+ */
+public enum ShuffleCounters {
+  /**
+   * times map outputs were sorted and spilled to local disk on reaching
+   * {@link MapReduceDriverBase#SHUFFLE_MEMORY_BYTES_KEY}
+   */
+  SPILLS,
+
+  /** records written to spills, counting those rewritten by merges */
+  SPILLED_RECORDS,
+
+  /** serialized key and value bytes of the records written to spills */
+  SPILLED_BYTES,
+
+  /**
+   * times the map sort buffer was sorted and spilled, on reaching
+   * io.sort.spill.percent of io.sort.mb and once at the end of the map
+   */
+  MAP_SPILLS,
+
+  /**
+   * records the map sort buffer spilled, after combining, counting those
+   * rewritten by merges as a map task does
+   */
+  MAP_SPILLED_RECORDS,
+
+  /**
+   * serialized key and value bytes of the records the map sort buffer
+   * spilled
+   */
+  MAP_SPILLED_BYTES
+}
@@ -18,26 +18,48 @@
 package org.apache.hadoop.mrunit;
 
 import static org.apache.hadoop.mrunit.internal.util.ArgumentChecker.returnNonNull;
-import static org.junit.Assert.fail;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mrunit.RunReport.Phase;
 import org.apache.hadoop.mrunit.internal.counters.CounterWrapper;
 import org.apache.hadoop.mrunit.internal.io.Serialization;
+import org.apache.hadoop.mrunit.internal.mapred.MockMapredOutputFormat;
+import org.apache.hadoop.mrunit.internal.mapreduce.MockMapreduceOutputFormat;
+import org.apache.hadoop.mrunit.internal.output.DigestOutputCollector;
+import org.apache.hadoop.mrunit.internal.output.MockOutputCreator;
+import org.apache.hadoop.mrunit.internal.output.OutputCollectable;
+import org.apache.hadoop.mrunit.internal.output.PositionIndex;
+import org.apache.hadoop.mrunit.internal.output.SerializedRecords;
+import org.apache.hadoop.mrunit.internal.output.SerializedRecords.Record;
+import org.apache.hadoop.mrunit.internal.util.ValidationErrors;
+import org.apache.hadoop.mrunit.internal.util.ValidationErrors.Message;
+import org.apache.hadoop.mrunit.types.OutputDigest;
 import org.apache.hadoop.mrunit.types.Pair;
 
 public abstract class TestDriver<K1, V1, K2, V2> {
 
   public static final Log LOG = LogFactory.getLog(TestDriver.class);
 
+  /**
+   * Configuration key for the most errors a failed validation reports, and
+   * logs. The rest are only counted. When unset 100 are reported.
+   */
+  public static final String MAX_REPORTED_ERRORS_KEY = "mrunit.validate.max.reported.errors";
+
   protected List<Pair<K2, V2>> expectedOutputs;
 
   protected List<Pair<Enum, Long>> expectedEnumCounters;
@@ -49,6 +71,46 @@ public abstract class TestDriver<K1, V1, K2, V2> {
 
   protected Serialization serialization;
 
+  protected OutputDigest expectedOutputDigest;
+
+  private OutputDigest outputDigest;
+
+  private boolean serializedMatching;
+
+  private RunReport runReport = new RunReport();
+
+  private int slowestRecords = -1;
+
+  private boolean allocationProfiling;
+
+  private long maxAllocatedBytesPerRecord = -1;
+
+  private long maxRecordsLatencyNanos = -1;
+
+  private double minThroughput = -1;
+
+  private double maxOutputAmplification = -1;
+
+  private int warmUpRuns = 2;
+
+  private int measuredRuns = 5;
+
+  private PerformanceBaseline baseline;
+
+  private String baselineTestName;
+
+  private double baselineTolerance = 0.1;
+
+  /** the throughputs of the measured runs of the last runTest, sorted */
+  private double[] measuredThroughputs;
+
+  /** the median throughput of the measured runs of the last runTest */
+  private double measuredThroughput;
+
+  /** the latencies of the measured runs of the last runTest */
+  private final Map<Phase, LatencyHistogram> measuredLatencies = new EnumMap<Phase, LatencyHistogram>(
+      Phase.class);
+
   public TestDriver() {
     expectedOutputs = new ArrayList<Pair<K2, V2>>();
     expectedEnumCounters = new ArrayList<Pair<Enum, Long>>();
@@ -126,6 +188,579 @@ public abstract class TestDriver<K1, V1, K2, V2> {
     return this;
   }
 
+  /**
+   * Expect outputs with the given digest rather than the outputs added with
+   * addOutput(). The outputs of the run are then not kept, only their
+   * {@link OutputDigest}, so runs with more outputs than fit in memory can be
+   * validated, and run() returns no outputs. The records are not written
+   * with any output format given to the driver.
+   * 
+   * @param digest
+   *          as given by {@link #getOutputDigest()} after a run known to be
+   *          good, or by {@link DigestOutputCollector#digest(List,
+   *          Configuration)} of the expected outputs
+   * @return
+   */
+  public TestDriver<K1, V1, K2, V2> withExpectedOutputDigest(
+      final OutputDigest digest) {
+    expectedOutputDigest = returnNonNull(digest);
+    return this;
+  }
+
+  /**
+   * @return the digest expected of the outputs, or null if the outputs are
+   *         validated against those added with addOutput()
+   */
+  public OutputDigest getExpectedOutputDigest() {
+    return expectedOutputDigest;
+  }
+
+  /**
+   * @return the digest of the outputs of the last run, or null if no digest
+   *         was expected of it
+   */
+  public OutputDigest getOutputDigest() {
+    return outputDigest;
+  }
+
+  /**
+   * Match expected and actual outputs by their serialized bytes rather than
+   * by equals(). Outputs are then serialized and matched by sorting them,
+   * which also validates outputs of classes that do not implement equals(),
+   * but fails outputs that are equal but serialize differently, such as
+   * MapWritables with entries in another order.
+   * 
+   * @param serializedMatching
+   */
+  public void setSerializedMatching(final boolean serializedMatching) {
+    this.serializedMatching = serializedMatching;
+  }
+
+  /**
+   * @param serializedMatching
+   * @return this
+   */
+  public TestDriver<K1, V1, K2, V2> withSerializedMatching(
+      final boolean serializedMatching) {
+    setSerializedMatching(serializedMatching);
+    return this;
+  }
+
+  /**
+   * @return whether outputs are matched by their serialized bytes rather
+   *         than by equals()
+   */
+  public boolean isSerializedMatching() {
+    return serializedMatching;
+  }
+
+  /**
+   * @return the report of the phases of the last run, and of its validation
+   *         if it was run by runTest
+   */
+  public RunReport getRunReport() {
+    return runReport;
+  }
+
+  /**
+   * Starts the report of a new run, to be called as each run starts
+   * 
+   * @return the report
+   */
+  protected RunReport newRunReport() {
+    runReport = new RunReport(isAllocationProfiling());
+    return runReport;
+  }
+
+  /**
+   * Times each call to map and to reduce, keeping their latencies in the
+   * {@link RunReport#getLatency(Phase)} of the run report with the keys of
+   * the slowest records. A record is timed from when it is read to when the
+   * next one is asked for, so the time includes collecting its outputs.
+   * Reducers of the new API are then given a mock context, as the Hadoop one
+   * reads a record ahead.
+   * 
+   * @param slowestRecords
+   *          the number of slowest records of each phase to keep the keys of
+   */
+  public void setRecordLatency(final int slowestRecords) {
+    if (slowestRecords < 0) {
+      throw new IllegalArgumentException(
+          "The number of slowest records must not be negative, not "
+              + slowestRecords);
+    }
+    this.slowestRecords = slowestRecords;
+  }
+
+  /**
+   * Times each call to map and to reduce, as
+   * {@link #setRecordLatency(int)} does
+   * 
+   * @param slowestRecords
+   * @return this
+   */
+  public TestDriver<K1, V1, K2, V2> withRecordLatency(
+      final int slowestRecords) {
+    setRecordLatency(slowestRecords);
+    return this;
+  }
+
+  /**
+   * @return the number of slowest records kept the keys of, or -1 if the
+   *         latency of records is not recorded
+   */
+  public int getRecordLatency() {
+    return slowestRecords;
+  }
+
+  /**
+   * Measures the bytes each phase of a run allocates, given by
+   * {@link RunReport.PhaseReport#getAllocatedBytes()} of the run report.
+   * What MRUnit allocates to collect and copy outputs is not counted. Only
+   * JVMs with com.sun.management.ThreadMXBean measure allocations.
+   * 
+   * @param allocationProfiling
+   */
+  public void setAllocationProfiling(final boolean allocationProfiling) {
+    this.allocationProfiling = allocationProfiling;
+  }
+
+  /**
+   * @param allocationProfiling
+   * @return this
+   */
+  public TestDriver<K1, V1, K2, V2> withAllocationProfiling(
+      final boolean allocationProfiling) {
+    setAllocationProfiling(allocationProfiling);
+    return this;
+  }
+
+  /**
+   * @return whether the bytes each phase of a run allocates are measured
+   */
+  public boolean isAllocationProfiling() {
+    return allocationProfiling || maxAllocatedBytesPerRecord >= 0
+        || baseline != null;
+  }
+
+  /**
+   * Fails runTest if the map, combine or reduce phase allocates more than
+   * maxAllocatedBytesPerRecord per input record, profiling allocations as
+   * {@link #setAllocationProfiling(boolean)} does. The check is skipped on
+   * JVMs which do not measure allocations.
+   * 
+   * @param maxAllocatedBytesPerRecord
+   */
+  public void setMaxAllocatedBytesPerRecord(
+      final long maxAllocatedBytesPerRecord) {
+    if (maxAllocatedBytesPerRecord < 0) {
+      throw new IllegalArgumentException(
+          "The most bytes allocated per record must not be negative, not "
+              + maxAllocatedBytesPerRecord);
+    }
+    this.maxAllocatedBytesPerRecord = maxAllocatedBytesPerRecord;
+  }
+
+  /**
+   * @param maxAllocatedBytesPerRecord
+   * @return this
+   */
+  public TestDriver<K1, V1, K2, V2> withMaxAllocatedBytesPerRecord(
+      final long maxAllocatedBytesPerRecord) {
+    setMaxAllocatedBytesPerRecord(maxAllocatedBytesPerRecord);
+    return this;
+  }
+
+  /**
+   * @return the most bytes a phase may allocate per input record, -1 if not
+   *         checked
+   */
+  public long getMaxAllocatedBytesPerRecord() {
+    return maxAllocatedBytesPerRecord;
+  }
+
+  /**
+   * Fails runTest if the 99th percentile latency of map calls, or of reduce
+   * calls, is more than p99. The latencies are those of the measured runs
+   * {@link #setPerformanceRuns(int, int)} describes.
+   * 
+   * @param p99
+   * @param unit
+   *          of p99
+   */
+  public void setMaxRecordsLatency(final long p99, final TimeUnit unit) {
+    if (p99 < 0) {
+      throw new IllegalArgumentException(
+          "The most records latency must not be negative, not " + p99);
+    }
+    maxRecordsLatencyNanos = unit.toNanos(p99);
+  }
+
+  /**
+   * @param p99
+   * @param unit
+   * @return this
+   */
+  public TestDriver<K1, V1, K2, V2> withMaxRecordsLatency(final long p99,
+      final TimeUnit unit) {
+    setMaxRecordsLatency(p99, unit);
+    return this;
+  }
+
+  /**
+   * Fails runTest if the median throughput of the measured runs
+   * {@link #setPerformanceRuns(int, int)} describes is less than
+   * recordsPerSecond. The throughput of a run is the input records of its map
+   * phase, or of its reduce phase if it has none, per second of the run.
+   * 
+   * @param recordsPerSecond
+   */
+  public void setMinThroughput(final double recordsPerSecond) {
+    if (!(recordsPerSecond >= 0)) {
+      throw new IllegalArgumentException(
+          "The least throughput must not be negative, not "
+              + recordsPerSecond);
+    }
+    minThroughput = recordsPerSecond;
+  }
+
+  /**
+   * @param recordsPerSecond
+   * @return this
+   */
+  public TestDriver<K1, V1, K2, V2> withMinThroughput(
+      final double recordsPerSecond) {
+    setMinThroughput(recordsPerSecond);
+    return this;
+  }
+
+  /**
+   * Fails runTest if the map, combine or reduce phase writes more than ratio
+   * records per input record
+   * 
+   * @param ratio
+   */
+  public void setMaxOutputAmplification(final double ratio) {
+    if (!(ratio >= 0)) {
+      throw new IllegalArgumentException(
+          "The most output amplification must not be negative, not " + ratio);
+    }
+    maxOutputAmplification = ratio;
+  }
+
+  /**
+   * @param ratio
+   * @return this
+   */
+  public TestDriver<K1, V1, K2, V2> withMaxOutputAmplification(
+      final double ratio) {
+    setMaxOutputAmplification(ratio);
+    return this;
+  }
+
+  /**
+   * Sets how runTest runs the driver when a latency or throughput is
+   * expected of it: warmUpRuns times first, so classes are loaded and code
+   * is compiled, then measuredRuns times. The outputs and counters of the
+   * last measured run are validated, those of the others are not kept. The
+   * defaults are 2 and 5.
+   * 
+   * @param warmUpRuns
+   * @param measuredRuns
+   */
+  public void setPerformanceRuns(final int warmUpRuns, final int measuredRuns) {
+    if (warmUpRuns < 0 || measuredRuns < 1) {
+      throw new IllegalArgumentException("Need at least 0 warm up runs and "
+          + "1 measured run, not " + warmUpRuns + " and " + measuredRuns);
+    }
+    this.warmUpRuns = warmUpRuns;
+    this.measuredRuns = measuredRuns;
+  }
+
+  /**
+   * @param warmUpRuns
+   * @param measuredRuns
+   * @return this
+   */
+  public TestDriver<K1, V1, K2, V2> withPerformanceRuns(final int warmUpRuns,
+      final int measuredRuns) {
+    setPerformanceRuns(warmUpRuns, measuredRuns);
+    return this;
+  }
+
+  /**
+   * Makes runTest compare the metrics of its run with those stored in a
+   * baseline file, or store them there if it has none for this test, as
+   * {@link PerformanceBaseline} describes. The driver is run as
+   * {@link #setPerformanceRuns(int, int)} describes, with its allocations
+   * profiled.
+   * 
+   * @param file
+   *          of the baseline, shared by the tests of a project
+   * @param testName
+   *          the name of the test, which with the classes under test keys
+   *          its metrics in the file
+   */
+  public void setPerformanceBaseline(final File file, final String testName) {
+    baseline = new PerformanceBaseline(file);
+    baselineTestName = returnNonNull(testName);
+  }
+
+  /**
+   * @param file
+   * @param testName
+   * @return this
+   */
+  public TestDriver<K1, V1, K2, V2> withPerformanceBaseline(final File file,
+      final String testName) {
+    setPerformanceBaseline(file, testName);
+    return this;
+  }
+
+  /**
+   * @param tolerance
+   *          the fraction the throughput and allocations of a run may be
+   *          worse than the baseline by, 0.1 by default
+   */
+  public void setBaselineTolerance(final double tolerance) {
+    if (!(tolerance >= 0)) {
+      throw new IllegalArgumentException(
+          "The baseline tolerance must not be negative, not " + tolerance);
+    }
+    baselineTolerance = tolerance;
+  }
+
+  /**
+   * @param tolerance
+   * @return this
+   */
+  public TestDriver<K1, V1, K2, V2> withBaselineTolerance(
+      final double tolerance) {
+    setBaselineTolerance(tolerance);
+    return this;
+  }
+
+  public double getBaselineTolerance() {
+    return baselineTolerance;
+  }
+
+  /**
+   * @return the key of the metrics of this driver in its baseline: the test
+   *         name and the classes under test
+   */
+  protected String getBaselineKey() {
+    final StringBuilder key = new StringBuilder(baselineTestName).append('(');
+    final List<Class<?>> classes = getClassesUnderTest();
+    for (int i = 0; i < classes.size(); i++) {
+      key.append(i == 0 ? "" : ",").append(classes.get(i).getName());
+    }
+    return key.append(')').toString();
+  }
+
+  /**
+   * @return the classes of the mappers, combiners and reducers the driver
+   *         runs
+   */
+  protected List<Class<?>> getClassesUnderTest() {
+    return Collections.emptyList();
+  }
+
+  /**
+   * @param instances
+   * @return the classes of those of instances which are not null
+   */
+  protected static List<Class<?>> classesOf(final Object... instances) {
+    final List<Class<?>> classes = new ArrayList<Class<?>>();
+    for (final Object instance : instances) {
+      if (instance != null) {
+        classes.add(instance.getClass());
+      }
+    }
+    return classes;
+  }
+
+  /**
+   * @return whether runTest needs to run the driver repeatedly, to measure
+   *         latencies or throughput
+   */
+  protected boolean isMeasuringRuns() {
+    return maxRecordsLatencyNanos >= 0 || minThroughput >= 0
+        || baseline != null;
+  }
+
+  /**
+   * @return whether each call to map and reduce is timed
+   */
+  protected boolean isTimingRecords() {
+    return slowestRecords >= 0 || maxRecordsLatencyNanos >= 0;
+  }
+
+  /**
+   * @param phase
+   * @param records
+   * @return records, timed for the latency of phase if
+   *         {@link #isTimingRecords()}
+   */
+  protected <K, V> Iterator<Pair<K, V>> timeRecords(final Phase phase,
+      final Iterator<Pair<K, V>> records) {
+    if (!isTimingRecords()) {
+      return records;
+    }
+    return runReport.timeRecords(phase, records, Math.max(slowestRecords, 0));
+  }
+
+  /**
+   * @param phase
+   * @return a timer of the records of phase if {@link #isTimingRecords()},
+   *         else null
+   */
+  protected RunReport.RecordTimer timeRecords(final Phase phase) {
+    if (!isTimingRecords()) {
+      return null;
+    }
+    return runReport.timeRecords(phase, Math.max(slowestRecords, 0));
+  }
+
+  /**
+   * Runs the driver for runTest: once, or when
+   * {@link #isMeasuringRuns()} as {@link #setPerformanceRuns(int, int)}
+   * describes, measuring each of the measured runs
+   * 
+   * @return the outputs of the last run
+   */
+  protected List<Pair<K2, V2>> runForTest() throws IOException {
+    if (!isMeasuringRuns()) {
+      return run();
+    }
+    checkRepeatable();
+    for (int i = 0; i < warmUpRuns; i++) {
+      runDiscardingCounters();
+    }
+    measuredLatencies.clear();
+    final double[] throughputs = new double[measuredRuns];
+    List<Pair<K2, V2>> outputs = null;
+    for (int i = 0; i < measuredRuns; i++) {
+      final long start = System.nanoTime();
+      if (i < measuredRuns - 1) {
+        runDiscardingCounters();
+      } else {
+        outputs = run();
+      }
+      final long nanos = Math.max(System.nanoTime() - start, 1);
+      throughputs[i] = getInputRecords(runReport) * 1e9 / nanos;
+      for (final Phase phase : new Phase[] { Phase.MAP, Phase.REDUCE }) {
+        final LatencyHistogram latency = runReport.getLatency(phase);
+        if (latency == null) {
+          continue;
+        }
+        if (measuredLatencies.containsKey(phase)) {
+          measuredLatencies.get(phase).add(latency);
+        } else {
+          measuredLatencies.put(phase, latency);
+        }
+      }
+    }
+    Arrays.sort(throughputs);
+    measuredThroughputs = throughputs;
+    measuredThroughput = throughputs[measuredRuns / 2];
+    return outputs;
+  }
+
+  /**
+   * @throws IllegalStateException
+   *           if the driver cannot be run more than once, so cannot be
+   *           measured
+   */
+  protected void checkRepeatable() {
+  }
+
+  /**
+   * Runs the driver without keeping what it counts, for runs which are only
+   * measured. Drivers override this to count into counters of their own.
+   * 
+   * @return the outputs
+   */
+  protected List<Pair<K2, V2>> runDiscardingCounters() throws IOException {
+    return run();
+  }
+
+  private static long getInputRecords(final RunReport report) {
+    final long mapInputs = report.getPhase(Phase.MAP).getInputRecords();
+    return mapInputs > 0 ? mapInputs : report.getPhase(Phase.REDUCE)
+        .getInputRecords();
+  }
+
+  /**
+   * @param phase
+   * @return a timer of phase on the current thread, for the report of the
+   *         run
+   */
+  protected RunReport.Timer startPhase(final Phase phase) {
+    return runReport.start(phase);
+  }
+
+  /**
+   * @param creator
+   * @return a collector keeping only the digest of the outputs if one is
+   *         expected, else the collectable of creator
+   */
+  protected <K, V> OutputCollectable<K, V> createOutputCollectable(
+      final MockOutputCreator<K, V> creator) throws IOException {
+    if (expectedOutputDigest != null) {
+      return new DigestOutputCollector<K, V>(configuration);
+    }
+    return creator.createOutputCollectable(configuration);
+  }
+
+  /**
+   * @param collectable
+   * @return the outputs of collectable, keeping its digest as that of the run
+   */
+  protected List<Pair<K2, V2>> getOutputs(
+      final OutputCollectable<K2, V2> collectable) throws IOException {
+    return getOutputs(Collections.singletonList(collectable)).get(0);
+  }
+
+  /**
+   * @param collectables
+   *          null for any whose outputs were sent elsewhere
+   * @return the outputs of each collectable, keeping the digest of them all,
+   *         one after the other, as that of the run
+   */
+  protected List<List<Pair<K2, V2>>> getOutputs(
+      final List<? extends OutputCollectable<K2, V2>> collectables)
+      throws IOException {
+    final List<List<Pair<K2, V2>>> outputs = new ArrayList<List<Pair<K2, V2>>>(
+        collectables.size());
+    OutputDigest digest = null;
+    for (final OutputCollectable<K2, V2> collectable : collectables) {
+      if (collectable == null) {
+        outputs.add(Collections.<Pair<K2, V2>> emptyList());
+        continue;
+      }
+      if (collectable instanceof DigestOutputCollector) {
+        final OutputDigest next = ((DigestOutputCollector<K2, V2>) collectable)
+            .getDigest();
+        digest = digest == null ? next : digest.followedBy(next);
+      }
+      if (collectable instanceof MockMapredOutputFormat
+          || collectable instanceof MockMapreduceOutputFormat) {
+        final RunReport.Timer timer = startPhase(Phase.OUTPUT_FORMAT);
+        try {
+          final List<Pair<K2, V2>> read = collectable.getOutputs();
+          timer.stop(read.size(), read.size());
+          outputs.add(read);
+        } finally {
+          timer.close();
+        }
+      } else {
+        outputs.add(collectable.getOutputs());
+      }
+    }
+    outputDigest = digest;
+    return outputs;
+  }
+
   /**
    * @return The configuration object that will given to the mapper and/or
    *         reducer associated with the driver
@@ -229,157 +864,368 @@ public abstract class TestDriver<K1, V1, K2, V2> {
    */
   protected void validate(final List<Pair<K2, V2>> outputs,
       final boolean orderMatters) {
+    final RunReport.Timer timer = startPhase(Phase.VALIDATE);
+    final ValidationErrors errors;
+    try {
+      errors = validate(outputs, orderMatters, timer);
+    } finally {
+      timer.close();
+    }
+    errors.assertNone();
+  }
+
+  /**
+   * @return the errors of the outputs, stopping timer once they are checked
+   */
+  private ValidationErrors validate(final List<Pair<K2, V2>> outputs,
+      final boolean orderMatters, final RunReport.Timer timer) {
+    if (expectedOutputDigest != null) {
+      final OutputDigest actual = outputDigest != null ? outputDigest
+          : digest(outputs);
+      final ValidationErrors errors = validateDigest(actual, orderMatters);
+      timer.stop(actual.getRecords(), expectedOutputDigest.getRecords(),
+          outputDigest != null ? 0 : actual.getBytes());
+      return errors;
+    }
 
-    final List<String> errors = new ArrayList<String>();
+    final ValidationErrors errors = newValidationErrors();
 
     // were we supposed to get output in the first place?
     if (expectedOutputs.isEmpty() && !outputs.isEmpty()) {
-      logError(errors,
-          String.format("Expected no outputs; got %d outputs.", outputs.size()));
-    }
-
-    final Map<Pair<K2, V2>, List<Integer>> expectedPositions = buildPositionMap(expectedOutputs);
-    final Map<Pair<K2, V2>, List<Integer>> actualPositions = buildPositionMap(outputs);
-
-    for (final Pair<K2, V2> output : expectedPositions.keySet()) {
-      final List<Integer> expectedPositionList = expectedPositions.get(output);
-      final List<Integer> actualPositionList = actualPositions.get(output);
-      if (actualPositionList != null) {
-        // the expected value has been seen - check positions
-        final int expectedPositionsCount = expectedPositionList.size();
-        final int actualPositionsCount = actualPositionList.size();
-        if (orderMatters) {
-          // order is important, so the positions must match exactly
-          if (expectedPositionList.equals(actualPositionList)) {
-            LOG.debug(String.format("Matched expected output %s at "
-                + "positions %s", output, expectedPositionList.toString()));
-          } else {
-            int i = 0;
-            while (expectedPositionsCount > i || actualPositionsCount > i) {
-              if (expectedPositionsCount > i && actualPositionsCount > i) {
-                final int expectedPosition = expectedPositionList.get(i);
-                final int actualPosition = actualPositionList.get(i);
-                if (expectedPosition == actualPosition) {
-                  LOG.debug(String.format("Matched expected output %s at "
-                      + "position %d", output, expectedPosition));
-                } else {
-                  logError(errors, String.format(
-                      "Matched expected output %s but at "
-                          + "incorrect position %d (expected position %d)",
-                      output, actualPosition, expectedPosition));
-                }
-              } else if (expectedPositionsCount > i) {
-                // not ok, value wasn't seen enough times
-                logError(errors, String.format(
-                    "Missing expected output %s at position %d.", output,
-                    expectedPositionList.get(i)));
-              } else {
-                // not ok, value seen too many times
-                logError(errors, String.format(
-                    "Received unexpected output %s at position %d.", output,
-                    actualPositionList.get(i)));
-              }
-              i++;
-            }
-          }
-        } else {
-          // order is unimportant, just check that the count of times seen match
-          if (expectedPositionsCount == actualPositionsCount) {
-            // ok, counts match
-            LOG.debug(String.format("Matched expected output %s in "
-                + "%d positions", output, expectedPositionsCount));
-          } else if (expectedPositionsCount > actualPositionsCount) {
-            // not ok, value wasn't seen enough times
-            for (int i = 0; i < expectedPositionsCount - actualPositionsCount; i++) {
-              logError(errors,
-                  String.format("Missing expected output %s", output));
-            }
-          } else {
-            // not ok, value seen too many times
-            for (int i = 0; i < actualPositionsCount - expectedPositionsCount; i++) {
-              logError(errors,
-                  String.format("Received unexpected output %s", output));
-            }
-          }
-        }
-        actualPositions.remove(output);
+      errors.add("Expected no outputs; got %d outputs.", outputs.size());
+    }
+
+    if (serializedMatching) {
+      final SerializedRecords<K2, V2> expected = serialize(expectedOutputs);
+      final SerializedRecords<K2, V2> actual = serialize(outputs);
+      if (orderMatters) {
+        validateSerializedInOrder(outputs, expected, actual, errors);
       } else {
-        // the expected value was not found anywhere - output errors
-        checkTypesAndLogError(outputs, output, expectedPositionList,
-            orderMatters, errors, "Missing expected output");
+        validateSerializedInAnyOrder(outputs, expected, actual, errors);
       }
+      timer.stop(actual.size(), expected.size(),
+          actual.getBytes() + expected.getBytes());
+    } else {
+      if (orderMatters) {
+        validateInOrder(outputs, errors);
+      } else {
+        validateInAnyOrder(outputs, errors);
+      }
+      timer.stop(outputs.size(), expectedOutputs.size(), 0);
     }
+    return errors;
+  }
+
+  /**
+   * @return errors reporting at most mrunit.validate.max.reported.errors
+   */
+  protected ValidationErrors newValidationErrors() {
+    return new ValidationErrors(LOG, getConfiguration().getInt(
+        MAX_REPORTED_ERRORS_KEY, 100));
+  }
 
-    for (final Pair<K2, V2> output : actualPositions.keySet()) {
-      // anything left in actual set is unexpected
-      checkTypesAndLogError(outputs, output, actualPositions.get(output),
-          orderMatters, errors, "Received unexpected output");
+  private SerializedRecords<K2, V2> serialize(final List<Pair<K2, V2>> pairs) {
+    try {
+      return new SerializedRecords<K2, V2>(pairs, configuration);
+    } catch (final IOException e) {
+      throw new IllegalStateException(e);
     }
+  }
 
-    if (!errors.isEmpty()) {
-      final StringBuilder buffer = new StringBuilder();
-      buffer.append(errors.size()).append(" Error(s): ");
-      formatValueList(errors, buffer);
-      fail(buffer.toString());
+  /**
+   * Walks the expected and actual outputs together, and matches those at
+   * positions where they differ by looking each actual output up in a
+   * {@link PositionIndex} of the expected ones. Errors are given in order of
+   * position.
+   */
+  private void validateInOrder(final List<Pair<K2, V2>> outputs,
+      final ValidationErrors errors) {
+    final int size = Math.max(expectedOutputs.size(), outputs.size());
+    final boolean[] expectedMatched = new boolean[expectedOutputs.size()];
+    final boolean[] actualMatched = new boolean[outputs.size()];
+    int mismatches = 0;
+    for (int i = 0; i < size; i++) {
+      if (i < expectedOutputs.size() && i < outputs.size()
+          && expectedOutputs.get(i).equals(outputs.get(i))) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(String.format("Matched expected output %s at "
+              + "position %d", outputs.get(i), i));
+        }
+        expectedMatched[i] = true;
+        actualMatched[i] = true;
+      } else {
+        mismatches++;
+      }
+    }
+    if (mismatches == 0) {
+      return;
     }
 
+    // the errors at each expected, and each actual, position
+    final Message[] expectedErrors = new Message[expectedOutputs.size()];
+    final Message[] actualErrors = new Message[outputs.size()];
+    final PositionIndex index = new PositionIndex(expectedOutputs,
+        expectedMatched);
+    for (int j = 0; j < outputs.size(); j++) {
+      if (actualMatched[j]) {
+        continue;
+      }
+      final Pair<K2, V2> output = outputs.get(j);
+      final int position = index.take(output);
+      if (position >= 0) {
+        expectedMatched[position] = true;
+        expectedErrors[position] = new Message(
+            "Matched expected output %s but at "
+                + "incorrect position %d (expected position %d)", output, j,
+            position);
+      } else {
+        actualErrors[j] = formatError(outputs, output, j, true,
+            "Received unexpected output");
+      }
+    }
+    for (int i = 0; i < expectedOutputs.size(); i++) {
+      if (!expectedMatched[i]) {
+        expectedErrors[i] = formatError(outputs, expectedOutputs.get(i), i,
+            true, "Missing expected output");
+      }
+    }
+    addInOrder(expectedErrors, actualErrors, size, errors);
   }
 
-  private void checkTypesAndLogError(final List<Pair<K2, V2>> outputs,
-      final Pair<K2, V2> output, final List<Integer> positions,
-      final boolean orderMatters, final List<String> errors,
-      final String errorString) {
-    for (final int pos : positions) {
-      String msg = null;
-      if (expectedOutputs.size() > pos && outputs.size() > pos) {
-        final Pair<K2, V2> actual = outputs.get(pos);
-        final Pair<K2, V2> expected = expectedOutputs.get(pos);
-        final Class<?> actualKeyClass = actual.getFirst().getClass();
-        final Class<?> actualValueClass = actual.getSecond().getClass();
-        final Class<?> expectedKeyClass = expected.getFirst().getClass();
-        final Class<?> expectedValueClass = expected.getSecond().getClass();
-        if (actualKeyClass != expectedKeyClass) {
-          msg = String.format(
-              "%s %s: Mismatch in key class: expected: %s actual: %s",
-              errorString, output, expectedKeyClass, actualKeyClass);
-        } else if (actualValueClass != expectedValueClass) {
-          msg = String.format(
-              "%s %s: Mismatch in value class: expected: %s actual: %s",
-              errorString, output, expectedValueClass, actualValueClass);
+  /**
+   * Looks each actual output up in a {@link PositionIndex} of the expected
+   * ones. Missing outputs are given before unexpected ones, each in order of
+   * position.
+   */
+  private void validateInAnyOrder(final List<Pair<K2, V2>> outputs,
+      final ValidationErrors errors) {
+    final boolean[] expectedMatched = new boolean[expectedOutputs.size()];
+    final boolean[] actualMatched = new boolean[outputs.size()];
+    final PositionIndex index = new PositionIndex(expectedOutputs, null);
+    for (int j = 0; j < outputs.size(); j++) {
+      final int position = index.take(outputs.get(j));
+      if (position >= 0) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(String.format("Matched expected output %s",
+              outputs.get(j)));
         }
+        expectedMatched[position] = true;
+        actualMatched[j] = true;
       }
-      if (msg == null) {
-        if (orderMatters) {
-          msg = String
-              .format("%s %s at position %d.", errorString, output, pos);
-        } else {
-          msg = String.format("%s %s", errorString, output);
+    }
+    for (int i = 0; i < expectedOutputs.size(); i++) {
+      if (!expectedMatched[i]) {
+        errors.add(formatError(outputs, expectedOutputs.get(i), i, false,
+            "Missing expected output"));
+      }
+    }
+    for (int j = 0; j < outputs.size(); j++) {
+      if (!actualMatched[j]) {
+        errors.add(formatError(outputs, outputs.get(j), j, false,
+            "Received unexpected output"));
+      }
+    }
+  }
+
+  /**
+   * Adds the errors at each position, those of the expected output before
+   * those of the actual one
+   */
+  private static void addInOrder(final Message[] expectedErrors,
+      final Message[] actualErrors, final int size,
+      final ValidationErrors errors) {
+    for (int position = 0; position < size; position++) {
+      if (position < expectedErrors.length && expectedErrors[position] != null) {
+        errors.add(expectedErrors[position]);
+      }
+      if (position < actualErrors.length && actualErrors[position] != null) {
+        errors.add(actualErrors[position]);
+      }
+    }
+  }
+
+  /**
+   * Walks the expected and actual outputs together, and matches those at
+   * positions where they differ by sorting each by their hashes and merging
+   * them. Errors are given in order of position.
+   */
+  private void validateSerializedInOrder(final List<Pair<K2, V2>> outputs,
+      final SerializedRecords<K2, V2> expected,
+      final SerializedRecords<K2, V2> actual, final ValidationErrors errors) {
+    final List<Record<K2, V2>> missing = new ArrayList<Record<K2, V2>>();
+    final List<Record<K2, V2>> unexpected = new ArrayList<Record<K2, V2>>();
+    final int size = Math.max(expected.size(), actual.size());
+    for (int i = 0; i < size; i++) {
+      final Record<K2, V2> e = i < expected.size() ? expected.get(i) : null;
+      final Record<K2, V2> a = i < actual.size() ? actual.get(i) : null;
+      if (e != null && a != null && e.matches(a)) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(String.format("Matched expected output %s at "
+              + "position %d", e, i));
         }
+        continue;
+      }
+      if (e != null) {
+        missing.add(e);
+      }
+      if (a != null) {
+        unexpected.add(a);
+      }
+    }
+
+    // the errors at each expected, and each actual, position
+    final Message[] expectedErrors = new Message[expected.size()];
+    final Message[] actualErrors = new Message[actual.size()];
+    SerializedRecords.sortByHash(missing);
+    SerializedRecords.sortByHash(unexpected);
+    int i = 0;
+    int j = 0;
+    while (i < missing.size() || j < unexpected.size()) {
+      final int cmp = compareNext(missing, i, unexpected, j);
+      if (cmp == 0) {
+        final Record<K2, V2> e = missing.get(i++);
+        final Record<K2, V2> a = unexpected.get(j++);
+        expectedErrors[e.getPosition()] = new Message(
+            "Matched expected output %s but at "
+                + "incorrect position %d (expected position %d)", e,
+            a.getPosition(), e.getPosition());
+      } else if (cmp < 0) {
+        final Record<K2, V2> e = missing.get(i++);
+        expectedErrors[e.getPosition()] = formatError(outputs, e,
+            e.getPosition(), true, "Missing expected output");
+      } else {
+        final Record<K2, V2> a = unexpected.get(j++);
+        actualErrors[a.getPosition()] = formatError(outputs, a,
+            a.getPosition(), true, "Received unexpected output");
       }
-      logError(errors, msg);
     }
+    addInOrder(expectedErrors, actualErrors, size, errors);
   }
 
-  private Map<Pair<K2, V2>, List<Integer>> buildPositionMap(
-      final List<Pair<K2, V2>> values) {
-    final Map<Pair<K2, V2>, List<Integer>> valuePositions = new HashMap<Pair<K2, V2>, List<Integer>>();
-    for (int i = 0; i < values.size(); i++) {
-      final Pair<K2, V2> output = values.get(i);
-      List<Integer> positions;
-      if (valuePositions.containsKey(output)) {
-        positions = valuePositions.get(output);
+  /**
+   * Sorts the expected and actual outputs by their hashes and merges them.
+   * Missing outputs are given before unexpected ones, each in order of their
+   * bytes.
+   */
+  private void validateSerializedInAnyOrder(
+      final List<Pair<K2, V2>> outputs, final SerializedRecords<K2, V2> expected,
+      final SerializedRecords<K2, V2> actual, final ValidationErrors errors) {
+    final List<Record<K2, V2>> expectedSorted = expected.sortedByHash();
+    final List<Record<K2, V2>> actualSorted = actual.sortedByHash();
+    final List<Record<K2, V2>> missing = new ArrayList<Record<K2, V2>>();
+    final List<Record<K2, V2>> unexpected = new ArrayList<Record<K2, V2>>();
+    int i = 0;
+    int j = 0;
+    while (i < expectedSorted.size() || j < actualSorted.size()) {
+      final int cmp = compareNext(expectedSorted, i, actualSorted, j);
+      if (cmp == 0) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(String.format("Matched expected output %s",
+              expectedSorted.get(i)));
+        }
+        i++;
+        j++;
+      } else if (cmp < 0) {
+        missing.add(expectedSorted.get(i++));
       } else {
-        positions = new ArrayList<Integer>();
-        valuePositions.put(output, positions);
+        unexpected.add(actualSorted.get(j++));
       }
-      positions.add(i);
     }
-    return valuePositions;
+    for (final Record<K2, V2> output : SerializedRecords.sort(missing)) {
+      errors.add(formatError(outputs, output, output.getPosition(), false,
+          "Missing expected output"));
+    }
+    for (final Record<K2, V2> output : SerializedRecords.sort(unexpected)) {
+      errors.add(formatError(outputs, output, output.getPosition(), false,
+          "Received unexpected output"));
+    }
   }
 
-  private void logError(final List<String> errors, final String msg) {
-    LOG.error(msg);
-    errors.add(msg);
+  /**
+   * @return the order of the records at i and j of two lists sorted by
+   *         hash, where the end of a list is after every record
+   */
+  private static <K, V> int compareNext(final List<Record<K, V>> a,
+      final int i, final List<Record<K, V>> b, final int j) {
+    if (i == a.size()) {
+      return 1;
+    }
+    if (j == b.size()) {
+      return -1;
+    }
+    return SerializedRecords.<K, V> byHash().compare(a.get(i), b.get(j));
+  }
+
+  /**
+   * @return the error for output, naming a mismatch in the key or value
+   *         class if the expected and actual outputs at its position differ in
+   *         class
+   */
+  private Message formatError(final List<Pair<K2, V2>> outputs,
+      final Object output, final int pos, final boolean orderMatters,
+      final String errorString) {
+    if (expectedOutputs.size() > pos && outputs.size() > pos) {
+      final Pair<K2, V2> actual = outputs.get(pos);
+      final Pair<K2, V2> expected = expectedOutputs.get(pos);
+      final Class<?> actualKeyClass = actual.getFirst().getClass();
+      final Class<?> actualValueClass = actual.getSecond().getClass();
+      final Class<?> expectedKeyClass = expected.getFirst().getClass();
+      final Class<?> expectedValueClass = expected.getSecond().getClass();
+      if (actualKeyClass != expectedKeyClass) {
+        return new Message(
+            "%s %s: Mismatch in key class: expected: %s actual: %s",
+            errorString, output, expectedKeyClass, actualKeyClass);
+      } else if (actualValueClass != expectedValueClass) {
+        return new Message(
+            "%s %s: Mismatch in value class: expected: %s actual: %s",
+            errorString, output, expectedValueClass, actualValueClass);
+      }
+    }
+    if (orderMatters) {
+      return new Message("%s %s at position %d.", errorString, output, pos);
+    }
+    return new Message("%s %s", errorString, output);
+  }
+
+  /**
+   * check the digest of the outputs against the expected digest
+   */
+  private ValidationErrors validateDigest(final OutputDigest actual,
+      final boolean orderMatters) {
+    final OutputDigest expected = expectedOutputDigest;
+    final ValidationErrors errors = newValidationErrors();
+    if (actual.getRecords() != expected.getRecords()) {
+      errors.add("Expected %d output records; got %d.", expected.getRecords(),
+          actual.getRecords());
+    }
+    if (actual.getBytes() != expected.getBytes()) {
+      errors.add("Expected %d output bytes; got %d.", expected.getBytes(),
+          actual.getBytes());
+    }
+    if (actual.getUnorderedHash() != expected.getUnorderedHash()) {
+      errors.add("Mismatch in output records: expected digest %s actual: %s",
+          expected, actual);
+    } else if (orderMatters
+        && actual.getOrderedHash() != expected.getOrderedHash()) {
+      errors.add("Matched output records but in incorrect order: "
+          + "expected digest %s actual: %s", expected, actual);
+    } else {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Matched expected output digest " + expected);
+      }
+    }
+    return errors;
+  }
+
+  /**
+   * @return the digest of outputs, for runs that did not keep one
+   */
+  private OutputDigest digest(final List<Pair<K2, V2>> outputs) {
+    try {
+      return DigestOutputCollector.digest(outputs, configuration);
+    } catch (final IOException e) {
+      throw new IllegalStateException(e);
+    }
   }
 
   /**
@@ -389,8 +1235,7 @@ public abstract class TestDriver<K1, V1, K2, V2> {
    * @param counterWrapper
    */
   protected void validate(final CounterWrapper counterWrapper) {
-    boolean success = true;
-    final List<String> errors = new ArrayList<String>();
+    final ValidationErrors errors = newValidationErrors();
 
     // Firstly check enumeration based counters
     for (final Pair<Enum, Long> expected : expectedEnumCounters) {
@@ -402,9 +1247,7 @@ public abstract class TestDriver<K1, V1, K2, V2> {
             + expected.getFirst().getDeclaringClass().getCanonicalName() + "."
             + expected.getFirst().toString() + " have value " + actualValue
             + " instead of expected " + expected.getSecond();
-        logError(errors, msg);
-
-        success = false;
+        errors.add(msg);
       }
     }
 
@@ -419,18 +1262,73 @@ public abstract class TestDriver<K1, V1, K2, V2> {
         final String msg = "Counter with category " + counter.getFirst()
             + " and name " + counter.getSecond() + " have value " + actualValue
             + " instead of expected " + expected.getSecond();
-        logError(errors, msg);
-
-        success = false;
+        errors.add(msg);
       }
     }
 
-    if (!success) {
-      final StringBuilder buffer = new StringBuilder();
-      buffer.append(errors.size()).append(" Error(s): ");
-      formatValueList(errors, buffer);
-      fail(buffer.toString());
+    errors.assertNone();
+  }
+
+  /**
+   * Check that the phases of the run in report kept to the performance
+   * expected of them
+   * 
+   * @param report
+   */
+  protected void validate(final RunReport report) {
+    final ValidationErrors errors = newValidationErrors();
+    final Phase[] userPhases = { Phase.MAP, Phase.COMBINE, Phase.REDUCE };
+    if (maxAllocatedBytesPerRecord >= 0 && !report.isMeasuringAllocations()) {
+      LOG.warn("Allocations are not checked as the JVM does not measure them");
+    } else if (maxAllocatedBytesPerRecord >= 0) {
+      for (final Phase phase : userPhases) {
+        final double perRecord = report.getPhase(phase)
+            .getAllocatedBytesPerInputRecord();
+        if (perRecord > maxAllocatedBytesPerRecord) {
+          errors.add("%s phase allocated %.1f bytes per input record, "
+              + "more than the most of %d", phase, perRecord,
+              maxAllocatedBytesPerRecord);
+        }
+      }
+    }
+    if (maxOutputAmplification >= 0) {
+      for (final Phase phase : userPhases) {
+        final RunReport.PhaseReport phaseReport = report.getPhase(phase);
+        final long inputs = phaseReport.getInputRecords();
+        final double amplification = inputs == 0 ? 0 : (double) phaseReport
+            .getOutputRecords() / inputs;
+        if (amplification > maxOutputAmplification) {
+          errors.add("%s phase wrote %.2f records per input record, "
+              + "more than the most of %.2f", phase, amplification,
+              maxOutputAmplification);
+        }
+      }
+    }
+    if (maxRecordsLatencyNanos >= 0) {
+      for (final Map.Entry<Phase, LatencyHistogram> entry : measuredLatencies
+          .entrySet()) {
+        final long p99 = entry.getValue().getPercentileNanos(99);
+        if (p99 > maxRecordsLatencyNanos) {
+          errors.add("%s phase p99 record latency of %.3f ms is more than "
+              + "the most of %.3f ms", entry.getKey(), p99 / 1e6,
+              maxRecordsLatencyNanos / 1e6);
+        }
+      }
+    }
+    if (minThroughput >= 0 && measuredThroughput < minThroughput) {
+      errors.add("Throughput of %.1f records per second is less than the "
+          + "least of %.1f", measuredThroughput, minThroughput);
+    }
+    if (baseline != null) {
+      try {
+        baseline.check(getBaselineKey(), report, counterWrapper,
+            measuredThroughputs, baselineTolerance, errors);
+      } catch (final IOException ioe) {
+        LOG.error(ioe);
+        throw new RuntimeException(ioe);
+      }
     }
+    errors.assertNone();
   }
 
   protected static void formatValueList(final List<?> values,
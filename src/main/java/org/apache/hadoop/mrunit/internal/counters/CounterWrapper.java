@@ -53,6 +53,22 @@ public class CounterWrapper {
     mapreduce = returnNonNull(counters);
   }
 
+  /**
+   * Increment the counter for the enum
+   * 
+   * @param e
+   *          The enum representing the counter
+   * @param amount
+   *          added to the counter's value
+   */
+  public void increment(final Enum e, final long amount) {
+    if (mapred != null) {
+      mapred.incrCounter(e, amount);
+    } else {
+      mapreduce.findCounter(e).increment(amount);
+    }
+  }
+
   /**
    * Get counter value based on Enumeration
    * 
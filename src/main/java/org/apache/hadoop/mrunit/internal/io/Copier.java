@@ -0,0 +1,41 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.io;
+
+import java.io.IOException;
+
+/**
+ * Deep copies objects of a single class. {@link Serialization} creates one per
+ * class and thread, so implementations need not be thread safe.
+ * 
+ * @param <T>
+ *          the class copied
+ */
+public interface Copier<T> {
+
+  /**
+   * @param orig
+   *          the object to copy
+   * @param copy
+   *          if null a new object is returned, if not null it may or may not be
+   *          overwritten with the state of orig and returned
+   * @return a copy of orig
+   * @throws IOException
+   */
+  T copy(T orig, T copy) throws IOException;
+}
@@ -0,0 +1,38 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.io;
+
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * Creates {@link Copier}s for classes the built-in copiers would not copy, or
+ * would copy too slowly. Factories are named in the configuration at
+ * {@link Serialization#COPIER_FACTORIES_KEY}, created once with their no-arg
+ * constructor and consulted in order before the built-in copiers.
+ */
+public interface CopierFactory {
+
+  /**
+   * @param clazz
+   *          the class to copy
+   * @param conf
+   *          the configuration objects are copied with
+   * @return a copier of clazz, or null to leave clazz to the next factory
+   */
+  <T> Copier<T> newCopier(Class<T> clazz, Configuration conf);
+}
@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.io;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+/**
+ * Scratch buffers for copying a record through its serialized form. There is
+ * one instance per thread, shared by every {@link Serialization} used on it.
+ * The output buffer grows to the largest record copied on the thread and is
+ * reset rather than reallocated between copies.
+ */
+final class CopyBuffers {
+
+  private static final ThreadLocal<CopyBuffers> BUFFERS = new ThreadLocal<CopyBuffers>() {
+    @Override
+    protected CopyBuffers initialValue() {
+      return new CopyBuffers();
+    }
+  };
+
+  private final DataOutputBuffer output = new DataOutputBuffer();
+  private final DataInputBuffer input = new DataInputBuffer();
+
+  private CopyBuffers() {
+  }
+
+  /**
+   * @return the buffers of the calling thread
+   */
+  static CopyBuffers get() {
+    return BUFFERS.get();
+  }
+
+  /**
+   * @return the output buffer, emptied ready for the next record
+   */
+  DataOutputBuffer startWrite() {
+    output.reset();
+    return output;
+  }
+
+  /**
+   * @return the input buffer, positioned at the start of the record written
+   *         since the last {@link #startWrite()}
+   */
+  DataInputBuffer startRead() {
+    input.reset(output.getData(), output.getLength());
+    return input;
+  }
+
+  DataOutputBuffer getOutput() {
+    return output;
+  }
+
+  DataInputBuffer getInput() {
+    return input;
+  }
+
+  /**
+   * @return the size the output buffer has grown to
+   */
+  int getCapacity() {
+    return output.getData().length;
+  }
+}
@@ -0,0 +1,69 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.io;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mrunit.types.Immutable;
+
+/**
+ * Classes whose instances can be shared instead of copied: a fixed set of JDK
+ * and Hadoop types, enums, classes annotated {@link Immutable} and classes
+ * named in the configuration at {@link #IMMUTABLE_CLASSES_KEY}
+ */
+final class ImmutableTypes {
+
+  static final String IMMUTABLE_CLASSES_KEY = "mrunit.copy.immutable.classes";
+
+  private static final Set<Class<?>> BUILT_IN = new HashSet<Class<?>>(
+      Arrays.<Class<?>> asList(NullWritable.class, String.class,
+          Boolean.class, Byte.class, Character.class, Short.class,
+          Integer.class, Long.class, Float.class, Double.class,
+          BigInteger.class, BigDecimal.class));
+
+  private final Set<String> configured;
+
+  /**
+   * @param conf
+   *          read for {@link #IMMUTABLE_CLASSES_KEY}
+   */
+  ImmutableTypes(final Configuration conf) {
+    final Collection<String> names = conf
+        .getStringCollection(IMMUTABLE_CLASSES_KEY);
+    configured = names.isEmpty() ? Collections.<String> emptySet()
+        : new HashSet<String>(names);
+  }
+
+  /**
+   * @param clazz
+   * @return true if instances of clazz need not be copied
+   */
+  boolean isImmutable(final Class<?> clazz) {
+    return BUILT_IN.contains(clazz) || Enum.class.isAssignableFrom(clazz)
+        || clazz.isAnnotationPresent(Immutable.class)
+        || configured.contains(clazz.getName());
+  }
+}
@@ -18,69 +18,159 @@
 package org.apache.hadoop.mrunit.internal.io;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.io.DataInputBuffer;
 import org.apache.hadoop.io.DataOutputBuffer;
-import org.apache.hadoop.io.serializer.Deserializer;
+import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.serializer.SerializationFactory;
-import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.hadoop.io.serializer.WritableSerialization;
+import org.apache.hadoop.mrunit.internal.util.AllocationAccounting;
+import org.apache.hadoop.util.ReflectionUtils;
 
 public class Serialization {
 
+  /**
+   * The classes of the {@link CopierFactory}s consulted, in order, before the
+   * built-in copiers
+   */
+  public static final String COPIER_FACTORIES_KEY = "mrunit.copy.copier.factories";
+
+  private static final String SERIALIZATIONS_KEY = "io.serializations";
+
   private SerializationFactory serializationFactory;
 
+  /**
+   * The configuration and its io.serializations and immutable classes values
+   * the factory was built from, copyWithConf only rebuilds the factory when
+   * any of them changes
+   */
+  private Configuration factoryConf;
+  private String factorySerializations;
+  private String factoryImmutableClasses;
+  private String factoryCopierFactories;
+
+  private ImmutableTypes immutableTypes;
+
+  private List<CopierFactory> copierFactories;
+
+  /**
+   * Copiers by the class they were created for, so the factory is only
+   * consulted once per class. Copiers may be bound to the {@link CopyBuffers}
+   * of a thread so are cached per thread as well.
+   */
+  private final ThreadLocal<ThreadCache> cache = new ThreadLocal<ThreadCache>() {
+    @Override
+    protected ThreadCache initialValue() {
+      return new ThreadCache();
+    }
+  };
+
+  /**
+   * Copies made by every Serialization on each thread, so the copies of a
+   * phase of a run can be counted on the thread that ran it
+   */
+  private static final ThreadLocal<long[]> THREAD_COPIES = new ThreadLocal<long[]>() {
+    @Override
+    protected long[] initialValue() {
+      return new long[1];
+    }
+  };
+
+  /**
+   * Bytes the copies of every Serialization on each thread were serialized
+   * to, counted as {@link #THREAD_COPIES} are
+   */
+  private static final ThreadLocal<long[]> THREAD_COPIED_BYTES = new ThreadLocal<long[]>() {
+    @Override
+    protected long[] initialValue() {
+      return new long[1];
+    }
+  };
+
   /**
    * @param conf
    */
   public Serialization(Configuration conf) {
-    serializationFactory = new SerializationFactory(conf);
+    setFactory(conf);
   }
 
   /**
    * Creates a new copy of the orig object. Depending on the serialization used,
    * the serialization class may or may not copy the orig object into the copy
    * object based on the contract on
-   * org.apache.hadoop.io.serializer.Deserializer.deserialize
+   * org.apache.hadoop.io.serializer.Deserializer.deserialize. Instances of
+   * immutable classes such as String, boxed primitives, enums, NullWritable and
+   * classes annotated {@link org.apache.hadoop.mrunit.types.Immutable} are
+   * returned as they are.
    * 
    * @param orig
    * @param copy
-   *          if null always returns a new object, if not null may or may not
-   *          copy orig into copy depending on what serialization class is used
+   *          if null returns a new object unless orig is immutable, if not
+   *          null may or may not copy orig into copy depending on what
+   *          serialization class is used
    * @return a copy of the orig object
    */
-  @SuppressWarnings("unchecked")
   public <T> T copy(final T orig, final T copy) {
     if (copy != null && orig.getClass() != copy.getClass()) {
       throw new IllegalArgumentException(orig.getClass() + " != "
           + copy.getClass());
     }
-    final Class<?> clazz = orig.getClass();
-    final Serializer<Object> serializer;
-    final Deserializer<Object> deserializer;
+    final long allocations = AllocationAccounting.beginExcluded();
     try {
-      serializer = (Serializer<Object>) serializationFactory
-          .getSerializer(clazz);
-      deserializer = (Deserializer<Object>) serializationFactory
-          .getDeserializer(clazz);
-    } catch (NullPointerException e) {
-      throw new IllegalStateException(
-          "No applicable class implementing Serialization in conf at io.serializations for "
-              + orig.getClass(), e);
+      return copy(orig, copy, orig.getClass());
+    } finally {
+      AllocationAccounting.endExcluded(allocations);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T copy(final T orig, final T copy, final Class<?> clazz) {
+    final Map<Class<?>, Copier<?>> copiers = cache.get().getCopiers(
+        serializationFactory);
+    Copier<T> copier = (Copier<T>) copiers.get(clazz);
+    if (copier == null) {
+      copier = (Copier<T>) newCopier(clazz);
+      copiers.put(clazz, copier);
+    }
+    DataOutputBuffer output = null;
+    if (!(copier instanceof IdentityCopier)) {
+      THREAD_COPIES.get()[0]++;
+      // emptied so a copier that does not copy through it counts no bytes
+      output = CopyBuffers.get().startWrite();
     }
     try {
-      final DataOutputBuffer outputBuffer = new DataOutputBuffer();
-      serializer.open(outputBuffer);
-      serializer.serialize(orig);
-      final DataInputBuffer inputBuffer = new DataInputBuffer();
-      inputBuffer.reset(outputBuffer.getData(), outputBuffer.getLength());
-      deserializer.open(inputBuffer);
-      return (T) deserializer.deserialize(copy);
+      final T result = copier.copy(orig, copy);
+      if (output != null) {
+        THREAD_COPIED_BYTES.get()[0] += output.getLength();
+      }
+      return result;
     } catch (final IOException e) {
+      // the streams may be left part way through a record
+      copiers.remove(clazz);
       throw new RuntimeException(e);
     }
   }
 
+  /**
+   * @return the number of objects copied, rather than returned as they are
+   *         for being immutable, by every Serialization on the current thread
+   */
+  public static long getThreadCopies() {
+    return THREAD_COPIES.get()[0];
+  }
+
+  /**
+   * @return the bytes the objects copied by every Serialization on the
+   *         current thread were serialized to
+   */
+  public static long getThreadCopiedBytes() {
+    return THREAD_COPIED_BYTES.get()[0];
+  }
+
   /**
    * Creates a new copy of the orig object
    * 
@@ -100,8 +190,93 @@ public class Serialization {
    * @return a new copy of the orig object
    */
   public <T> T copyWithConf(final T orig, final Configuration conf) {
-    serializationFactory = new SerializationFactory(conf);
+    if (conf != factoryConf
+        || !equal(conf.get(SERIALIZATIONS_KEY), factorySerializations)
+        || !equal(conf.get(ImmutableTypes.IMMUTABLE_CLASSES_KEY),
+            factoryImmutableClasses)
+        || !equal(conf.get(COPIER_FACTORIES_KEY), factoryCopierFactories)) {
+      setFactory(conf);
+    }
     return copy(orig);
   }
 
+  private void setFactory(final Configuration conf) {
+    serializationFactory = new SerializationFactory(conf);
+    factoryConf = conf;
+    factorySerializations = conf.get(SERIALIZATIONS_KEY);
+    factoryImmutableClasses = conf.get(ImmutableTypes.IMMUTABLE_CLASSES_KEY);
+    factoryCopierFactories = conf.get(COPIER_FACTORIES_KEY);
+    immutableTypes = new ImmutableTypes(conf);
+    final Class<?>[] factoryClasses = conf.getClasses(COPIER_FACTORIES_KEY);
+    copierFactories = new ArrayList<CopierFactory>(factoryClasses.length);
+    for (final Class<?> factoryClass : factoryClasses) {
+      copierFactories.add((CopierFactory) ReflectionUtils.newInstance(
+          factoryClass.asSubclass(CopierFactory.class), conf));
+    }
+  }
+
+  private static boolean equal(final String a, final String b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  /**
+   * The first copier of the configured {@link CopierFactory}s, else for
+   * immutable classes an {@link IdentityCopier}, for Writables the factory
+   * would copy with WritableSerialization a {@link WritableCopier} and for
+   * anything else a {@link SerializationCopier}
+   */
+  @SuppressWarnings("unchecked")
+  private Copier<?> newCopier(final Class<?> clazz) {
+    for (final CopierFactory copierFactory : copierFactories) {
+      final Copier<?> copier = copierFactory.newCopier(clazz, factoryConf);
+      if (copier != null) {
+        return copier;
+      }
+    }
+    if (immutableTypes.isImmutable(clazz)) {
+      return new IdentityCopier<Object>();
+    }
+    final org.apache.hadoop.io.serializer.Serialization<?> serialization = serializationFactory
+        .getSerialization(clazz);
+    if (serialization == null) {
+      throw new IllegalStateException(
+          "No applicable class implementing Serialization in conf at io.serializations for "
+              + clazz);
+    }
+    if (serialization instanceof WritableSerialization) {
+      return newWritableCopier(clazz.asSubclass(Writable.class));
+    }
+    final Class<Object> objectClass = (Class<Object>) clazz;
+    final org.apache.hadoop.io.serializer.Serialization<Object> objectSerialization = (org.apache.hadoop.io.serializer.Serialization<Object>) serialization;
+    try {
+      return new SerializationCopier<Object>(
+          objectSerialization.getSerializer(objectClass),
+          objectSerialization.getDeserializer(objectClass));
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private <T extends Writable> Copier<T> newWritableCopier(final Class<T> clazz) {
+    return new WritableCopier<T>(clazz, factoryConf);
+  }
+
+  /**
+   * The copiers of one thread, dropped whenever the factory they were created
+   * from is replaced
+   */
+  private static class ThreadCache {
+    private SerializationFactory factory;
+    private final Map<Class<?>, Copier<?>> copiers = new HashMap<Class<?>, Copier<?>>();
+
+    private Map<Class<?>, Copier<?>> getCopiers(
+        final SerializationFactory currentFactory) {
+      if (factory != currentFactory) {
+        copiers.clear();
+        factory = currentFactory;
+      }
+      return copiers;
+    }
+  }
+
 }
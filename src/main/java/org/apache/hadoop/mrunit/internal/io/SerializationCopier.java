@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.io;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.serializer.Deserializer;
+import org.apache.hadoop.io.serializer.Serializer;
+
+/**
+ * Copies any class a Hadoop serializer and deserializer pair exists for by
+ * round tripping it through the thread's {@link CopyBuffers}
+ * 
+ * @param <T>
+ *          the class copied
+ */
+class SerializationCopier<T> implements Copier<T> {
+
+  private final Serializer<T> serializer;
+  private final Deserializer<T> deserializer;
+
+  /**
+   * Opens the serializer and deserializer on the buffers of the calling
+   * thread, the copier must only be used on that thread
+   * 
+   * @param serializer
+   * @param deserializer
+   * @throws IOException
+   */
+  SerializationCopier(final Serializer<T> serializer,
+      final Deserializer<T> deserializer) throws IOException {
+    this.serializer = serializer;
+    this.deserializer = deserializer;
+    final CopyBuffers buffers = CopyBuffers.get();
+    // some serializations write a stream header on open which the
+    // deserializer expects to read on open
+    serializer.open(buffers.startWrite());
+    deserializer.open(buffers.startRead());
+  }
+
+  @Override
+  public T copy(final T orig, final T copy) throws IOException {
+    final CopyBuffers buffers = CopyBuffers.get();
+    buffers.startWrite();
+    serializer.serialize(orig);
+    buffers.startRead();
+    return deserializer.deserialize(copy);
+  }
+}
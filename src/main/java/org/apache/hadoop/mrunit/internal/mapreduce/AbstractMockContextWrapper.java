@@ -25,10 +25,10 @@ import static org.mockito.Mockito.when;
 import java.io.IOException;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.Counters;
 import org.apache.hadoop.mapreduce.TaskInputOutputContext;
-import org.apache.hadoop.mrunit.internal.output.OutputCollectable;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
@@ -37,17 +37,15 @@ abstract class AbstractMockContextWrapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT, CONT
   protected final Counters counters;
   protected final Configuration conf;
 
-  protected final CONTEXT context;
-  private final OutputCollectable<KEYOUT, VALUEOUT> outputCollectable;
+  protected final OutputCollector<KEYOUT, VALUEOUT> outputCollectable;
+  protected CONTEXT context;
 
   public AbstractMockContextWrapper(final Counters counters,
       final Configuration conf,
-      final OutputCollectable<KEYOUT, VALUEOUT> outputCollectable)
-      throws IOException, InterruptedException {
+      final OutputCollector<KEYOUT, VALUEOUT> outputCollectable) {
     this.conf = conf;
     this.counters = counters;
     this.outputCollectable = outputCollectable;
-    context = create();
   }
 
   @SuppressWarnings({ "rawtypes", "unchecked" })
@@ -89,6 +87,12 @@ abstract class AbstractMockContextWrapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT, CONT
     }).when(context).write((KEYOUT) any(), (VALUEOUT) any());
   }
 
+  /**
+   * Creates the context, called by the constructor of each subclass once its
+   * own fields are set. Subclasses create a real Hadoop context where they can
+   * and fall back to a Mockito mock set up by
+   * {@link #createCommon(TaskInputOutputContext)} where they cannot.
+   */
   protected abstract CONTEXT create() throws IOException, InterruptedException;
 
   public CONTEXT getMockContext() {
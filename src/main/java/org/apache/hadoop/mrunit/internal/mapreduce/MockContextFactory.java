@@ -0,0 +1,205 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.mapreduce;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+
+/**
+ * Creates the real Hadoop Mapper.Context and Reducer.Context over the mock
+ * record readers and writers. In Hadoop 1 the contexts are concrete classes
+ * created directly, in Hadoop 2 they are the MapContextImpl and
+ * ReduceContextImpl wrapped by WrappedMapper and WrappedReducer. Both are
+ * found by reflection so the same code runs against either; if neither is
+ * found {@link #isAvailable()} is false and the Mockito contexts are used.
+ */
+final class MockContextFactory {
+
+  private static final Class<?>[] MAP_CONTEXT_CLASSES = new Class<?>[] {
+      Configuration.class, TaskAttemptID.class, RecordReader.class,
+      RecordWriter.class, OutputCommitter.class, StatusReporter.class,
+      InputSplit.class };
+  private static final Class<?>[] REDUCE_CONTEXT_CLASSES = new Class<?>[] {
+      Configuration.class, TaskAttemptID.class, RawKeyValueIterator.class,
+      Counter.class, Counter.class, RecordWriter.class, OutputCommitter.class,
+      StatusReporter.class, RawComparator.class, Class.class, Class.class };
+
+  private static final Constructor<?> MAP_CONTEXT;
+  private static final Constructor<?> REDUCE_CONTEXT;
+  private static final Method WRAP_MAP_CONTEXT;
+  private static final Method WRAP_REDUCE_CONTEXT;
+
+  static {
+    Constructor<?> mapContext = null;
+    Constructor<?> reduceContext = null;
+    Method wrapMapContext = null;
+    Method wrapReduceContext = null;
+    try {
+      try {
+        mapContext = Class.forName(
+            "org.apache.hadoop.mapreduce.task.MapContextImpl").getConstructor(
+            MAP_CONTEXT_CLASSES);
+        reduceContext = Class.forName(
+            "org.apache.hadoop.mapreduce.task.ReduceContextImpl")
+            .getConstructor(REDUCE_CONTEXT_CLASSES);
+        wrapMapContext = Class.forName(
+            "org.apache.hadoop.mapreduce.lib.map.WrappedMapper").getMethod(
+            "getMapContext",
+            Class.forName("org.apache.hadoop.mapreduce.MapContext"));
+        wrapReduceContext = Class.forName(
+            "org.apache.hadoop.mapreduce.lib.reduce.WrappedReducer")
+            .getMethod("getReducerContext",
+                Class.forName("org.apache.hadoop.mapreduce.ReduceContext"));
+      } catch (final ClassNotFoundException e) {
+        // Hadoop 1, the contexts are inner classes taking the enclosing
+        // instance as their first argument
+        mapContext = Mapper.Context.class.getConstructor(prepend(Mapper.class,
+            MAP_CONTEXT_CLASSES));
+        reduceContext = Reducer.Context.class.getConstructor(prepend(
+            Reducer.class, REDUCE_CONTEXT_CLASSES));
+        wrapMapContext = null;
+        wrapReduceContext = null;
+      }
+    } catch (final NoSuchMethodException e) {
+      mapContext = null;
+      reduceContext = null;
+      wrapMapContext = null;
+      wrapReduceContext = null;
+    }
+    MAP_CONTEXT = mapContext;
+    REDUCE_CONTEXT = reduceContext;
+    WRAP_MAP_CONTEXT = wrapMapContext;
+    WRAP_REDUCE_CONTEXT = wrapReduceContext;
+  }
+
+  private MockContextFactory() {
+    // dont create this class
+  }
+
+  /**
+   * @return true if the contexts of the Hadoop version in use can be created
+   */
+  static boolean isAvailable() {
+    return MAP_CONTEXT != null && REDUCE_CONTEXT != null;
+  }
+
+  @SuppressWarnings("unchecked")
+  static <KEYIN, VALUEIN, KEYOUT, VALUEOUT> Mapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>.Context createMapContext(
+      final Configuration conf, final RecordReader<KEYIN, VALUEIN> reader,
+      final RecordWriter<KEYOUT, VALUEOUT> writer,
+      final StatusReporter reporter, final InputSplit split)
+      throws IOException, InterruptedException {
+    final Object[] args = new Object[] { conf, new TaskAttemptID(), reader,
+        writer, null, reporter, split };
+    if (WRAP_MAP_CONTEXT == null) {
+      return (Mapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>.Context) newInstance(
+          MAP_CONTEXT, prepend(new Mapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>(),
+              args));
+    }
+    return (Mapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>.Context) wrap(
+        WRAP_MAP_CONTEXT, newInstance(MAP_CONTEXT, args));
+  }
+
+  @SuppressWarnings("unchecked")
+  static <KEYIN, VALUEIN, KEYOUT, VALUEOUT> Reducer<KEYIN, VALUEIN, KEYOUT, VALUEOUT>.Context createReduceContext(
+      final Configuration conf, final RawKeyValueIterator input,
+      final Counter inputKeyCounter, final Counter inputValueCounter,
+      final RecordWriter<KEYOUT, VALUEOUT> writer,
+      final StatusReporter reporter, final RawComparator<KEYIN> comparator,
+      final Class<KEYIN> keyClass, final Class<VALUEIN> valueClass)
+      throws IOException, InterruptedException {
+    final Object[] args = new Object[] { conf, new TaskAttemptID(), input,
+        inputKeyCounter, inputValueCounter, writer, null, reporter,
+        comparator, keyClass, valueClass };
+    if (WRAP_REDUCE_CONTEXT == null) {
+      return (Reducer<KEYIN, VALUEIN, KEYOUT, VALUEOUT>.Context) newInstance(
+          REDUCE_CONTEXT, prepend(
+              new Reducer<KEYIN, VALUEIN, KEYOUT, VALUEOUT>(), args));
+    }
+    return (Reducer<KEYIN, VALUEIN, KEYOUT, VALUEOUT>.Context) wrap(
+        WRAP_REDUCE_CONTEXT, newInstance(REDUCE_CONTEXT, args));
+  }
+
+  private static Object wrap(final Method wrapMethod, final Object context)
+      throws IOException, InterruptedException {
+    try {
+      return wrapMethod.invoke(wrapMethod.getDeclaringClass().newInstance(),
+          context);
+    } catch (final InstantiationException e) {
+      throw new IllegalStateException(e);
+    } catch (final IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    } catch (final InvocationTargetException e) {
+      throw rethrow(e);
+    }
+  }
+
+  private static Object newInstance(final Constructor<?> constructor,
+      final Object... args) throws IOException, InterruptedException {
+    try {
+      return constructor.newInstance(args);
+    } catch (final InstantiationException e) {
+      throw new IllegalStateException(e);
+    } catch (final IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    } catch (final InvocationTargetException e) {
+      throw rethrow(e);
+    }
+  }
+
+  private static RuntimeException rethrow(final InvocationTargetException e)
+      throws IOException, InterruptedException {
+    final Throwable cause = e.getCause();
+    if (cause instanceof IOException) {
+      throw (IOException) cause;
+    }
+    if (cause instanceof InterruptedException) {
+      throw (InterruptedException) cause;
+    }
+    if (cause instanceof RuntimeException) {
+      throw (RuntimeException) cause;
+    }
+    if (cause instanceof Error) {
+      throw (Error) cause;
+    }
+    return new IllegalStateException(cause);
+  }
+
+  private static <T> T[] prepend(final T first, final T[] rest) {
+    final T[] all = Arrays.copyOf(rest, rest.length + 1);
+    System.arraycopy(rest, 0, all, 1, rest.length);
+    all[0] = first;
+    return all;
+  }
+}
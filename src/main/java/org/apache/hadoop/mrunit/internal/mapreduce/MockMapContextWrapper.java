@@ -22,15 +22,16 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapreduce.Counters;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.Mapper;
-import org.apache.hadoop.mrunit.internal.output.OutputCollectable;
 import org.apache.hadoop.mrunit.types.Pair;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -51,21 +52,49 @@ public class MockMapContextWrapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
   protected static final Log LOG = LogFactory
       .getLog(MockMapContextWrapper.class);
 
-  protected final List<Pair<KEYIN, VALUEIN>> inputs;
+  protected final Iterator<Pair<KEYIN, VALUEIN>> inputs;
   protected Pair<KEYIN, VALUEIN> currentKeyValue;
   protected InputSplit inputSplit = new MockInputSplit();
 
+  /**
+   * @param inputs
+   *          read in order, the list is not modified
+   */
   public MockMapContextWrapper(final List<Pair<KEYIN, VALUEIN>> inputs,
       final Counters counters, final Configuration conf,
-      final OutputCollectable<KEYOUT, VALUEOUT> outputCollectable)
+      final OutputCollector<KEYOUT, VALUEOUT> outputCollectable)
+      throws IOException, InterruptedException {
+    this(inputs.iterator(), counters, conf, outputCollectable);
+  }
+
+  /**
+   * @param inputs
+   *          read as the mapper asks for each record
+   */
+  public MockMapContextWrapper(final Iterator<Pair<KEYIN, VALUEIN>> inputs,
+      final Counters counters, final Configuration conf,
+      final OutputCollector<KEYOUT, VALUEOUT> outputCollectable)
       throws IOException, InterruptedException {
     super(counters, conf, outputCollectable);
     this.inputs = inputs;
+    context = create();
   }
 
-  @SuppressWarnings({ "unchecked" })
+  @Override
   protected Mapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>.Context create()
       throws IOException, InterruptedException {
+    if (!MockContextFactory.isAvailable()) {
+      return createMockContext();
+    }
+    return MockContextFactory.createMapContext(conf,
+        new MockRecordReader<KEYIN, VALUEIN>(inputs),
+        new MockRecordWriter<KEYOUT, VALUEOUT>(outputCollectable),
+        new MockStatusReporter(counters), inputSplit);
+  }
+
+  @SuppressWarnings({ "unchecked" })
+  private Mapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>.Context createMockContext()
+      throws IOException, InterruptedException {
     final Mapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>.Context context = mock(org.apache.hadoop.mapreduce.Mapper.Context.class);
 
     createCommon(context);
@@ -77,8 +106,8 @@ public class MockMapContextWrapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
     when(context.nextKeyValue()).thenAnswer(new Answer<Boolean>() {
       @Override
       public Boolean answer(final InvocationOnMock invocation) {
-        if (inputs.size() > 0) {
-          currentKeyValue = inputs.remove(0);
+        if (inputs.hasNext()) {
+          currentKeyValue = inputs.next();
           return true;
         } else {
           currentKeyValue = null;
@@ -0,0 +1,189 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.mapreduce;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+import org.apache.hadoop.mrunit.RunReport;
+import org.apache.hadoop.mrunit.internal.shuffle.SerializedValueList;
+import org.apache.hadoop.mrunit.types.Pair;
+import org.apache.hadoop.util.Progress;
+
+/**
+ * Presents shuffled key groups to a Hadoop reduce context as the serialized
+ * records of a reduce task, serializing each record only when it is reached.
+ * Every value of a group is paired with the key of the group, so the context
+ * sees the same key throughout the group as the Mockito based context does.
+ * Values of a binary shuffle are handed over as the bytes they were shuffled
+ * as, without deserializing and serializing them again. Groups are timed from
+ * when the context reads their first value, which it does as the reducer asks
+ * for the next key, rather than from when they are read ahead.
+ */
+class MockRawKeyValueIterator<K, V> implements RawKeyValueIterator {
+
+  private final Iterator<Pair<K, List<V>>> groups;
+  private final Class<K> keyClass;
+  private final Class<V> valueClass;
+  private final Serializer<K> keySerializer;
+  private final Serializer<V> valueSerializer;
+  private final DataOutputBuffer keyOut = new DataOutputBuffer();
+  private final DataOutputBuffer valueOut = new DataOutputBuffer();
+  private final DataInputBuffer keyIn = new DataInputBuffer();
+  private final DataInputBuffer valueIn = new DataInputBuffer();
+  private final Progress progress = new Progress();
+  private final RunReport.RecordTimer groupTimer;
+
+  private List<V> values;
+  /** values, if its bytes can be read as they are */
+  private SerializedValueList<V> serializedValues;
+  private int valueIndex;
+  private byte[] valueData;
+  private int valueStart;
+  private int valueLength;
+  private boolean firstInGroup;
+  /** the key of the group reached, until its timing is started */
+  private K untimedKey;
+
+  /**
+   * @param groupTimer
+   *          started on each group, may be null
+   */
+  MockRawKeyValueIterator(final Iterator<Pair<K, List<V>>> groups,
+      final Class<K> keyClass, final Class<V> valueClass,
+      final SerializationFactory factory,
+      final RunReport.RecordTimer groupTimer) throws IOException {
+    this.groups = groups;
+    this.groupTimer = groupTimer;
+    this.keyClass = keyClass;
+    this.valueClass = valueClass;
+    keySerializer = factory.getSerializer(keyClass);
+    keySerializer.open(keyOut);
+    valueSerializer = factory.getSerializer(valueClass);
+    valueSerializer.open(valueOut);
+  }
+
+  @Override
+  public boolean next() throws IOException {
+    firstInGroup = false;
+    while (values == null || valueIndex == values.size()) {
+      if (!groups.hasNext()) {
+        return false;
+      }
+      final Pair<K, List<V>> group = groups.next();
+      keyOut.reset();
+      keySerializer.serialize(checkClass(group.getFirst(), keyClass));
+      values = group.getSecond();
+      serializedValues = serializedValues(values);
+      valueIndex = 0;
+      firstInGroup = true;
+      if (groupTimer != null) {
+        untimedKey = group.getFirst();
+      }
+    }
+    if (serializedValues != null) {
+      valueData = serializedValues.getData();
+      valueStart = serializedValues.getOffset(valueIndex);
+      valueLength = serializedValues.getOffset(++valueIndex) - valueStart;
+      return true;
+    }
+    valueOut.reset();
+    // by index so lists which copy on iteration are read without copying,
+    // the context deserializes into its own instance anyway
+    valueSerializer.serialize(checkClass(values.get(valueIndex++),
+        valueClass));
+    valueData = valueOut.getData();
+    valueStart = 0;
+    valueLength = valueOut.getLength();
+    return true;
+  }
+
+  /**
+   * @return values if they are serialized as valueClass, else null
+   */
+  private SerializedValueList<V> serializedValues(final List<V> values) {
+    if (!(values instanceof SerializedValueList)) {
+      return null;
+    }
+    final SerializedValueList<V> serialized = (SerializedValueList<V>) values;
+    return serialized.getValueClass() == valueClass ? serialized : null;
+  }
+
+  private static <T> T checkClass(final T object, final Class<T> clazz) {
+    if (object.getClass() != clazz) {
+      throw new IllegalStateException("Reduce input " + object + " is a "
+          + object.getClass().getName() + " but earlier inputs were "
+          + clazz.getName() + ", give inputs of mixed classes as a List");
+    }
+    return object;
+  }
+
+  @Override
+  public DataInputBuffer getKey() {
+    keyIn.reset(keyOut.getData(), keyOut.getLength());
+    return keyIn;
+  }
+
+  @Override
+  public DataInputBuffer getValue() {
+    if (untimedKey != null) {
+      groupTimer.start(untimedKey);
+      untimedKey = null;
+    }
+    valueIn.reset(valueData, valueStart, valueLength);
+    return valueIn;
+  }
+
+  @Override
+  public void close() {
+  }
+
+  /**
+   * Only part of the interface in Hadoop 2
+   */
+  public Progress getProgress() {
+    return progress;
+  }
+
+  /**
+   * @return a comparator which the context uses, after each call to
+   *         {@link #next()}, to ask whether the record reached starts a new
+   *         key group
+   */
+  RawComparator<K> getGroupingComparator() {
+    return new RawComparator<K>() {
+      @Override
+      public int compare(final byte[] b1, final int s1, final int l1,
+          final byte[] b2, final int s2, final int l2) {
+        return firstInGroup ? 1 : 0;
+      }
+
+      @Override
+      public int compare(final K o1, final K o2) {
+        return firstInGroup ? 1 : 0;
+      }
+    };
+  }
+}
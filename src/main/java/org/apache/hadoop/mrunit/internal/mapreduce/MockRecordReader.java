@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.mapreduce;
+
+import java.util.Iterator;
+
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mrunit.types.Pair;
+
+/**
+ * Reads the inputs given to a driver as the records of a map task
+ */
+class MockRecordReader<K, V> extends RecordReader<K, V> {
+
+  private final Iterator<Pair<K, V>> inputs;
+  private Pair<K, V> current;
+
+  MockRecordReader(final Iterator<Pair<K, V>> inputs) {
+    this.inputs = inputs;
+  }
+
+  @Override
+  public void initialize(final InputSplit split,
+      final TaskAttemptContext context) {
+  }
+
+  @Override
+  public boolean nextKeyValue() {
+    if (inputs.hasNext()) {
+      current = inputs.next();
+      return true;
+    }
+    current = null;
+    return false;
+  }
+
+  @Override
+  public K getCurrentKey() {
+    return current.getFirst();
+  }
+
+  @Override
+  public V getCurrentValue() {
+    return current.getSecond();
+  }
+
+  @Override
+  public float getProgress() {
+    return 0;
+  }
+
+  @Override
+  public void close() {
+  }
+}
@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.mapreduce;
+
+import java.io.IOException;
+
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+/**
+ * Sends everything written to a context to the driver's output collector
+ */
+class MockRecordWriter<K, V> extends RecordWriter<K, V> {
+
+  private final OutputCollector<K, V> outputCollectable;
+
+  MockRecordWriter(final OutputCollector<K, V> outputCollectable) {
+    this.outputCollectable = outputCollectable;
+  }
+
+  @Override
+  public void write(final K key, final V value) throws IOException {
+    outputCollectable.collect(key, value);
+  }
+
+  @Override
+  public void close(final TaskAttemptContext context) {
+  }
+}
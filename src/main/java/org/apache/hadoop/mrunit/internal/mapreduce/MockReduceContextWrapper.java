@@ -28,9 +28,13 @@ import java.util.List;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.WritableSerialization;
+import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapreduce.Counters;
 import org.apache.hadoop.mapreduce.Reducer;
-import org.apache.hadoop.mrunit.internal.output.OutputCollectable;
+import org.apache.hadoop.mrunit.RunReport;
+import org.apache.hadoop.mrunit.internal.util.PeekingIterator;
 import org.apache.hadoop.mrunit.types.Pair;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -50,21 +54,136 @@ public class MockReduceContextWrapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
 
   protected static final Log LOG = LogFactory
       .getLog(MockReduceContextWrapper.class);
-  protected final List<Pair<KEYIN, List<VALUEIN>>> inputs;
+
+  /** counts the groups and records read by the context, not reported */
+  private static final String INPUT_COUNTER_GROUP = "MockReduceContextWrapper";
+
+  protected final PeekingIterator<Pair<KEYIN, List<VALUEIN>>> inputs;
   protected Pair<KEYIN, List<VALUEIN>> currentKeyValue;
 
+  /** the inputs when given as a list, so they can be checked up front */
+  private final List<Pair<KEYIN, List<VALUEIN>>> inputList;
+
+  /** times each group, may be null */
+  private final RunReport.RecordTimer groupTimer;
+
+  /**
+   * @param inputs
+   *          read in order, the list is not modified
+   */
   public MockReduceContextWrapper(
       final List<Pair<KEYIN, List<VALUEIN>>> inputs, final Counters counters,
       final Configuration conf,
-      OutputCollectable<KEYOUT, VALUEOUT> outputCollectable)
+      final OutputCollector<KEYOUT, VALUEOUT> outputCollectable)
+      throws IOException, InterruptedException {
+    this(inputs, inputs.iterator(), null, counters, conf, outputCollectable);
+  }
+
+  /**
+   * @param inputs
+   *          read as the reducer asks for each key group. The keys, and the
+   *          values, must each be of a single class if that of the first
+   *          group is a Writable.
+   */
+  public MockReduceContextWrapper(
+      final Iterator<Pair<KEYIN, List<VALUEIN>>> inputs,
+      final Counters counters, final Configuration conf,
+      final OutputCollector<KEYOUT, VALUEOUT> outputCollectable)
+      throws IOException, InterruptedException {
+    this(null, inputs, null, counters, conf, outputCollectable);
+  }
+
+  /**
+   * @param inputList
+   *          checked up front as for list inputs, may be null
+   * @param inputs
+   *          read as the reducer asks for each key group, must give the groups
+   *          of inputList if it is not null
+   * @param groupTimer
+   *          if not null, started on each group as the reducer starts on it.
+   *          The Hadoop reduce context reads a record ahead, so the time to
+   *          read the next group's first key counts towards the group
+   *          before. The last group is timed until the timer is stopped.
+   */
+  public MockReduceContextWrapper(
+      final List<Pair<KEYIN, List<VALUEIN>>> inputList,
+      final Iterator<Pair<KEYIN, List<VALUEIN>>> inputs,
+      final RunReport.RecordTimer groupTimer, final Counters counters,
+      final Configuration conf,
+      final OutputCollector<KEYOUT, VALUEOUT> outputCollectable)
       throws IOException, InterruptedException {
     super(counters, conf, outputCollectable);
-    this.inputs = inputs;
+    this.inputList = inputList;
+    this.groupTimer = groupTimer;
+    this.inputs = new PeekingIterator<Pair<KEYIN, List<VALUEIN>>>(inputs);
+    context = create();
   }
 
+  /**
+   * A real reduce context deserializes every key and value into a single
+   * instance of the key and value class, so is only used when the keys, and
+   * the values, are all of one class and are Writables. That is checked
+   * before creating the context for list inputs, and while reading for
+   * iterator inputs.
+   */
+  @Override
   @SuppressWarnings({ "unchecked" })
   protected Reducer<KEYIN, VALUEIN, KEYOUT, VALUEOUT>.Context create()
       throws IOException, InterruptedException {
+    if (!MockContextFactory.isAvailable() || !inputs.hasNext()) {
+      return createMockContext();
+    }
+    final Pair<KEYIN, List<VALUEIN>> first = inputs.peek();
+    final Class<KEYIN> keyClass = (Class<KEYIN>) first.getFirst().getClass();
+    final Class<VALUEIN> valueClass = first.getSecond().isEmpty() ? null
+        : (Class<VALUEIN>) first.getSecond().get(0).getClass();
+    final SerializationFactory serializationFactory = new SerializationFactory(
+        conf);
+    if (valueClass == null || !isWritable(serializationFactory, keyClass)
+        || !isWritable(serializationFactory, valueClass)
+        || (inputList != null && !hasClasses(keyClass, valueClass))) {
+      return createMockContext();
+    }
+
+    final MockRawKeyValueIterator<KEYIN, VALUEIN> input = new MockRawKeyValueIterator<KEYIN, VALUEIN>(
+        inputs, keyClass, valueClass, serializationFactory, groupTimer);
+    final Counters inputCounters = new Counters();
+    return MockContextFactory.createReduceContext(conf, input,
+        inputCounters.findCounter(INPUT_COUNTER_GROUP, "groups"),
+        inputCounters.findCounter(INPUT_COUNTER_GROUP, "records"),
+        new MockRecordWriter<KEYOUT, VALUEOUT>(outputCollectable),
+        new MockStatusReporter(counters), input.getGroupingComparator(),
+        keyClass, valueClass);
+  }
+
+  private static boolean isWritable(
+      final SerializationFactory serializationFactory, final Class<?> clazz) {
+    return serializationFactory.getSerialization(clazz) instanceof WritableSerialization;
+  }
+
+  /**
+   * @return true if every key is exactly of keyClass and every value exactly
+   *         of valueClass
+   */
+  private boolean hasClasses(final Class<KEYIN> keyClass,
+      final Class<VALUEIN> valueClass) {
+    for (final Pair<KEYIN, List<VALUEIN>> input : inputList) {
+      if (input.getFirst().getClass() != keyClass) {
+        return false;
+      }
+      final List<VALUEIN> values = input.getSecond();
+      for (int i = 0; i < values.size(); i++) {
+        if (values.get(i).getClass() != valueClass) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  @SuppressWarnings({ "unchecked" })
+  private Reducer<KEYIN, VALUEIN, KEYOUT, VALUEOUT>.Context createMockContext()
+      throws IOException, InterruptedException {
 
     final Reducer<KEYIN, VALUEIN, KEYOUT, VALUEOUT>.Context context = mock(org.apache.hadoop.mapreduce.Reducer.Context.class);
     createCommon(context);
@@ -75,8 +194,14 @@ public class MockReduceContextWrapper<KEYIN, VALUEIN, KEYOUT, VALUEOUT>
     when(context.nextKey()).thenAnswer(new Answer<Boolean>() {
       @Override
       public Boolean answer(final InvocationOnMock invocation) {
-        if (inputs.size() > 0) {
-          currentKeyValue = inputs.remove(0);
+        if (groupTimer != null) {
+          groupTimer.stop();
+        }
+        if (inputs.hasNext()) {
+          currentKeyValue = inputs.next();
+          if (groupTimer != null) {
+            groupTimer.start(currentKeyValue.getFirst());
+          }
           return true;
         } else {
           currentKeyValue = null;
@@ -0,0 +1,60 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.mapreduce;
+
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.StatusReporter;
+
+/**
+ * Looks up the counters of a context in the driver's counters, status and
+ * progress are ignored
+ */
+class MockStatusReporter extends StatusReporter {
+
+  private final Counters counters;
+
+  MockStatusReporter(final Counters counters) {
+    this.counters = counters;
+  }
+
+  @Override
+  public Counter getCounter(final Enum<?> name) {
+    return counters.findCounter(name);
+  }
+
+  @Override
+  public Counter getCounter(final String group, final String name) {
+    return counters.findCounter(group, name);
+  }
+
+  @Override
+  public void progress() {
+  }
+
+  /**
+   * Only abstract in Hadoop 2
+   */
+  public float getProgress() {
+    return 0;
+  }
+
+  @Override
+  public void setStatus(final String status) {
+  }
+}
@@ -0,0 +1,54 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.output;
+
+import java.io.IOException;
+
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mrunit.internal.util.AllocationAccounting;
+
+/**
+ * OutputCollector counting the records it passes on to another. What is
+ * allocated from there on is MRUnit's, so is excluded from the allocations
+ * of the mapper or reducer collecting.
+ */
+public class CountingOutputCollector<K, V> implements OutputCollector<K, V> {
+
+  private final OutputCollector<K, V> output;
+  private long count;
+
+  public CountingOutputCollector(final OutputCollector<K, V> output) {
+    this.output = output;
+  }
+
+  @Override
+  public void collect(final K key, final V value) throws IOException {
+    final long allocations = AllocationAccounting.beginExcluded();
+    try {
+      output.collect(key, value);
+    } finally {
+      AllocationAccounting.endExcluded(allocations);
+    }
+    count++;
+  }
+
+  /** @return the number of records collected */
+  public long getCount() {
+    return count;
+  }
+}
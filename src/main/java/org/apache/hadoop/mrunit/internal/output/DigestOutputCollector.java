@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.output;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.mrunit.types.OutputDigest;
+import org.apache.hadoop.mrunit.types.Pair;
+
+/**
+ * OutputCollector which keeps only an {@link OutputDigest} of the outputs
+ * rather than copies of them, so takes the same memory however many outputs
+ * there are. Each key and value is serialized with a {@link RecordSerializer}.
+ */
+public class DigestOutputCollector<K, V> implements OutputCollectable<K, V> {
+
+  private final RecordSerializer serializer;
+  private OutputDigest digest = new OutputDigest(0, 0, 0, 0);
+
+  public DigestOutputCollector(final Configuration conf) {
+    serializer = new RecordSerializer(conf);
+  }
+
+  @Override
+  public void collect(final K key, final V value) throws IOException {
+    final DataOutputBuffer buffer = serializer.getBuffer();
+    buffer.reset();
+    serializer.serialize(key);
+    final int keyLength = buffer.getLength();
+    serializer.serialize(value);
+    digest = digest.followedBy(RecordSerializer.hash(buffer.getData(), 0,
+        keyLength, buffer.getLength()), buffer.getLength());
+  }
+
+  /**
+   * @return an empty list, the outputs are not kept
+   */
+  @Override
+  public List<Pair<K, V>> getOutputs() {
+    return Collections.emptyList();
+  }
+
+  /**
+   * @return the digest of the outputs collected so far
+   */
+  public OutputDigest getDigest() {
+    return digest;
+  }
+
+  /**
+   * @param outputs
+   * @param conf
+   * @return the digest of outputs, as collecting them would give
+   */
+  public static <K, V> OutputDigest digest(final List<Pair<K, V>> outputs,
+      final Configuration conf) throws IOException {
+    final DigestOutputCollector<K, V> collector = new DigestOutputCollector<K, V>(
+        conf);
+    for (final Pair<K, V> output : outputs) {
+      collector.collect(output.getFirst(), output.getSecond());
+    }
+    return collector.getDigest();
+  }
+}
@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.output;
+
+import java.util.List;
+
+/**
+ * An index of the positions of the outputs of a list, to find those equal to
+ * another output. The positions of equal outputs are chained in int arrays,
+ * in order, rather than kept in lists of boxed positions in a HashMap, and
+ * each output is hashed once.
+ */
+public class PositionIndex {
+
+  private final List<?> outputs;
+
+  /** the first position of each distinct output, plus one, or 0 if empty */
+  private final int[] slots;
+
+  /** the next position not yet taken of the output in each slot, or -1 */
+  private final int[] heads;
+
+  /** the next position of an output equal to that at each position, or -1 */
+  private final int[] next;
+
+  private final int mask;
+
+  /**
+   * @param outputs
+   *          the outputs to index
+   * @param skip
+   *          true at the positions of outputs to leave out of the index, or
+   *          null to index them all
+   */
+  public PositionIndex(final List<?> outputs, final boolean[] skip) {
+    this.outputs = outputs;
+    int capacity = 2;
+    while (capacity < outputs.size() * 2) {
+      capacity <<= 1;
+    }
+    slots = new int[capacity];
+    heads = new int[capacity];
+    next = new int[outputs.size()];
+    mask = capacity - 1;
+    // chained from the last position so each chain is in order
+    for (int position = outputs.size() - 1; position >= 0; position--) {
+      if (skip != null && skip[position]) {
+        continue;
+      }
+      final Object output = outputs.get(position);
+      final int slot = find(output);
+      if (slots[slot] == 0) {
+        slots[slot] = position + 1;
+        next[position] = -1;
+      } else {
+        next[position] = heads[slot];
+      }
+      heads[slot] = position;
+    }
+  }
+
+  /**
+   * Takes the first position of an output equal to output that was not
+   * taken yet
+   * 
+   * @param output
+   * @return the position, or -1 if every equal output was taken or there are
+   *         none
+   */
+  public int take(final Object output) {
+    final int slot = find(output);
+    if (slots[slot] == 0) {
+      return -1;
+    }
+    final int position = heads[slot];
+    if (position >= 0) {
+      heads[slot] = next[position];
+    }
+    return position;
+  }
+
+  /**
+   * @return the slot of outputs equal to output, or the empty slot it would
+   *         take
+   */
+  private int find(final Object output) {
+    final int hash = output.hashCode();
+    int slot = (hash ^ (hash >>> 16)) & mask;
+    while (slots[slot] != 0 && !output.equals(outputs.get(slots[slot] - 1))) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+}
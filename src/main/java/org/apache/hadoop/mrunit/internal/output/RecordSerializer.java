@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.output;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
+
+/**
+ * Serializes objects one after another into a single buffer, with the
+ * serializer of the conf for the class of each, as the shuffle would
+ */
+public class RecordSerializer {
+
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final SerializationFactory factory;
+  private final Map<Class<?>, Serializer<Object>> serializers = new HashMap<Class<?>, Serializer<Object>>();
+  private final DataOutputBuffer buffer = new DataOutputBuffer();
+
+  public RecordSerializer(final Configuration conf) {
+    factory = new SerializationFactory(conf);
+  }
+
+  /**
+   * @return the buffer the objects are serialized into, which may be reset
+   */
+  public DataOutputBuffer getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * @param object
+   *          appended to the buffer
+   */
+  public void serialize(final Object object) throws IOException {
+    final Class<?> clazz = object.getClass();
+    Serializer<Object> serializer = serializers.get(clazz);
+    if (serializer == null) {
+      serializer = newSerializer(clazz);
+      serializer.open(buffer);
+      serializers.put(clazz, serializer);
+    }
+    serializer.serialize(object);
+  }
+
+  @SuppressWarnings("unchecked")
+  private Serializer<Object> newSerializer(final Class<?> clazz) {
+    final Serializer<Object> serializer = (Serializer<Object>) factory
+        .getSerializer(clazz);
+    if (serializer == null) {
+      throw new IllegalStateException(
+          "No applicable class implementing Serialization in conf at io.serializations for "
+              + clazz);
+    }
+    return serializer;
+  }
+
+  /**
+   * FNV-1a over the key length and the bytes of the key and value, finished
+   * with the mix of SplitMix64 so the sum of many hashes is well spread
+   * 
+   * @param data
+   * @param start
+   *          of the key
+   * @param keyLength
+   * @param end
+   *          of the value
+   * @return the hash of the serialized record
+   */
+  public static long hash(final byte[] data, final int start,
+      final int keyLength, final int end) {
+    long hash = FNV_OFFSET;
+    for (int shift = 0; shift < 32; shift += 8) {
+      hash = (hash ^ ((keyLength >>> shift) & 0xff)) * FNV_PRIME;
+    }
+    for (int i = start; i < end; i++) {
+      hash = (hash ^ (data[i] & 0xff)) * FNV_PRIME;
+    }
+    hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+    hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+    return hash ^ (hash >>> 31);
+  }
+}
@@ -0,0 +1,212 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.output;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mrunit.types.Pair;
+
+/**
+ * The (k, v) pairs of a list serialized with a {@link RecordSerializer} into a
+ * single buffer, so they can be compared, and sorted, by their bytes rather
+ * than with equals and hashCode. The hash of each record's bytes is computed
+ * once, so matching records is mostly a comparison of hashes.
+ */
+public class SerializedRecords<K, V> {
+
+  @SuppressWarnings("rawtypes")
+  private static final Comparator<Record> BY_HASH = new Comparator<Record>() {
+    @SuppressWarnings("unchecked")
+    @Override
+    public int compare(final Record a, final Record b) {
+      if (a.hash != b.hash) {
+        return a.hash < b.hash ? -1 : 1;
+      }
+      return a.compareTo(b);
+    }
+  };
+
+  private final List<Record<K, V>> records;
+  private final long bytes;
+
+  public SerializedRecords(final List<Pair<K, V>> pairs,
+      final Configuration conf) throws IOException {
+    final RecordSerializer serializer = new RecordSerializer(conf);
+    final DataOutputBuffer buffer = serializer.getBuffer();
+    final int[] keyEnds = new int[pairs.size()];
+    final int[] ends = new int[pairs.size()];
+    int i = 0;
+    for (final Pair<K, V> pair : pairs) {
+      serializer.serialize(pair.getFirst());
+      keyEnds[i] = buffer.getLength();
+      serializer.serialize(pair.getSecond());
+      ends[i] = buffer.getLength();
+      i++;
+    }
+    // the buffer has stopped growing, so its data is that of every record
+    final byte[] data = buffer.getData();
+    bytes = buffer.getLength();
+    records = new ArrayList<Record<K, V>>(pairs.size());
+    int start = 0;
+    i = 0;
+    for (final Pair<K, V> pair : pairs) {
+      records.add(new Record<K, V>(pair, i, data, start, keyEnds[i] - start,
+          ends[i]));
+      start = ends[i];
+      i++;
+    }
+  }
+
+  public int size() {
+    return records.size();
+  }
+
+  /**
+   * @return the bytes of every serialized key and value
+   */
+  public long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * @param position
+   * @return the record of the pair at position in the list
+   */
+  public Record<K, V> get(final int position) {
+    return records.get(position);
+  }
+
+  /**
+   * @return the records in order of their hashes, then of their bytes, and
+   *         those with equal bytes in order of position
+   */
+  public List<Record<K, V>> sortedByHash() {
+    return sortByHash(new ArrayList<Record<K, V>>(records));
+  }
+
+  /**
+   * @param records
+   *          sorted in place by their bytes, the sort is stable
+   * @return records
+   */
+  public static <K, V> List<Record<K, V>> sort(final List<Record<K, V>> records) {
+    Collections.sort(records);
+    return records;
+  }
+
+  /**
+   * @param records
+   *          sorted in place by their hashes then their bytes, the sort is
+   *          stable
+   * @return records
+   */
+  public static <K, V> List<Record<K, V>> sortByHash(
+      final List<Record<K, V>> records) {
+    Collections.sort(records, SerializedRecords.<K, V> byHash());
+    return records;
+  }
+
+  /**
+   * @return the order of records by their hashes, then their bytes
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  public static <K, V> Comparator<Record<K, V>> byHash() {
+    return (Comparator) BY_HASH;
+  }
+
+  /**
+   * A serialized (k, v) pair and its position in the list it came from
+   */
+  public static final class Record<K, V> implements Comparable<Record<K, V>> {
+    private final Pair<K, V> pair;
+    private final int position;
+    private final byte[] data;
+    private final int start;
+    private final int keyLength;
+    private final int end;
+    private final long hash;
+
+    private Record(final Pair<K, V> pair, final int position,
+        final byte[] data, final int start, final int keyLength, final int end) {
+      this.pair = pair;
+      this.position = position;
+      this.data = data;
+      this.start = start;
+      this.keyLength = keyLength;
+      this.end = end;
+      hash = RecordSerializer.hash(data, start, keyLength, end);
+    }
+
+    public Pair<K, V> getPair() {
+      return pair;
+    }
+
+    public int getPosition() {
+      return position;
+    }
+
+    /**
+     * @param other
+     * @return true if the keys and values of both are of the same classes
+     *         and serialize to the same bytes
+     */
+    public boolean matches(final Record<K, V> other) {
+      return hash == other.hash && compareTo(other) == 0;
+    }
+
+    /**
+     * Orders by the bytes of the key and value, then by the length of the key
+     * and then by the names of the key and value classes
+     */
+    @Override
+    public int compareTo(final Record<K, V> other) {
+      int cmp = WritableComparator.compareBytes(data, start, end - start,
+          other.data, other.start, other.end - other.start);
+      if (cmp != 0) {
+        return cmp;
+      }
+      if (keyLength != other.keyLength) {
+        return keyLength < other.keyLength ? -1 : 1;
+      }
+      cmp = compareClasses(pair.getFirst(), other.pair.getFirst());
+      if (cmp != 0) {
+        return cmp;
+      }
+      return compareClasses(pair.getSecond(), other.pair.getSecond());
+    }
+
+    private static int compareClasses(final Object a, final Object b) {
+      if (a.getClass() == b.getClass()) {
+        return 0;
+      }
+      return a.getClass().getName().compareTo(b.getClass().getName());
+    }
+
+    @Override
+    public String toString() {
+      return pair.toString();
+    }
+  }
+}
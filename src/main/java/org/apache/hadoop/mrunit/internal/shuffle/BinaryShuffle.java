@@ -0,0 +1,242 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.shuffle;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+import org.apache.hadoop.mrunit.types.Pair;
+
+/**
+ * Shuffles map outputs the way Hadoop does rather than as objects: the outputs
+ * are serialized as they are collected, sorted by comparing the serialized
+ * keys with the sort comparator and grouped by comparing them with the
+ * grouping comparator. Keys and values are only deserialized when the reducer
+ * reads them. The map output keys, and the values, must each be of a single
+ * class.
+ * 
+ * Once the serialized outputs and their index take up the memory limit they
+ * are sorted and spilled to a SequenceFile in a local temporary directory.
+ * The reducer is then given the merge of the spills and the outputs still in
+ * memory. When those would be more than io.sort.factor runs, spills are first
+ * merged in passes, so at most that many runs are read at once. A key group
+ * is held in memory while it is reduced. The spills are deleted once the last
+ * group is read, or on {@link #close()}.
+ */
+public class BinaryShuffle<K, V> implements OutputCollector<K, V>, Closeable {
+
+  /** the deprecated name, which Hadoop 2 still maps to its own */
+  private static final String GROUPING_COMPARATOR_KEY = "mapred.output.value.groupfn.class";
+
+  /** the most the buffer is let grow to, as it is indexed by int */
+  private static final long MAX_MEMORY = 1 << 30;
+
+  private static final String USER = "the binary shuffle";
+
+  private final Configuration conf;
+  private final RawComparator<K> keyOrderComparator;
+  private final RawComparator<K> keyGroupComparator;
+  private final long memoryLimit;
+
+  private SerializationFactory factory;
+  private Class<K> keyClass;
+  private Class<V> valueClass;
+  private RawComparator<K> orderComparator;
+  private RawComparator<K> groupingComparator;
+  private RecordBuffer<K, V> buffer;
+
+  private final SpillDirectory spillDirectory;
+  private int spills;
+  private RawKeyValueIterator merged;
+  private long records;
+  private long bytes;
+
+  /**
+   * @param conf
+   * @param keyOrderComparator
+   *          sorts the keys, if null the sort comparator of the job is used
+   * @param keyGroupComparator
+   *          groups the keys, if null the grouping comparator of the job is
+   *          used, or when the job has none the sort comparator
+   * @param memoryLimit
+   *          bytes of serialized outputs and index to hold before spilling to
+   *          disk, if not positive outputs are only spilled if they reach 1GB
+   */
+  public BinaryShuffle(final Configuration conf,
+      final RawComparator<K> keyOrderComparator,
+      final RawComparator<K> keyGroupComparator, final long memoryLimit) {
+    this.conf = conf;
+    this.keyOrderComparator = keyOrderComparator;
+    this.keyGroupComparator = keyGroupComparator;
+    this.memoryLimit = memoryLimit > 0 ? Math.min(memoryLimit, MAX_MEMORY)
+        : MAX_MEMORY;
+    spillDirectory = new SpillDirectory(conf, "mrunit-shuffle-");
+  }
+
+  /**
+   * Serializes a map output into the shuffle
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public void collect(final K key, final V value) throws IOException {
+    if (buffer == null) {
+      keyClass = (Class<K>) key.getClass();
+      valueClass = (Class<V>) value.getClass();
+      setComparators();
+      factory = new SerializationFactory(conf);
+      buffer = new RecordBuffer<K, V>(factory, keyClass, valueClass,
+          orderComparator);
+    }
+    final long start = buffer.getSerializedBytes();
+    buffer.add(checkClass(key, keyClass, USER),
+        checkClass(value, valueClass, USER));
+    records++;
+    bytes += buffer.getSerializedBytes() - start;
+    if (buffer.getMemory() >= memoryLimit) {
+      spillDirectory.write(buffer.sort(), keyClass, valueClass);
+      buffer.reset();
+      spills++;
+    }
+  }
+
+  /**
+   * @return object, if it is exactly of clazz
+   * @throws IllegalStateException
+   *           if it is not, naming user as needing the single class
+   */
+  static <T> T checkClass(final T object, final Class<T> clazz,
+      final String user) {
+    if (object.getClass() != clazz) {
+      throw new IllegalStateException("Map output " + object + " is a "
+          + object.getClass().getName() + " but earlier outputs were "
+          + clazz.getName() + ", " + user
+          + " needs map outputs of a single class");
+    }
+    return object;
+  }
+
+  /**
+   * @return keyOrderComparator, or if null the sort comparator of the job
+   *         for keyClass
+   */
+  @SuppressWarnings("unchecked")
+  static <K> RawComparator<K> orderComparator(final JobConf jobConf,
+      final RawComparator<K> keyOrderComparator, final Class<K> keyClass) {
+    if (keyOrderComparator != null) {
+      return keyOrderComparator;
+    }
+    jobConf.setMapOutputKeyClass(keyClass);
+    try {
+      return jobConf.getOutputKeyComparator();
+    } catch (final ClassCastException e) {
+      throw new IllegalStateException("No RawComparator for map output key "
+          + keyClass.getName()
+          + ", set one with setKeyOrderComparator or in the configuration", e);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void setComparators() {
+    final JobConf jobConf = new JobConf(conf);
+    orderComparator = orderComparator(jobConf, keyOrderComparator, keyClass);
+    if (keyGroupComparator != null) {
+      groupingComparator = keyGroupComparator;
+    } else if (jobConf.get(GROUPING_COMPARATOR_KEY) != null) {
+      groupingComparator = jobConf.getOutputValueGroupingComparator();
+    } else {
+      groupingComparator = orderComparator;
+    }
+  }
+
+  /**
+   * Sorts the map outputs collected, which must be the last of them
+   * 
+   * @return the key groups to present to the reducer, in order
+   */
+  public Iterator<Pair<K, List<V>>> getGroups() throws IOException {
+    if (buffer == null) {
+      return Collections.<Pair<K, List<V>>> emptyList().iterator();
+    }
+    final RawKeyValueIterator records;
+    if (spillDirectory.isEmpty()) {
+      records = buffer.sort();
+    } else {
+      // the records still in memory are merged with the spills
+      spillDirectory.merge(orderComparator, keyClass, valueClass, 1);
+      final List<RawKeyValueIterator> runs = spillDirectory.open();
+      runs.add(buffer.sort());
+      merged = new MergedRecords(runs, orderComparator);
+      records = merged;
+    }
+    return new KeyGroupIterator<K, V>(records, groupingComparator,
+        new BytesDeserializer<K>(factory, keyClass, conf),
+        new BytesDeserializer<V>(factory, valueClass, conf), this);
+  }
+
+  /** @return the number of map outputs collected */
+  public long getRecords() {
+    return records;
+  }
+
+  /** @return the number of serialized key and value bytes collected */
+  public long getBytes() {
+    return bytes;
+  }
+
+  /** @return the number of times outputs were sorted and spilled to disk */
+  public int getSpills() {
+    return spills;
+  }
+
+  /**
+   * @return the number of records written to disk, counting those rewritten
+   *         when merging spills
+   */
+  public long getSpilledRecords() {
+    return spillDirectory.getRecords();
+  }
+
+  /**
+   * @return the number of serialized key and value bytes written to disk,
+   *         counting those rewritten when merging spills
+   */
+  public long getSpilledBytes() {
+    return spillDirectory.getBytes();
+  }
+
+  /**
+   * Closes the spills and deletes them
+   */
+  @Override
+  public void close() throws IOException {
+    if (merged != null) {
+      merged.close();
+      merged = null;
+    }
+    spillDirectory.delete();
+  }
+}
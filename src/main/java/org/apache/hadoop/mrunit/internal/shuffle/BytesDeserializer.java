@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.shuffle;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.serializer.Deserializer;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.WritableSerialization;
+import org.apache.hadoop.mapred.JobConfigurable;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Deserializes objects of one class from ranges of byte arrays. New
+ * Writables are created here rather than by WritableSerialization, which
+ * looks up the JobConf class by name for every instance it creates.
+ */
+class BytesDeserializer<T> {
+
+  private final DataInputBuffer in = new DataInputBuffer();
+  private final Deserializer<T> deserializer;
+  private final Class<T> clazz;
+  private final Configuration conf;
+  private final boolean writable;
+  private final boolean configurable;
+
+  BytesDeserializer(final SerializationFactory factory, final Class<T> clazz,
+      final Configuration conf) throws IOException {
+    deserializer = factory.getDeserializer(clazz);
+    deserializer.open(in);
+    this.clazz = clazz;
+    this.conf = conf;
+    writable = factory.getSerialization(clazz) instanceof WritableSerialization;
+    configurable = Configurable.class.isAssignableFrom(clazz)
+        || JobConfigurable.class.isAssignableFrom(clazz);
+  }
+
+  Class<T> getDeserializedClass() {
+    return clazz;
+  }
+
+  /**
+   * @param reuse
+   *          may or may not be deserialized into depending on the
+   *          serialization, if null a new object is returned
+   * @return the object serialized in length bytes of data from start
+   */
+  T deserialize(final byte[] data, final int start, final int length,
+      final T reuse) {
+    in.reset(data, start, length);
+    try {
+      return deserializer.deserialize(reuse == null && writable ? newInstance()
+          : reuse);
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private T newInstance() {
+    final T instance = ReflectionUtils.newInstance(clazz, null);
+    if (configurable) {
+      ReflectionUtils.setConf(instance, conf);
+    }
+    return instance;
+  }
+}
@@ -0,0 +1,44 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.shuffle;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mrunit.types.Pair;
+
+/**
+ * Runs the combiner of a job, whichever API it is written to, over the sorted
+ * key groups of a {@link MapOutputBuffer} spill
+ */
+public interface Combiner<K, V> {
+
+  /**
+   * Runs the combiner once over every group, as a combiner task does for a
+   * spill
+   * 
+   * @param groups
+   *          the key groups of the spill, in order
+   * @param output
+   *          collects the outputs of the combiner
+   */
+  void combine(Iterator<Pair<K, List<V>>> groups, OutputCollector<K, V> output)
+      throws IOException;
+}
@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.shuffle;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+import org.apache.hadoop.mrunit.types.Pair;
+
+/**
+ * Groups sorted serialized records into the key groups a reducer is given. As
+ * in a reduce task a record starts a new group when the grouping comparator
+ * finds its key different from that of the record before it. Each group is
+ * given the first key of the group and its values are only deserialized when
+ * they are read. The records, and then onEnd if any, are closed after the last
+ * group is read.
+ */
+class KeyGroupIterator<K, V> implements Iterator<Pair<K, List<V>>> {
+
+  private final RawKeyValueIterator records;
+  private final RawComparator<K> groupingComparator;
+  private final BytesDeserializer<K> keyDeserializer;
+  private final BytesDeserializer<V> valueDeserializer;
+  private final Closeable onEnd;
+  private final DataOutputBuffer previousKey = new DataOutputBuffer();
+
+  /** whether records is on a record not yet grouped */
+  private boolean more;
+
+  KeyGroupIterator(final RawKeyValueIterator records,
+      final RawComparator<K> groupingComparator,
+      final BytesDeserializer<K> keyDeserializer,
+      final BytesDeserializer<V> valueDeserializer, final Closeable onEnd)
+      throws IOException {
+    this.records = records;
+    this.onEnd = onEnd;
+    this.groupingComparator = groupingComparator;
+    this.keyDeserializer = keyDeserializer;
+    this.valueDeserializer = valueDeserializer;
+    more = records.next();
+    if (!more) {
+      end();
+    }
+  }
+
+  private void end() throws IOException {
+    records.close();
+    if (onEnd != null) {
+      onEnd.close();
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    return more;
+  }
+
+  @Override
+  public Pair<K, List<V>> next() {
+    if (!more) {
+      throw new NoSuchElementException();
+    }
+    try {
+      return nextGroup();
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private Pair<K, List<V>> nextGroup() throws IOException {
+    DataInputBuffer key = records.getKey();
+    final K groupKey = keyDeserializer.deserialize(key.getData(),
+        key.getPosition(), key.getLength() - key.getPosition(), null);
+
+    final DataOutputBuffer values = new DataOutputBuffer();
+    int[] starts = new int[8];
+    int size = 0;
+    boolean sameGroup;
+    do {
+      previousKey.reset();
+      previousKey.write(key.getData(), key.getPosition(), key.getLength()
+          - key.getPosition());
+      final DataInputBuffer value = records.getValue();
+      if (size + 1 == starts.length) {
+        starts = Arrays.copyOf(starts, starts.length * 2);
+      }
+      starts[size++] = values.getLength();
+      values.write(value.getData(), value.getPosition(), value.getLength()
+          - value.getPosition());
+
+      more = records.next();
+      sameGroup = false;
+      if (more) {
+        key = records.getKey();
+        sameGroup = groupingComparator.compare(previousKey.getData(), 0,
+            previousKey.getLength(), key.getData(), key.getPosition(),
+            key.getLength() - key.getPosition()) == 0;
+      }
+    } while (sameGroup);
+    starts[size] = values.getLength();
+    if (!more) {
+      end();
+    }
+
+    return new Pair<K, List<V>>(groupKey, new SerializedValueList<V>(
+        valueDeserializer, values.getData(), starts, size));
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+}
@@ -0,0 +1,319 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.shuffle;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+
+/**
+ * Buffers map outputs the way a map task does before they are shuffled. The
+ * outputs are serialized into a buffer of io.sort.mb megabytes, and each time
+ * they fill io.sort.spill.percent of it they are sorted, run through the
+ * combiner if there is one and spilled to local disk. Each record is counted
+ * as taking 16 bytes of the buffer besides its key and value, as Hadoop 2
+ * does; the io.sort.record.percent of Hadoop 1 is not used. Unlike a map task
+ * the buffer spills while collecting, so spills always happen at the same
+ * record.
+ * 
+ * {@link #flush(OutputCollector)} spills the remaining outputs and sends the
+ * merge of the spills on as the map output, merging io.sort.factor spills at
+ * a time and running the combiner over the merge again when there are at
+ * least min.num.spills.for.combine spills. The map outputs, and the values,
+ * must each be of a single class.
+ */
+public class MapOutputBuffer<K, V> implements OutputCollector<K, V>,
+    Closeable {
+
+  /** the deprecated names, which Hadoop 2 still maps to its own */
+  private static final String SORT_MB_KEY = "io.sort.mb";
+  private static final String SPILL_PERCENT_KEY = "io.sort.spill.percent";
+  private static final String MIN_SPILLS_FOR_COMBINE_KEY = "min.num.spills.for.combine";
+
+  private static final int DEFAULT_SORT_MB = 100;
+  private static final float DEFAULT_SPILL_PERCENT = 0.8f;
+  private static final int DEFAULT_MIN_SPILLS_FOR_COMBINE = 3;
+
+  /** the largest io.sort.mb Hadoop accepts */
+  private static final int MAX_SORT_MB = 0x7FF;
+
+  /** the bytes of the buffer Hadoop 2 takes for the metadata of a record */
+  private static final int METADATA_BYTES_PER_RECORD = 16;
+
+  private static final String USER = "the map sort buffer";
+
+  private final Configuration conf;
+  private final RawComparator<K> keyOrderComparator;
+  private final Combiner<K, V> combiner;
+  private final long spillThreshold;
+  private final int minSpillsForCombine;
+
+  private SerializationFactory factory;
+  private Class<K> keyClass;
+  private Class<V> valueClass;
+  private RawComparator<K> orderComparator;
+  private RecordBuffer<K, V> buffer;
+  private RecordBuffer<K, V> combined;
+
+  private final SpillDirectory spillDirectory;
+  private int spills;
+  private long outputRecords;
+  private long outputBytes;
+  private RawKeyValueIterator merged;
+
+  /**
+   * @param conf
+   *          the job configuration, read for the size of the buffer
+   * @param keyOrderComparator
+   *          sorts the keys, if null the sort comparator of the job is used.
+   *          The combiner is given groups of keys it finds equal.
+   * @param combiner
+   *          run over each spill, may be null
+   * @throws IllegalStateException
+   *           if io.sort.mb or io.sort.spill.percent is out of the range
+   *           Hadoop accepts
+   */
+  public MapOutputBuffer(final Configuration conf,
+      final RawComparator<K> keyOrderComparator, final Combiner<K, V> combiner) {
+    this.conf = conf;
+    this.keyOrderComparator = keyOrderComparator;
+    this.combiner = combiner;
+    final JobConf jobConf = new JobConf(conf);
+    final int sortMb = jobConf.getInt(SORT_MB_KEY, DEFAULT_SORT_MB);
+    final float spillPercent = jobConf.getFloat(SPILL_PERCENT_KEY,
+        DEFAULT_SPILL_PERCENT);
+    if (spillPercent > 1 || spillPercent <= 0) {
+      throw new IllegalStateException("Invalid \"" + SPILL_PERCENT_KEY
+          + "\": " + spillPercent);
+    }
+    if ((sortMb & MAX_SORT_MB) != sortMb) {
+      throw new IllegalStateException("Invalid \"" + SORT_MB_KEY + "\": "
+          + sortMb);
+    }
+    spillThreshold = (long) (((long) sortMb << 20) * spillPercent);
+    minSpillsForCombine = jobConf.getInt(MIN_SPILLS_FOR_COMBINE_KEY,
+        DEFAULT_MIN_SPILLS_FOR_COMBINE);
+    spillDirectory = new SpillDirectory(conf, "mrunit-map-");
+  }
+
+  /**
+   * Serializes a map output into the buffer, spilling the buffer if it is
+   * then full
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public void collect(final K key, final V value) throws IOException {
+    if (buffer == null) {
+      keyClass = (Class<K>) key.getClass();
+      valueClass = (Class<V>) value.getClass();
+      orderComparator = BinaryShuffle.orderComparator(new JobConf(conf),
+          keyOrderComparator, keyClass);
+      factory = new SerializationFactory(conf);
+      buffer = newRecordBuffer();
+    }
+    buffer.add(BinaryShuffle.checkClass(key, keyClass, USER),
+        BinaryShuffle.checkClass(value, valueClass, USER));
+    if (buffer.getSerializedBytes() + METADATA_BYTES_PER_RECORD
+        * (long) buffer.size() >= spillThreshold) {
+      spill();
+    }
+  }
+
+  private void spill() throws IOException {
+    spillDirectory.write(sortAndCombine().sort(), keyClass, valueClass);
+    buffer.reset();
+    spills++;
+  }
+
+  private RecordBuffer<K, V> newRecordBuffer() throws IOException {
+    return new RecordBuffer<K, V>(factory, keyClass, valueClass,
+        orderComparator);
+  }
+
+  /**
+   * @return the records of the buffer, or the outputs of the combiner over
+   *         them if there is one, to be sorted and spilled
+   */
+  private RecordBuffer<K, V> sortAndCombine() throws IOException {
+    if (combiner == null) {
+      return buffer;
+    }
+    if (combined == null) {
+      combined = newRecordBuffer();
+    } else {
+      combined.reset();
+    }
+    combine(buffer.sort(), new OutputCollector<K, V>() {
+      @Override
+      public void collect(final K key, final V value) throws IOException {
+        combined.add(BinaryShuffle.checkClass(key, keyClass, USER),
+            BinaryShuffle.checkClass(value, valueClass, USER));
+      }
+    });
+    return combined;
+  }
+
+  private void combine(final RawKeyValueIterator records,
+      final OutputCollector<K, V> output) throws IOException {
+    combiner.combine(new KeyGroupIterator<K, V>(records, orderComparator,
+        new BytesDeserializer<K>(factory, keyClass, conf),
+        new BytesDeserializer<V>(factory, valueClass, conf), null), output);
+  }
+
+  /**
+   * Spills the outputs still in the buffer, which must be the last of them,
+   * and sends the merge of every spill to output. A single spill is sent as
+   * it is, as a map task would make it its output file, and is not written
+   * to disk at all when the outputs fit in the buffer.
+   * 
+   * @param output
+   *          given new key and value instances
+   */
+  public void flush(final OutputCollector<K, V> output) throws IOException {
+    if (buffer == null) {
+      return;
+    }
+    if (spillDirectory.isEmpty()) {
+      spills++;
+      send(sortAndCombine().sort(), output, true);
+      return;
+    }
+    if (buffer.size() > 0) {
+      spill();
+    }
+    if (spillDirectory.size() == 1) {
+      send(spillDirectory.open().get(0), output, false);
+      return;
+    }
+    spillDirectory.merge(orderComparator, keyClass, valueClass, 0);
+    merged = new MergedRecords(spillDirectory.open(), orderComparator);
+    if (combiner != null && spills >= minSpillsForCombine) {
+      combine(merged, new CountingCollector(output));
+    } else {
+      send(merged, output, true);
+    }
+  }
+
+  /**
+   * Deserializes every record of sorted to output
+   * 
+   * @param count
+   *          whether to count the records as written to the map output file
+   */
+  private void send(final RawKeyValueIterator sorted,
+      final OutputCollector<K, V> output, final boolean count)
+      throws IOException {
+    final BytesDeserializer<K> keyDeserializer = new BytesDeserializer<K>(
+        factory, keyClass, conf);
+    final BytesDeserializer<V> valueDeserializer = new BytesDeserializer<V>(
+        factory, valueClass, conf);
+    try {
+      while (sorted.next()) {
+        final DataInputBuffer key = sorted.getKey();
+        final DataInputBuffer value = sorted.getValue();
+        final int keyLength = key.getLength() - key.getPosition();
+        final int valueLength = value.getLength() - value.getPosition();
+        if (count) {
+          outputRecords++;
+          outputBytes += keyLength + valueLength;
+        }
+        output.collect(keyDeserializer.deserialize(key.getData(),
+            key.getPosition(), keyLength, null), valueDeserializer
+            .deserialize(value.getData(), value.getPosition(), valueLength,
+                null));
+      }
+    } finally {
+      sorted.close();
+    }
+  }
+
+  /**
+   * Counts the outputs of the combiner over the merged spills as the map
+   * output file, serializing them to find their size
+   */
+  private class CountingCollector implements OutputCollector<K, V> {
+    private final OutputCollector<K, V> output;
+    private final DataOutputBuffer out = new DataOutputBuffer();
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+
+    CountingCollector(final OutputCollector<K, V> output) throws IOException {
+      this.output = output;
+      keySerializer = factory.getSerializer(keyClass);
+      keySerializer.open(out);
+      valueSerializer = factory.getSerializer(valueClass);
+      valueSerializer.open(out);
+    }
+
+    @Override
+    public void collect(final K key, final V value) throws IOException {
+      out.reset();
+      keySerializer.serialize(BinaryShuffle.checkClass(key, keyClass, USER));
+      valueSerializer.serialize(BinaryShuffle.checkClass(value, valueClass,
+          USER));
+      outputRecords++;
+      outputBytes += out.getLength();
+      output.collect(key, value);
+    }
+  }
+
+  /**
+   * @return the number of times outputs were sorted and spilled, counting
+   *         the spill of the last outputs on {@link #flush(OutputCollector)}
+   */
+  public int getSpills() {
+    return spills;
+  }
+
+  /**
+   * @return the number of records spilled, counting those rewritten when
+   *         merging spills, as a map task counts them
+   */
+  public long getSpilledRecords() {
+    return spillDirectory.getRecords() + outputRecords;
+  }
+
+  /**
+   * @return the number of serialized key and value bytes spilled, counting
+   *         those rewritten when merging spills
+   */
+  public long getSpilledBytes() {
+    return spillDirectory.getBytes() + outputBytes;
+  }
+
+  /**
+   * Closes the spills and deletes them
+   */
+  @Override
+  public void close() throws IOException {
+    if (merged != null) {
+      merged.close();
+      merged = null;
+    }
+    spillDirectory.delete();
+  }
+}
@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.shuffle;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+import org.apache.hadoop.util.Progress;
+
+/**
+ * Merges sorted runs of serialized records into one sorted run, taking the
+ * smallest key of the runs each time. Records with equal keys are taken from
+ * the runs in the order the runs were given.
+ */
+class MergedRecords implements RawKeyValueIterator {
+
+  private final PriorityQueue<Run> queue;
+  private final Progress progress = new Progress();
+  private Run current;
+
+  MergedRecords(final List<RawKeyValueIterator> runs,
+      final RawComparator<?> comparator) throws IOException {
+    queue = new PriorityQueue<Run>(Math.max(1, runs.size()),
+        new Comparator<Run>() {
+          @Override
+          public int compare(final Run a, final Run b) {
+            final DataInputBuffer keyA = a.key;
+            final DataInputBuffer keyB = b.key;
+            final int compare = comparator.compare(keyA.getData(),
+                keyA.getPosition(), keyA.getLength() - keyA.getPosition(),
+                keyB.getData(), keyB.getPosition(), keyB.getLength()
+                    - keyB.getPosition());
+            return compare != 0 ? compare : a.index - b.index;
+          }
+        });
+    for (int i = 0; i < runs.size(); i++) {
+      final Run run = new Run(i, runs.get(i));
+      if (run.next()) {
+        queue.add(run);
+      }
+    }
+  }
+
+  @Override
+  public boolean next() throws IOException {
+    if (current != null && current.next()) {
+      queue.add(current);
+    }
+    current = queue.poll();
+    return current != null;
+  }
+
+  @Override
+  public DataInputBuffer getKey() {
+    return current.key;
+  }
+
+  @Override
+  public DataInputBuffer getValue() throws IOException {
+    return current.records.getValue();
+  }
+
+  /**
+   * Closes the runs not yet read to the end
+   */
+  @Override
+  public void close() throws IOException {
+    if (current != null) {
+      current.records.close();
+      current = null;
+    }
+    while (!queue.isEmpty()) {
+      queue.poll().records.close();
+    }
+  }
+
+  /**
+   * Only part of the interface in Hadoop 2
+   */
+  public Progress getProgress() {
+    return progress;
+  }
+
+  private static class Run {
+    private final int index;
+    private final RawKeyValueIterator records;
+    private DataInputBuffer key;
+
+    Run(final int index, final RawKeyValueIterator records) {
+      this.index = index;
+      this.records = records;
+    }
+
+    /**
+     * @return whether there was another record, closing the run if not
+     */
+    boolean next() throws IOException {
+      if (records.next()) {
+        key = records.getKey();
+        return true;
+      }
+      records.close();
+      return false;
+    }
+  }
+}
@@ -0,0 +1,205 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.shuffle;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+import org.apache.hadoop.util.Progress;
+
+/**
+ * Records serialized one after another into a single buffer, which are sorted
+ * by comparing the serialized keys, as a map task sorts its output. Only an
+ * index of the records is moved by the sort, which is a merge sort so that
+ * records with equal keys keep the order they were added in.
+ */
+class RecordBuffer<K, V> {
+
+  private static final int INITIAL_RECORDS = 1024;
+
+  /** the key start, value start and sorted position of a record */
+  private static final int INDEX_BYTES_PER_RECORD = 12;
+
+  /** runs shorter than this are insertion sorted */
+  private static final int INSERTION_SORT_THRESHOLD = 7;
+
+  private final DataOutputBuffer data = new DataOutputBuffer();
+  private final Serializer<K> keySerializer;
+  private final Serializer<V> valueSerializer;
+  private final RawComparator<K> comparator;
+
+  /** where the key and the value of each record start, in the order added */
+  private int[] keyStarts = new int[INITIAL_RECORDS];
+  private int[] valueStarts = new int[INITIAL_RECORDS];
+
+  /** the records in sorted order once sorted */
+  private int[] order = new int[INITIAL_RECORDS];
+  private int size;
+
+  RecordBuffer(final SerializationFactory factory, final Class<K> keyClass,
+      final Class<V> valueClass, final RawComparator<K> comparator)
+      throws IOException {
+    keySerializer = factory.getSerializer(keyClass);
+    keySerializer.open(data);
+    valueSerializer = factory.getSerializer(valueClass);
+    valueSerializer.open(data);
+    this.comparator = comparator;
+  }
+
+  void add(final K key, final V value) throws IOException {
+    if (size == order.length) {
+      keyStarts = grow(keyStarts);
+      valueStarts = grow(valueStarts);
+      order = grow(order);
+    }
+    keyStarts[size] = data.getLength();
+    keySerializer.serialize(key);
+    valueStarts[size] = data.getLength();
+    valueSerializer.serialize(value);
+    order[size] = size;
+    size++;
+  }
+
+  private static int[] grow(final int[] array) {
+    final int[] grown = new int[array.length * 2];
+    System.arraycopy(array, 0, grown, 0, array.length);
+    return grown;
+  }
+
+  /** @return the number of records */
+  int size() {
+    return size;
+  }
+
+  /** @return the bytes of the serialized keys and values */
+  long getSerializedBytes() {
+    return data.getLength();
+  }
+
+  /** @return the bytes the records and their index take */
+  long getMemory() {
+    return data.getLength() + INDEX_BYTES_PER_RECORD * (long) size;
+  }
+
+  /** Empties the buffer, keeping the memory it has grown to */
+  void reset() {
+    data.reset();
+    size = 0;
+  }
+
+  /**
+   * Sorts the records, which must not be added to until the returned
+   * iterator is done with
+   * 
+   * @return the records in sorted order
+   */
+  RawKeyValueIterator sort() {
+    final int[] sorted = new int[size];
+    System.arraycopy(order, 0, sorted, 0, size);
+    mergeSort(sorted, order, 0, size);
+    return new SortedRecords();
+  }
+
+  /**
+   * Sorts dest from low to high using src, which holds the same records, as
+   * scratch space
+   */
+  private void mergeSort(final int[] src, final int[] dest, final int low,
+      final int high) {
+    if (high - low < INSERTION_SORT_THRESHOLD) {
+      for (int i = low + 1; i < high; i++) {
+        for (int j = i; j > low && compare(dest[j - 1], dest[j]) > 0; j--) {
+          final int swap = dest[j];
+          dest[j] = dest[j - 1];
+          dest[j - 1] = swap;
+        }
+      }
+      return;
+    }
+    final int mid = (low + high) >>> 1;
+    mergeSort(dest, src, low, mid);
+    mergeSort(dest, src, mid, high);
+    if (compare(src[mid - 1], src[mid]) <= 0) {
+      System.arraycopy(src, low, dest, low, high - low);
+      return;
+    }
+    for (int i = low, p = low, q = mid; i < high; i++) {
+      if (q >= high || p < mid && compare(src[p], src[q]) <= 0) {
+        dest[i] = src[p++];
+      } else {
+        dest[i] = src[q++];
+      }
+    }
+  }
+
+  private int compare(final int a, final int b) {
+    return comparator.compare(data.getData(), keyStarts[a], valueStarts[a]
+        - keyStarts[a], data.getData(), keyStarts[b], valueStarts[b]
+        - keyStarts[b]);
+  }
+
+  private int end(final int record) {
+    return record + 1 < size ? keyStarts[record + 1] : data.getLength();
+  }
+
+  private class SortedRecords implements RawKeyValueIterator {
+    private final DataInputBuffer key = new DataInputBuffer();
+    private final DataInputBuffer value = new DataInputBuffer();
+    private final Progress progress = new Progress();
+    private int index = -1;
+
+    @Override
+    public boolean next() {
+      if (index + 1 >= size) {
+        return false;
+      }
+      final int record = order[++index];
+      key.reset(data.getData(), keyStarts[record], valueStarts[record]
+          - keyStarts[record]);
+      value.reset(data.getData(), valueStarts[record], end(record)
+          - valueStarts[record]);
+      return true;
+    }
+
+    @Override
+    public DataInputBuffer getKey() {
+      return key;
+    }
+
+    @Override
+    public DataInputBuffer getValue() {
+      return value;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Only part of the interface in Hadoop 2
+     */
+    public Progress getProgress() {
+      return progress;
+    }
+  }
+}
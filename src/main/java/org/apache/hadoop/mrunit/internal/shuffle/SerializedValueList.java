@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.shuffle;
+
+import java.lang.reflect.Array;
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The serialized values of a key group, deserialized only when they are read.
+ * {@link #get(int)} and {@link #toArray()} return new objects but
+ * {@link #iterator()} deserializes every value into a single instance, as a
+ * reduce task does. The bytes of each value can also be read as they are, to
+ * hand them to a Hadoop reduce context without a round trip through objects.
+ */
+public class SerializedValueList<V> extends AbstractList<V> {
+
+  private final BytesDeserializer<V> deserializer;
+  private final byte[] data;
+
+  /** value i is from starts[i] to starts[i + 1] */
+  private final int[] starts;
+  private final int size;
+
+  SerializedValueList(final BytesDeserializer<V> deserializer,
+      final byte[] data, final int[] starts, final int size) {
+    this.deserializer = deserializer;
+    this.data = data;
+    this.starts = starts;
+    this.size = size;
+  }
+
+  /**
+   * @return the class every value is serialized as
+   */
+  public Class<V> getValueClass() {
+    return deserializer.getDeserializedClass();
+  }
+
+  /**
+   * @return the serialized values, value i is from {@link #getOffset(int)
+   *         getOffset(i)} to getOffset(i + 1)
+   */
+  public byte[] getData() {
+    return data;
+  }
+
+  /**
+   * @param index
+   *          from 0 to {@link #size()}
+   * @return the offset in {@link #getData()} value index starts at, or for
+   *         index {@link #size()} the end of the last value
+   */
+  public int getOffset(final int index) {
+    return starts[index];
+  }
+
+  @Override
+  public V get(final int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+          + size);
+    }
+    return read(index, null);
+  }
+
+  private V read(final int index, final V reuse) {
+    return deserializer.deserialize(data, starts[index], starts[index + 1]
+        - starts[index], reuse);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public Object[] toArray() {
+    final Object[] array = new Object[size];
+    for (int i = 0; i < size; i++) {
+      array[i] = read(i, null);
+    }
+    return array;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T[] toArray(final T[] a) {
+    final T[] array = a.length >= size ? a : (T[]) Array.newInstance(a
+        .getClass().getComponentType(), size);
+    for (int i = 0; i < size; i++) {
+      array[i] = (T) read(i, null);
+    }
+    if (array.length > size) {
+      array[size] = null;
+    }
+    return array;
+  }
+
+  @Override
+  public Iterator<V> iterator() {
+    return new Iterator<V>() {
+      private int next;
+      private V instance;
+
+      @Override
+      public boolean hasNext() {
+        return next < size;
+      }
+
+      @Override
+      public V next() {
+        if (next >= size) {
+          throw new NoSuchElementException();
+        }
+        instance = read(next++, instance);
+        return instance;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+}
@@ -0,0 +1,210 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.shuffle;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+
+/**
+ * Sorted runs of serialized records spilled to SequenceFiles in a local
+ * temporary directory under hadoop.tmp.dir, or java.io.tmpdir when that is
+ * not set, which is created with the first spill and removed by
+ * {@link #delete()}
+ */
+class SpillDirectory {
+
+  /** the deprecated name, which Hadoop 2 still maps to its own */
+  private static final String SORT_FACTOR_KEY = "io.sort.factor";
+  private static final int DEFAULT_SORT_FACTOR = 10;
+  private static final String TMP_DIR_KEY = "hadoop.tmp.dir";
+
+  private final Configuration conf;
+  private final String prefix;
+  private File dir;
+  private final List<SpillFile> files = new ArrayList<SpillFile>();
+  private int filesCreated;
+  private long records;
+  private long bytes;
+
+  /**
+   * @param conf
+   * @param prefix
+   *          starts the name of the directory
+   */
+  SpillDirectory(final Configuration conf, final String prefix) {
+    this.conf = conf;
+    this.prefix = prefix;
+  }
+
+  /**
+   * Writes every record of sorted to a new spill after the others, then
+   * closes it
+   */
+  void write(final RawKeyValueIterator sorted, final Class<?> keyClass,
+      final Class<?> valueClass) throws IOException {
+    if (dir == null) {
+      dir = createDir();
+    }
+    final SpillFile file = new SpillFile(FileSystem.getLocal(conf).getRaw(),
+        conf, new Path(dir.toString(), "spill" + filesCreated++ + ".seq"));
+    file.write(sorted, keyClass, valueClass);
+    records += file.getRecords();
+    bytes += file.getBytes();
+    files.add(file);
+  }
+
+  /**
+   * @return a new directory, its name unique among those in the parent
+   */
+  private File createDir() throws IOException {
+    final File parent = new File(conf.get(TMP_DIR_KEY,
+        System.getProperty("java.io.tmpdir")));
+    if (!parent.mkdirs() && !parent.isDirectory()) {
+      throw new IOException("Failed to create spill parent dir " + parent);
+    }
+    final File created = File.createTempFile(prefix, "", parent);
+    if (!created.delete() || !created.mkdir()) {
+      throw new IOException("Failed to create spill dir " + created);
+    }
+    return created;
+  }
+
+  /**
+   * Merges spills until they and otherRuns are at most io.sort.factor runs to
+   * read at once. As Hadoop's Merger does, the first pass merges just enough
+   * spills that every later pass merges io.sort.factor of them, and each pass
+   * merges the smallest spills, so a record is rewritten about once for each
+   * level of the merge. Only neighbouring spills are merged, in place, so
+   * records with equal keys stay in the order they were spilled.
+   * 
+   * @param otherRuns
+   *          the runs, such as the records still in memory, to be read with
+   *          the spills
+   */
+  void merge(final RawComparator<?> comparator, final Class<?> keyClass,
+      final Class<?> valueClass, final int otherRuns) throws IOException {
+    final int factor = Math.max(
+        new JobConf(conf).getInt(SORT_FACTOR_KEY, DEFAULT_SORT_FACTOR), 2);
+    final int mostSpills = Math.max(factor - otherRuns, 1);
+    int passFactor = firstPassFactor(factor, files.size() + otherRuns);
+    while (files.size() > mostSpills) {
+      final int count = Math.min(passFactor, files.size());
+      final int start = smallestRun(count);
+      final List<SpillFile> merging = new ArrayList<SpillFile>(files.subList(
+          start, start + count));
+      write(new MergedRecords(open(merging), comparator), keyClass,
+          valueClass);
+      final SpillFile mergedFile = files.remove(files.size() - 1);
+      for (final SpillFile file : merging) {
+        file.delete();
+      }
+      files.subList(start, start + count).clear();
+      files.add(start, mergedFile);
+      passFactor = factor;
+    }
+  }
+
+  /**
+   * @return the number of runs the first pass of merging runs into at most
+   *         factor merges, as Hadoop's Merger works it out
+   */
+  private static int firstPassFactor(final int factor, final int runs) {
+    if (runs <= factor) {
+      return factor;
+    }
+    final int mod = (runs - 1) % (factor - 1);
+    return mod == 0 ? factor : mod + 1;
+  }
+
+  /**
+   * @return the start of the count neighbouring spills of the fewest bytes,
+   *         the earliest of those of equal size
+   */
+  private int smallestRun(final int count) {
+    long bytes = 0;
+    for (int i = 0; i < count; i++) {
+      bytes += files.get(i).getBytes();
+    }
+    long smallestBytes = bytes;
+    int smallest = 0;
+    for (int start = 1; start + count <= files.size(); start++) {
+      bytes += files.get(start + count - 1).getBytes()
+          - files.get(start - 1).getBytes();
+      if (bytes < smallestBytes) {
+        smallestBytes = bytes;
+        smallest = start;
+      }
+    }
+    return smallest;
+  }
+
+  /**
+   * @return the records of each spill, in the order they were spilled
+   */
+  List<RawKeyValueIterator> open() throws IOException {
+    return open(files);
+  }
+
+  private static List<RawKeyValueIterator> open(final List<SpillFile> files)
+      throws IOException {
+    final List<RawKeyValueIterator> runs = new ArrayList<RawKeyValueIterator>(
+        files.size() + 1);
+    for (final SpillFile file : files) {
+      runs.add(file.open());
+    }
+    return runs;
+  }
+
+  /** @return the number of spills not yet merged into others */
+  int size() {
+    return files.size();
+  }
+
+  boolean isEmpty() {
+    return files.isEmpty();
+  }
+
+  /** @return the number of records written, counting merges */
+  long getRecords() {
+    return records;
+  }
+
+  /** @return the number of serialized key and value bytes written */
+  long getBytes() {
+    return bytes;
+  }
+
+  /** Deletes the directory and every spill in it */
+  void delete() throws IOException {
+    if (dir != null) {
+      FileUtil.fullyDelete(dir);
+      dir = null;
+    }
+    files.clear();
+  }
+}
@@ -0,0 +1,168 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.shuffle;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.SequenceFile.ValueBytes;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+import org.apache.hadoop.util.Progress;
+
+/**
+ * A sorted run of serialized records on local disk, written and read as an
+ * uncompressed SequenceFile without deserializing the records
+ */
+class SpillFile {
+
+  private final FileSystem fs;
+  private final Configuration conf;
+  private final Path path;
+  private long records;
+  private long bytes;
+
+  SpillFile(final FileSystem fs, final Configuration conf, final Path path) {
+    this.fs = fs;
+    this.conf = conf;
+    this.path = path;
+  }
+
+  /**
+   * Writes every record of sorted, then closes it
+   */
+  void write(final RawKeyValueIterator sorted, final Class<?> keyClass,
+      final Class<?> valueClass) throws IOException {
+    final SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf,
+        path, keyClass, valueClass, CompressionType.NONE);
+    final RawValue value = new RawValue();
+    try {
+      while (sorted.next()) {
+        final DataInputBuffer key = sorted.getKey();
+        final int keyLength = key.getLength() - key.getPosition();
+        value.set(sorted.getValue());
+        writer.appendRaw(key.getData(), key.getPosition(), keyLength, value);
+        records++;
+        bytes += keyLength + value.getSize();
+      }
+    } finally {
+      writer.close();
+      sorted.close();
+    }
+  }
+
+  /** @return the records of the file, in order */
+  RawKeyValueIterator open() throws IOException {
+    return new Records(new SequenceFile.Reader(fs, path, conf));
+  }
+
+  void delete() throws IOException {
+    fs.delete(path, false);
+  }
+
+  /** @return the number of records written */
+  long getRecords() {
+    return records;
+  }
+
+  /** @return the number of serialized key and value bytes written */
+  long getBytes() {
+    return bytes;
+  }
+
+  /** A serialized value appended as it is */
+  private static class RawValue implements ValueBytes {
+    private DataInputBuffer value;
+
+    void set(final DataInputBuffer value) {
+      this.value = value;
+    }
+
+    @Override
+    public void writeUncompressedBytes(final DataOutputStream out)
+        throws IOException {
+      out.write(value.getData(), value.getPosition(), getSize());
+    }
+
+    @Override
+    public void writeCompressedBytes(final DataOutputStream out) {
+      throw new IllegalArgumentException("Spills are not compressed");
+    }
+
+    @Override
+    public int getSize() {
+      return value.getLength() - value.getPosition();
+    }
+  }
+
+  private static class Records implements RawKeyValueIterator {
+    private final SequenceFile.Reader reader;
+    private final ValueBytes valueBytes;
+    private final DataOutputBuffer keyOut = new DataOutputBuffer();
+    private final DataOutputBuffer valueOut = new DataOutputBuffer();
+    private final DataInputBuffer key = new DataInputBuffer();
+    private final DataInputBuffer value = new DataInputBuffer();
+    private final Progress progress = new Progress();
+
+    Records(final SequenceFile.Reader reader) {
+      this.reader = reader;
+      valueBytes = reader.createValueBytes();
+    }
+
+    @Override
+    public boolean next() throws IOException {
+      keyOut.reset();
+      if (reader.nextRaw(keyOut, valueBytes) < 0) {
+        return false;
+      }
+      valueOut.reset();
+      valueBytes.writeUncompressedBytes(valueOut);
+      key.reset(keyOut.getData(), keyOut.getLength());
+      value.reset(valueOut.getData(), valueOut.getLength());
+      return true;
+    }
+
+    @Override
+    public DataInputBuffer getKey() {
+      return key;
+    }
+
+    @Override
+    public DataInputBuffer getValue() {
+      return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+      reader.close();
+    }
+
+    /**
+     * Only part of the interface in Hadoop 2
+     */
+    public Progress getProgress() {
+      return progress;
+    }
+  }
+}
@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the bytes the current thread allocates, as HotSpot JVMs count
+ * them, so the allocations of a phase of a run can be accounted on the
+ * thread that ran it. While a thread is accounting, what MRUnit allocates to
+ * collect and copy outputs is measured separately, to be excluded from what
+ * the mapper or reducer under test allocated.
+ */
+public final class AllocationAccounting {
+
+  private static final boolean SUPPORTED = isSupportedByJvm();
+
+  private static final ThreadLocal<State> STATE = new ThreadLocal<State>() {
+    @Override
+    protected State initialValue() {
+      return new State();
+    }
+  };
+
+  private static final class State {
+    private int accounting;
+    private int excluding;
+    private long excluded;
+  }
+
+  private AllocationAccounting() {
+  }
+
+  /**
+   * com.sun.management is only referred to from here, so JVMs without it
+   * fail to load this class rather than AllocationAccounting
+   */
+  private static final class SunThreads {
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private static com.sun.management.ThreadMXBean threads() {
+      final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+      if (threads instanceof com.sun.management.ThreadMXBean) {
+        final com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+        if (sunThreads.isThreadAllocatedMemorySupported()
+            && sunThreads.isThreadAllocatedMemoryEnabled()) {
+          return sunThreads;
+        }
+      }
+      return null;
+    }
+  }
+
+  private static boolean isSupportedByJvm() {
+    try {
+      return SunThreads.THREADS != null;
+    } catch (final LinkageError e) {
+      return false;
+    }
+  }
+
+  /** @return whether the JVM measures the bytes each thread allocates */
+  public static boolean isSupported() {
+    return SUPPORTED;
+  }
+
+  /**
+   * @return the bytes the current thread has allocated since it started, 0
+   *         if the JVM does not measure them
+   */
+  public static long getAllocatedBytes() {
+    if (!SUPPORTED) {
+      return 0;
+    }
+    return SunThreads.THREADS.getThreadAllocatedBytes(Thread.currentThread()
+        .getId());
+  }
+
+  /**
+   * Starts accounting on the current thread, until a matching call to
+   * {@link #stop()}
+   */
+  public static void start() {
+    STATE.get().accounting++;
+  }
+
+  public static void stop() {
+    STATE.get().accounting--;
+  }
+
+  /** @return whether the current thread is accounting */
+  public static boolean isAccounting() {
+    return STATE.get().accounting > 0;
+  }
+
+  /**
+   * @return the bytes allocated by MRUnit while the current thread was
+   *         accounting, added up since it started
+   */
+  public static long getExcludedBytes() {
+    return STATE.get().excluded;
+  }
+
+  /**
+   * Starts measuring what MRUnit allocates, if the current thread is
+   * accounting and is not measuring already
+   * 
+   * @return the token to give {@link #endExcluded(long)}
+   */
+  public static long beginExcluded() {
+    final State state = STATE.get();
+    if (state.accounting == 0 || state.excluding++ > 0) {
+      return -1;
+    }
+    return getAllocatedBytes();
+  }
+
+  /**
+   * @param token
+   *          as returned by the matching {@link #beginExcluded()}
+   */
+  public static void endExcluded(final long token) {
+    final State state = STATE.get();
+    if (state.accounting == 0) {
+      return;
+    }
+    state.excluding--;
+    if (token >= 0) {
+      state.excluded += getAllocatedBytes() - token;
+    }
+  }
+}
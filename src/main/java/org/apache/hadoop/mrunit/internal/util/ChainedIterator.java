@@ -0,0 +1,56 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.util;
+
+import java.util.Iterator;
+
+/**
+ * An iterator over the elements of one iterator followed by those of another
+ * 
+ * @param <T>
+ */
+public class ChainedIterator<T> implements Iterator<T> {
+
+  private final Iterator<? extends T> second;
+  private Iterator<? extends T> current;
+
+  public ChainedIterator(final Iterator<? extends T> first,
+      final Iterator<? extends T> second) {
+    this.current = first;
+    this.second = second;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (!current.hasNext()) {
+      current = second;
+    }
+    return current.hasNext();
+  }
+
+  @Override
+  public T next() {
+    hasNext();
+    return current.next();
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs tasks on a pool of threads of its own and returns their results in the
+ * order the tasks were given, whatever order they finish in
+ */
+public final class ParallelTasks {
+
+  private ParallelTasks() {
+    // dont create this class
+  }
+
+  /**
+   * @param tasks
+   * @param threads
+   *          the most tasks to run at once
+   * @param name
+   *          starts the names of the threads
+   * @return the result of each task, in order
+   * @throws IOException
+   *           thrown by the first task, in order, that failed. Other
+   *           exceptions and errors of tasks are thrown as they are.
+   */
+  public static <T> List<T> run(final List<? extends Callable<T>> tasks,
+      final int threads, final String name) throws IOException {
+    final ExecutorService executor = Executors.newFixedThreadPool(
+        Math.max(1, Math.min(threads, tasks.size())), new ThreadFactory() {
+          private final AtomicInteger created = new AtomicInteger();
+
+          @Override
+          public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, name + "-"
+                + created.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    try {
+      final List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+      for (final Callable<T> task : tasks) {
+        futures.add(executor.submit(task));
+      }
+      final List<T> results = new ArrayList<T>(tasks.size());
+      for (final Future<T> future : futures) {
+        results.add(get(future));
+      }
+      return results;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static <T> T get(final Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (final InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IOException(ie);
+    } catch (final ExecutionException ee) {
+      final Throwable cause = ee.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.util;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An iterator which can look at its next element without moving past it
+ * 
+ * @param <T>
+ */
+public class PeekingIterator<T> implements Iterator<T> {
+
+  private final Iterator<? extends T> iterator;
+  private T peeked;
+  private boolean hasPeeked;
+
+  public PeekingIterator(final Iterator<? extends T> iterator) {
+    this.iterator = iterator;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return hasPeeked || iterator.hasNext();
+  }
+
+  @Override
+  public T next() {
+    if (!hasPeeked) {
+      return iterator.next();
+    }
+    final T next = peeked;
+    peeked = null;
+    hasPeeked = false;
+    return next;
+  }
+
+  /**
+   * @return the element the next call to {@link #next()} will return
+   * @throws NoSuchElementException
+   *           if there are no more elements
+   */
+  public T peek() {
+    if (!hasPeeked) {
+      peeked = iterator.next();
+      hasPeeked = true;
+    }
+    return peeked;
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+}
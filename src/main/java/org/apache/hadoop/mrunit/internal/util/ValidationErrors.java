@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.util;
+
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * The errors of a validation. Only the first of them are kept, and logged,
+ * the rest are just counted, and each is formatted only when it is logged or
+ * the validation fails.
+ */
+public class ValidationErrors {
+
+  private final Log log;
+  private final int maxReported;
+  private final List<Object> reported = new ArrayList<Object>();
+  private int count;
+
+  /**
+   * @param log
+   *          the errors are logged to at error level
+   * @param maxReported
+   *          the most errors to keep and log
+   */
+  public ValidationErrors(final Log log, final int maxReported) {
+    this.log = log;
+    this.maxReported = maxReported;
+  }
+
+  /**
+   * @param error
+   *          a message, or an object whose toString is the message
+   */
+  public void add(final Object error) {
+    count++;
+    if (reported.size() < maxReported) {
+      reported.add(error);
+      if (log.isErrorEnabled()) {
+        log.error(error);
+      }
+    }
+  }
+
+  /**
+   * @param format
+   * @param args
+   *          formatted with format only if the error is logged or reported
+   */
+  public void add(final String format, final Object... args) {
+    add(new Message(format, args));
+  }
+
+  public int size() {
+    return count;
+  }
+
+  public boolean isEmpty() {
+    return count == 0;
+  }
+
+  /**
+   * Fails with the count of errors and the messages of those kept if there
+   * are any errors
+   */
+  public void assertNone() {
+    if (!isEmpty()) {
+      fail(toString());
+    }
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder buffer = new StringBuilder();
+    buffer.append(count).append(" Error(s): (");
+    for (int i = 0; i < reported.size(); i++) {
+      if (i > 0) {
+        buffer.append(", ");
+      }
+      buffer.append(reported.get(i));
+    }
+    if (count > reported.size()) {
+      buffer.append(", and ").append(count - reported.size())
+          .append(" more");
+    }
+    return buffer.append(")").toString();
+  }
+
+  /**
+   * An error message formatted when it is first needed
+   */
+  public static class Message {
+    private final String format;
+    private final Object[] args;
+    private String message;
+
+    public Message(final String format, final Object... args) {
+      this.format = format;
+      this.args = args;
+    }
+
+    @Override
+    public String toString() {
+      if (message == null) {
+        message = String.format(format, args);
+      }
+      return message;
+    }
+  }
+}
@@ -19,22 +19,43 @@ package org.apache.hadoop.mrunit.mapreduce;
 
 import static org.apache.hadoop.mrunit.internal.util.ArgumentChecker.returnNonNull;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapreduce.Counters;
 import org.apache.hadoop.mapreduce.InputFormat;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.Partitioner;
 import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
 import org.apache.hadoop.mrunit.MapReduceDriverBase;
+import org.apache.hadoop.mrunit.RunReport;
+import org.apache.hadoop.mrunit.RunReport.Phase;
 import org.apache.hadoop.mrunit.internal.counters.CounterWrapper;
+import org.apache.hadoop.mrunit.internal.mapreduce.MockMapContextWrapper;
+import org.apache.hadoop.mrunit.internal.mapreduce.MockReduceContextWrapper;
+import org.apache.hadoop.mrunit.internal.output.CountingOutputCollector;
+import org.apache.hadoop.mrunit.internal.output.MockOutputCollector;
+import org.apache.hadoop.mrunit.internal.output.MockOutputCreator;
+import org.apache.hadoop.mrunit.internal.output.OutputCollectable;
+import org.apache.hadoop.mrunit.internal.shuffle.BinaryShuffle;
+import org.apache.hadoop.mrunit.internal.shuffle.Combiner;
+import org.apache.hadoop.mrunit.internal.shuffle.MapOutputBuffer;
+import org.apache.hadoop.mrunit.internal.util.CountingIterator;
+import org.apache.hadoop.mrunit.types.InstanceFactory;
+import org.apache.hadoop.mrunit.types.OutputDigest;
+import org.apache.hadoop.mrunit.types.OutputSink;
 import org.apache.hadoop.mrunit.types.Pair;
+import org.apache.hadoop.util.ReflectionUtils;
 
 /**
  * Harness that allows you to test a Mapper and a Reducer instance together You
@@ -45,6 +66,9 @@ import org.apache.hadoop.mrunit.types.Pair;
  * and will check the Reducer's outputs against the expected results. This is
  * designed to handle a single (k, v)* -> (k, v)* case from the Mapper/Reducer
  * pair, representing a single unit test.
+ * 
+ * With mapreduce.job.reduces above 1 the map outputs are partitioned by the
+ * Partitioner of the job configuration, see {@link #getPartitionOutputs()}.
  */
 @SuppressWarnings("rawtypes")
 public class MapReduceDriver<K1, V1, K2, V2, K3, V3> extends
@@ -52,9 +76,15 @@ public class MapReduceDriver<K1, V1, K2, V2, K3, V3> extends
 
   public static final Log LOG = LogFactory.getLog(MapReduceDriver.class);
 
+  private static final String PARTITIONER_CLASS_KEY = "mapreduce.job.partitioner.class";
+  private static final String OLD_PARTITIONER_CLASS_KEY = "mapreduce.partitioner.class";
+
   private Mapper<K1, V1, K2, V2> myMapper;
   private Reducer<K2, V2, K3, V3> myReducer;
   private Reducer<K2, V2, K2, V2> myCombiner;
+  private InstanceFactory<? extends Mapper<K1, V1, K2, V2>> mapperFactory;
+  private InstanceFactory<? extends Reducer<K2, V2, K2, V2>> combinerFactory;
+  private InstanceFactory<? extends Reducer<K2, V2, K3, V3>> reducerFactory;
   private Counters counters;
 
   private Class<? extends OutputFormat> outputFormatClass;
@@ -210,6 +240,19 @@ public class MapReduceDriver<K1, V1, K2, V2, K3, V3> extends
     return this;
   }
 
+  /**
+   * Identical to setInputs() but returns self for fluent programming style
+   * 
+   * @param inputs
+   *          read once, by the next run
+   * @return this
+   */
+  public MapReduceDriver<K1, V1, K2, V2, K3, V3> withInputs(
+      final Iterator<Pair<K1, V1>> inputs) {
+    setInputs(inputs);
+    return this;
+  }
+
   /**
    * Works like addOutput(), but returns self for fluent style
    * 
@@ -280,37 +323,250 @@ public class MapReduceDriver<K1, V1, K2, V2, K3, V3> extends
    * genericity reasons. This class is used in the run() method.
    */
   private class ReducePhaseRunner<OUTKEY, OUTVAL> {
+    private final Counters counters;
+
+    private ReducePhaseRunner() {
+      this(getCounters());
+    }
+
+    /**
+     * @param counters
+     *          given to the reducer in place of those of the driver
+     */
+    private ReducePhaseRunner(final Counters counters) {
+      this.counters = counters;
+    }
+
+    /**
+     * Reduces every key group through a single context and call to
+     * Reducer.run, so setup and cleanup run once as they would in a reduce
+     * task
+     */
     private List<Pair<OUTKEY, OUTVAL>> runReduce(
-        final List<Pair<K2, List<V2>>> inputs,
+        final List<Pair<K2, V2>> mapOutputs,
         final Reducer<K2, V2, OUTKEY, OUTVAL> reducer) throws IOException {
+      final OutputCollectable<OUTKEY, OUTVAL> outputCollectable = createOutputCreator()
+          .createOutputCollectable(configuration);
+      runReduce(mapOutputs, reducer, outputCollectable);
+      return outputCollectable.getOutputs();
+    }
+
+    /**
+     * Reduces every key group as above, sending the outputs to output
+     */
+    private void runReduce(final List<Pair<K2, V2>> mapOutputs,
+        final Reducer<K2, V2, OUTKEY, OUTVAL> reducer,
+        final OutputCollector<OUTKEY, OUTVAL> output) throws IOException {
+      final List<Pair<K2, List<V2>>> inputs = shuffle(mapOutputs);
+      logReduceInputs(inputs);
+      final List<Pair<K2, List<V2>>> groups = reuseValueInstances(inputs);
+      runReduceGroups(groups, groups.iterator(), null, reducer, output);
+    }
+
+    /**
+     * Reduces key groups already shuffled as above, sending the outputs to
+     * output
+     * 
+     * @param inputs
+     *          the groups if they are held as a list, else null
+     * @param reading
+     *          reads the groups
+     * @param groupTimer
+     *          times each group, may be null
+     */
+    private void runReduceGroups(final List<Pair<K2, List<V2>>> inputs,
+        final Iterator<Pair<K2, List<V2>>> reading,
+        final RunReport.RecordTimer groupTimer,
+        final Reducer<K2, V2, OUTKEY, OUTVAL> reducer,
+        final OutputCollector<OUTKEY, OUTVAL> output) throws IOException {
+      try {
+        final MockReduceContextWrapper<K2, V2, OUTKEY, OUTVAL> wrapper = new MockReduceContextWrapper<K2, V2, OUTKEY, OUTVAL>(
+            inputs, reading, groupTimer, counters, configuration, output);
+        reducer.run(wrapper.getMockContext());
+        if (groupTimer != null) {
+          groupTimer.finish();
+        }
+      } catch (final InterruptedException ie) {
+        throw new IOException(ie);
+      }
+    }
+
+    /**
+     * Reduces the key groups of a binary shuffle as above, sending the
+     * outputs to output
+     */
+    private void runReduce(final BinaryShuffle<K2, V2> shuffle,
+        final Reducer<K2, V2, OUTKEY, OUTVAL> reducer,
+        final OutputCollector<OUTKEY, OUTVAL> output) throws IOException {
+      runReduce(shuffle.getGroups(), reducer, output);
+      countSpills(shuffle);
+    }
+
+    private void runReduce(final Iterator<Pair<K2, List<V2>>> inputs,
+        final Reducer<K2, V2, OUTKEY, OUTVAL> reducer,
+        final OutputCollector<OUTKEY, OUTVAL> output) throws IOException {
+      runReduceGroups(null, inputs, null, reducer, output);
+    }
+
+    private MockOutputCreator<OUTKEY, OUTVAL> createOutputCreator() {
+      final MockOutputCreator<OUTKEY, OUTVAL> mockOutputCreator = new MockOutputCreator<OUTKEY, OUTVAL>();
+      if (outputFormatClass != null) {
+        mockOutputCreator.setMapreduceFormats(outputFormatClass,
+            inputFormatClass);
+      }
+      return mockOutputCreator;
+    }
+  }
 
-      final List<Pair<OUTKEY, OUTVAL>> reduceOutputs = new ArrayList<Pair<OUTKEY, OUTVAL>>();
-
-      for (final Pair<K2, List<V2>> input : inputs) {
-        final K2 inputKey = input.getFirst();
-        final List<V2> inputValues = input.getSecond();
-        final StringBuilder sb = new StringBuilder();
-        formatValueList(inputValues, sb);
-        LOG.debug("Reducing input (" + inputKey.toString() + ", "
-            + sb.toString() + ")");
-
-        final ReduceDriver<K2, V2, OUTKEY, OUTVAL> reduceDriver = ReduceDriver
-            .newReduceDriver(reducer).withCounters(getCounters())
-            .withConfiguration(configuration).withInputKey(inputKey)
-            .withInputValues(inputValues);
-        if (outputFormatClass != null) {
-          reduceDriver.withOutputFormat(outputFormatClass, inputFormatClass);
+  /**
+   * Maps the inputs, in splits when the map parallelism is more than 1, and
+   * through a map output buffer when the map sort buffer is on
+   */
+  private void runMap(final OutputCollector<K2, V2> output)
+      throws IOException {
+    if (getMapParallelism() > 1) {
+      runMapSplits(new SplitMapper<K1, V1, K2, V2>() {
+        @Override
+        public List<Pair<K2, V2>> map(final List<Pair<K1, V1>> split)
+            throws IOException {
+          return mapSplit(split);
+        }
+      }, output);
+    } else {
+      final CountingIterator<Pair<K1, V1>> inputs = new CountingIterator<Pair<K1, V1>>(
+          takeInputs());
+      final CountingOutputCollector<K2, V2> outputs = new CountingOutputCollector<K2, V2>(
+          output);
+      final RunReport.Timer timer = startPhase(Phase.MAP);
+      try {
+        if (isMapSortBuffer()) {
+          countMapSpills(runMapWithSortBuffer(myMapper, myCombiner,
+              timeRecords(Phase.MAP, inputs), getCounters(), outputs));
+        } else {
+          runMap(myMapper, timeRecords(Phase.MAP, inputs), getCounters(),
+              outputs);
         }
-        reduceOutputs.addAll(reduceDriver.run());
+        timer.stop(inputs.getCount(), outputs.getCount());
+      } finally {
+        timer.close();
       }
+    }
+  }
 
-      return reduceOutputs;
+  /**
+   * Maps a split with new mapper and combiner instances and counters of its
+   * own, which are added to those of the driver once it is done
+   */
+  private List<Pair<K2, V2>> mapSplit(final List<Pair<K1, V1>> split)
+      throws IOException {
+    final Mapper<K1, V1, K2, V2> mapper = newSplitInstance(myMapper, mapperFactory);
+    final Counters splitCounters = new Counters();
+    final OutputCollectable<K2, V2> output = new MockOutputCollector<K2, V2>(
+        configuration);
+    MapOutputBuffer<K2, V2> buffer = null;
+    final RunReport.Timer timer = startPhase(Phase.MAP);
+    final List<Pair<K2, V2>> outputs;
+    try {
+      if (isMapSortBuffer()) {
+        final Reducer<K2, V2, K2, V2> combiner = myCombiner == null ? null
+            : newSplitInstance(myCombiner, combinerFactory);
+        buffer = runMapWithSortBuffer(mapper, combiner, timeRecords(
+            Phase.MAP, split.iterator()), splitCounters, output);
+      } else {
+        runMap(mapper, timeRecords(Phase.MAP, split.iterator()),
+            splitCounters, output);
+      }
+      outputs = output.getOutputs();
+      timer.stop(split.size(), outputs.size());
+    } finally {
+      timer.close();
+    }
+    synchronized (this) {
+      getCounters().incrAllCounters(splitCounters);
+      if (buffer != null) {
+        countMapSpills(buffer);
+      }
+    }
+    return outputs;
+  }
+
+  /**
+   * Feeds the inputs to the Mapper through a single context and call to
+   * Mapper.run, so setup and cleanup run once as they would in a map task
+   */
+  private void runMap(final Mapper<K1, V1, K2, V2> mapper,
+      final Iterator<Pair<K1, V1>> inputs, final Counters counters,
+      final OutputCollector<K2, V2> output) throws IOException {
+    try {
+      final MockMapContextWrapper<K1, V1, K2, V2> wrapper = new MockMapContextWrapper<K1, V1, K2, V2>(
+          inputs, counters, configuration, output);
+      mapper.run(wrapper.getMockContext());
+    } catch (final InterruptedException ie) {
+      throw new IOException(ie);
+    }
+  }
+
+  /**
+   * Maps the inputs into a map output buffer, which runs the combiner over
+   * each of its spills, then sends the merged spills to output
+   * 
+   * @return the buffer, closed, for its spills to be counted
+   */
+  private MapOutputBuffer<K2, V2> runMapWithSortBuffer(
+      final Mapper<K1, V1, K2, V2> mapper,
+      final Reducer<K2, V2, K2, V2> combiner,
+      final Iterator<Pair<K1, V1>> inputs, final Counters counters,
+      final OutputCollector<K2, V2> output) throws IOException {
+    final Combiner<K2, V2> bufferCombiner = combiner == null ? null
+        : new Combiner<K2, V2>() {
+          @Override
+          public void combine(final Iterator<Pair<K2, List<V2>>> groups,
+              final OutputCollector<K2, V2> combinerOutput)
+              throws IOException {
+            new ReducePhaseRunner<K2, V2>(counters).runReduce(groups,
+                combiner, combinerOutput);
+          }
+        };
+    final MapOutputBuffer<K2, V2> buffer = newMapOutputBuffer(bufferCombiner);
+    try {
+      runMap(mapper, inputs, counters, buffer);
+      buffer.flush(output);
+    } finally {
+      buffer.close();
+    }
+    return buffer;
+  }
+
+  @Override
+  protected List<Pair<K3, V3>> runDiscardingCounters() throws IOException {
+    final Counters kept = getCounters();
+    setCounters(new Counters());
+    try {
+      return run();
+    } finally {
+      setCounters(kept);
     }
   }
 
   @Override
   public List<Pair<K3, V3>> run() throws IOException {
-    if (inputList.isEmpty()) {
+    return runJob(null);
+  }
+
+  @Override
+  public void run(final OutputSink<K3, V3> sink) throws IOException {
+    runJob(toCollector(returnNonNull(sink)));
+  }
+
+  /**
+   * @param output
+   *          receives the reduce outputs in place of the output collectable,
+   *          may be null
+   * @return the reduce outputs, empty if they were sent to output
+   */
+  private List<Pair<K3, V3>> runJob(final OutputCollector<K3, V3> output)
+      throws IOException {
+    if (!hasInputs()) {
       throw new IllegalStateException("No input was provided");
     }
     if (myMapper == null) {
@@ -319,30 +575,221 @@ public class MapReduceDriver<K1, V1, K2, V2, K3, V3> extends
     if (myReducer == null) {
       throw new IllegalStateException("No Reducer class was provided");
     }
-
-    List<Pair<K2, V2>> mapOutputs = new ArrayList<Pair<K2, V2>>();
+    newRunReport();
+    if (isBinaryShuffle()) {
+      return runWithBinaryShuffle(output);
+    }
 
     // run map component
-    for (final Pair<K1, V1> input : inputList) {
-      LOG.debug("Mapping input " + input.toString() + ")");
-
-      mapOutputs.addAll(MapDriver.newMapDriver(myMapper)
-          .withCounters(getCounters()).withConfiguration(configuration)
-          .withInput(input).run());
-    }
+    final OutputCollectable<K2, V2> mapOutputCollector = new MockOutputCollector<K2, V2>(
+        configuration);
+    runMap(mapOutputCollector);
+    List<Pair<K2, V2>> mapOutputs = mapOutputCollector.getOutputs();
 
-    if (myCombiner != null) {
+    if (myCombiner != null && !isMapSortBuffer()) {
       // User has specified a combiner. Run this and replace the mapper outputs
       // with the result of the combiner.
       LOG.debug("Starting combine phase with combiner: " + myCombiner);
-      mapOutputs = new ReducePhaseRunner<K2, V2>().runReduce(
-          shuffle(mapOutputs), myCombiner);
+      final RunReport.Timer timer = startPhase(Phase.COMBINE);
+      try {
+        final int inputs = mapOutputs.size();
+        mapOutputs = new ReducePhaseRunner<K2, V2>().runReduce(mapOutputs,
+            myCombiner);
+        timer.stop(inputs, mapOutputs.size());
+      } finally {
+        timer.close();
+      }
     }
 
     // Run the reduce phase.
     LOG.debug("Starting reduce phase with reducer: " + myReducer);
-    return new ReducePhaseRunner<K3, V3>().runReduce(shuffle(mapOutputs),
-        myReducer);
+    final int reduces = getNumReduceTasks();
+    final List<List<Pair<K2, V2>>> partitions = partition(mapOutputs,
+        reduces, newPartitionFunction(reduces));
+    return runReducePartitions(partitions.size(),
+        new PartitionReducer<K3, V3>() {
+          @Override
+          public OutputCollectable<K3, V3> reduce(final int partition)
+              throws IOException {
+            return reducePartition(partitions.get(partition), null,
+                partitions.size(), output);
+          }
+        });
+  }
+
+  /**
+   * Runs the job with the map outputs, and the combiner outputs, going
+   * straight into binary shuffles rather than being held as objects. There
+   * is a shuffle for each reduce partition.
+   */
+  private List<Pair<K3, V3>> runWithBinaryShuffle(
+      final OutputCollector<K3, V3> output) throws IOException {
+    final boolean combine = myCombiner != null && !isMapSortBuffer();
+    final BinaryShuffle<K2, V2> mapShuffle = combine ? newBinaryShuffle()
+        : null;
+    final List<BinaryShuffle<K2, V2>> reduceShuffles = newBinaryShuffles(getNumReduceTasks());
+    try {
+      final OutputCollector<K2, V2> reduceInput = partition(reduceShuffles,
+          newPartitionFunction(reduceShuffles.size()));
+      if (combine) {
+        runMap(mapShuffle);
+        LOG.debug("Starting combine phase with combiner: " + myCombiner);
+        final CountingOutputCollector<K2, V2> outputs = new CountingOutputCollector<K2, V2>(
+            reduceInput);
+        final RunReport.Timer timer = startPhase(Phase.COMBINE);
+        try {
+          new ReducePhaseRunner<K2, V2>().runReduce(mapShuffle, myCombiner,
+              outputs);
+          timer.stop(mapShuffle.getRecords(), outputs.getCount());
+        } finally {
+          timer.close();
+        }
+      } else {
+        runMap(reduceInput);
+      }
+
+      LOG.debug("Starting reduce phase with reducer: " + myReducer);
+      return runReducePartitions(reduceShuffles.size(),
+          new PartitionReducer<K3, V3>() {
+            @Override
+            public OutputCollectable<K3, V3> reduce(final int partition)
+                throws IOException {
+              return reducePartition(null, reduceShuffles.get(partition),
+                  reduceShuffles.size(), output);
+            }
+          });
+    } finally {
+      if (mapShuffle != null) {
+        mapShuffle.close();
+      }
+      for (final BinaryShuffle<K2, V2> reduceShuffle : reduceShuffles) {
+        reduceShuffle.close();
+      }
+    }
+  }
+
+  /**
+   * Reduces the map outputs of a partition, or its binary shuffle, with the
+   * reducer and counters of the driver when it is the only partition, else
+   * with a new reducer instance and counters of its own which are added to
+   * those of the driver once it is done. The outputs are sent to output if
+   * it is not null, else to the returned collectable.
+   */
+  private OutputCollectable<K3, V3> reducePartition(
+      final List<Pair<K2, V2>> mapOutputs, final BinaryShuffle<K2, V2> shuffle,
+      final int partitions, final OutputCollector<K3, V3> output)
+      throws IOException {
+    if (partitions == 1) {
+      return reducePartition(mapOutputs, shuffle, myReducer, getCounters(),
+          output);
+    }
+    final Counters partitionCounters = new Counters();
+    final OutputCollectable<K3, V3> outputs = reducePartition(mapOutputs,
+        shuffle, newPartitionInstance(myReducer, reducerFactory, partitions),
+        partitionCounters, output);
+    synchronized (this) {
+      getCounters().incrAllCounters(partitionCounters);
+    }
+    return outputs;
+  }
+
+  private OutputCollectable<K3, V3> reducePartition(
+      final List<Pair<K2, V2>> mapOutputs, final BinaryShuffle<K2, V2> shuffle,
+      final Reducer<K2, V2, K3, V3> reducer, final Counters counters,
+      final OutputCollector<K3, V3> output) throws IOException {
+    final ReducePhaseRunner<K3, V3> runner = new ReducePhaseRunner<K3, V3>(
+        counters);
+    final OutputCollectable<K3, V3> outputCollectable = output == null ? createOutputCollectable(runner
+        .createOutputCreator())
+        : null;
+    final CountingOutputCollector<K3, V3> reduceOutput = new CountingOutputCollector<K3, V3>(
+        output == null ? outputCollectable : output);
+    if (shuffle == null) {
+      final List<Pair<K2, List<V2>>> groups = shuffleGroups(mapOutputs);
+      final RunReport.Timer timer = startPhase(Phase.REDUCE);
+      try {
+        runner.runReduceGroups(groups, groups.iterator(),
+            timeRecords(Phase.REDUCE), reducer, reduceOutput);
+        timer.stop(mapOutputs.size(), reduceOutput.getCount());
+      } finally {
+        timer.close();
+      }
+    } else {
+      final Iterator<Pair<K2, List<V2>>> groups = shuffleGroups(shuffle);
+      final RunReport.Timer timer = startPhase(Phase.REDUCE);
+      try {
+        runner.runReduceGroups(null, groups, timeRecords(Phase.REDUCE),
+            reducer, reduceOutput);
+        timer.stop(shuffle.getRecords(), reduceOutput.getCount());
+      } finally {
+        timer.close();
+      }
+      countSpills(shuffle);
+    }
+    return outputCollectable;
+  }
+
+  /**
+   * Groups map outputs by key for the reducer, timed as a shuffle phase
+   */
+  private List<Pair<K2, List<V2>>> shuffleGroups(
+      final List<Pair<K2, V2>> mapOutputs) {
+    final RunReport.Timer timer = startPhase(Phase.SHUFFLE);
+    final List<Pair<K2, List<V2>>> groups;
+    try {
+      groups = shuffle(mapOutputs);
+      timer.stop(mapOutputs.size(), groups.size());
+    } finally {
+      timer.close();
+    }
+    logReduceInputs(groups);
+    return reuseValueInstances(groups);
+  }
+
+  /**
+   * Sorts the map outputs of a binary shuffle for the reducer, timed as a
+   * shuffle phase. Merging spills and grouping happen as the reducer reads,
+   * so are timed as part of the reduce.
+   */
+  private Iterator<Pair<K2, List<V2>>> shuffleGroups(
+      final BinaryShuffle<K2, V2> shuffle) throws IOException {
+    final RunReport.Timer timer = startPhase(Phase.SHUFFLE);
+    final Iterator<Pair<K2, List<V2>>> groups;
+    try {
+      groups = shuffle.getGroups();
+      timer.stop(shuffle.getRecords(), shuffle.getRecords(),
+          shuffle.getBytes());
+    } finally {
+      timer.close();
+    }
+    return groups;
+  }
+
+  /**
+   * @param partitions
+   * @return the Partitioner class of the job configuration, configured with
+   *         it if it is Configurable, as a partition function, or null for a
+   *         single partition which needs none
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private PartitionFunction<K2, V2> newPartitionFunction(final int partitions) {
+    if (partitions == 1) {
+      return null;
+    }
+    // read as Hadoop 2 names it, else as Hadoop 1 does
+    final Class<? extends Partitioner> partitionerClass = configuration
+        .getClass(PARTITIONER_CLASS_KEY, configuration.getClass(
+            OLD_PARTITIONER_CLASS_KEY, HashPartitioner.class,
+            Partitioner.class), Partitioner.class);
+    final Partitioner<K2, V2> partitioner = ReflectionUtils.newInstance(
+        partitionerClass, configuration);
+    return new PartitionFunction<K2, V2>() {
+      @Override
+      public int getPartition(final K2 key, final V2 value,
+          final int numPartitions) {
+        return partitioner.getPartition(key, value, numPartitions);
+      }
+    };
   }
 
   @Override
@@ -390,6 +837,99 @@ public class MapReduceDriver<K1, V1, K2, V2, K3, V3> extends
     return this;
   }
 
+  /**
+   * Identical to {@link #setMapParallelism(int)}, but with a fluent
+   * programming style
+   * 
+   * @param mapParallelism
+   *          the number of splits to map the inputs in at once
+   * @return this
+   */
+  public MapReduceDriver<K1, V1, K2, V2, K3, V3> withMapParallelism(
+      final int mapParallelism) {
+    setMapParallelism(mapParallelism);
+    return this;
+  }
+
+  /**
+   * Sets the factory of the mapper for each map split, in place of creating
+   * them with the no argument constructor of the class of the mapper
+   * 
+   * @param factory
+   *          gives a new mapper each time it is called
+   */
+  public void setMapperFactory(
+      final InstanceFactory<? extends Mapper<K1, V1, K2, V2>> factory) {
+    mapperFactory = returnNonNull(factory);
+  }
+
+  /**
+   * Identical to {@link #setMapperFactory(InstanceFactory)}, but with a fluent
+   * programming style
+   * 
+   * @param factory
+   *          gives a new mapper each time it is called
+   * @return this
+   */
+  public MapReduceDriver<K1, V1, K2, V2, K3, V3> withMapperFactory(
+      final InstanceFactory<? extends Mapper<K1, V1, K2, V2>> factory) {
+    setMapperFactory(factory);
+    return this;
+  }
+
+  /**
+   * Sets the factory of the combiner for each map split, in place of creating
+   * them with the no argument constructor of the class of the combiner
+   * 
+   * @param factory
+   *          gives a new combiner each time it is called
+   */
+  public void setCombinerFactory(
+      final InstanceFactory<? extends Reducer<K2, V2, K2, V2>> factory) {
+    combinerFactory = returnNonNull(factory);
+  }
+
+  /**
+   * Identical to {@link #setCombinerFactory(InstanceFactory)}, but with a
+   * fluent programming style
+   * 
+   * @param factory
+   *          gives a new combiner each time it is called
+   * @return this
+   */
+  public MapReduceDriver<K1, V1, K2, V2, K3, V3> withCombinerFactory(
+      final InstanceFactory<? extends Reducer<K2, V2, K2, V2>> factory) {
+    setCombinerFactory(factory);
+    return this;
+  }
+
+  /**
+   * Sets the factory of the reducer for each reduce partition when there is
+   * more than one reduce task, in place of creating them with the no argument
+   * constructor of the class of the reducer
+   * 
+   * @param factory
+   *          gives a new reducer each time it is called
+   */
+  public void setReducerFactory(
+      final InstanceFactory<? extends Reducer<K2, V2, K3, V3>> factory) {
+    reducerFactory = returnNonNull(factory);
+  }
+
+  /**
+   * Identical to {@link #setReducerFactory(InstanceFactory)}, but with a
+   * fluent programming style
+   * 
+   * @param factory
+   *          gives a new reducer each time it is called
+   * @return this
+   */
+  public MapReduceDriver<K1, V1, K2, V2, K3, V3> withReducerFactory(
+      final InstanceFactory<? extends Reducer<K2, V2, K3, V3>> factory) {
+    setReducerFactory(factory);
+    return this;
+  }
+
   @Override
   public MapReduceDriver<K1, V1, K2, V2, K3, V3> withCounter(final Enum e,
       final long expectedValue) {
@@ -404,6 +944,88 @@ public class MapReduceDriver<K1, V1, K2, V2, K3, V3> extends
     return this;
   }
 
+  @Override
+  public MapReduceDriver<K1, V1, K2, V2, K3, V3> withExpectedOutputDigest(
+      final OutputDigest digest) {
+    super.withExpectedOutputDigest(digest);
+    return this;
+  }
+
+  @Override
+  public MapReduceDriver<K1, V1, K2, V2, K3, V3> withSerializedMatching(
+      final boolean serializedMatching) {
+    super.withSerializedMatching(serializedMatching);
+    return this;
+  }
+
+  @Override
+  public MapReduceDriver<K1, V1, K2, V2, K3, V3> withRecordLatency(
+      final int slowestRecords) {
+    super.withRecordLatency(slowestRecords);
+    return this;
+  }
+
+  @Override
+  public MapReduceDriver<K1, V1, K2, V2, K3, V3> withAllocationProfiling(
+      final boolean allocationProfiling) {
+    super.withAllocationProfiling(allocationProfiling);
+    return this;
+  }
+
+  @Override
+  public MapReduceDriver<K1, V1, K2, V2, K3, V3> withMaxAllocatedBytesPerRecord(
+      final long maxAllocatedBytesPerRecord) {
+    super.withMaxAllocatedBytesPerRecord(maxAllocatedBytesPerRecord);
+    return this;
+  }
+
+  @Override
+  public MapReduceDriver<K1, V1, K2, V2, K3, V3> withMaxRecordsLatency(
+      final long p99, final TimeUnit unit) {
+    super.withMaxRecordsLatency(p99, unit);
+    return this;
+  }
+
+  @Override
+  public MapReduceDriver<K1, V1, K2, V2, K3, V3> withMinThroughput(
+      final double recordsPerSecond) {
+    super.withMinThroughput(recordsPerSecond);
+    return this;
+  }
+
+  @Override
+  public MapReduceDriver<K1, V1, K2, V2, K3, V3> withMaxOutputAmplification(
+      final double ratio) {
+    super.withMaxOutputAmplification(ratio);
+    return this;
+  }
+
+  @Override
+  public MapReduceDriver<K1, V1, K2, V2, K3, V3> withPerformanceRuns(
+      final int warmUpRuns, final int measuredRuns) {
+    super.withPerformanceRuns(warmUpRuns, measuredRuns);
+    return this;
+  }
+
+  @Override
+  public MapReduceDriver<K1, V1, K2, V2, K3, V3> withPerformanceBaseline(
+      final File file, final String testName) {
+    super.withPerformanceBaseline(file, testName);
+    return this;
+  }
+
+  @Override
+  public MapReduceDriver<K1, V1, K2, V2, K3, V3> withBaselineTolerance(
+      final double tolerance) {
+    super.withBaselineTolerance(tolerance);
+    return this;
+  }
+
+  @Override
+  protected List<Class<?>> getClassesUnderTest() {
+    return classesOf(getMapper(), getCombiner(), getReducer());
+  }
+
   /**
    * Returns a new MapReduceDriver without having to specify the generic types
    * on the right hand side of the object create statement.
@@ -20,9 +20,11 @@ package org.apache.hadoop.mrunit.mapreduce;
 
 import static org.apache.hadoop.mrunit.internal.util.ArgumentChecker.returnNonNull;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -32,10 +34,14 @@ import org.apache.hadoop.mapreduce.InputFormat;
 import org.apache.hadoop.mapreduce.OutputFormat;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mrunit.ReduceDriverBase;
+import org.apache.hadoop.mrunit.RunReport;
+import org.apache.hadoop.mrunit.RunReport.Phase;
 import org.apache.hadoop.mrunit.internal.counters.CounterWrapper;
 import org.apache.hadoop.mrunit.internal.mapreduce.MockReduceContextWrapper;
+import org.apache.hadoop.mrunit.internal.output.CountingOutputCollector;
 import org.apache.hadoop.mrunit.internal.output.MockOutputCreator;
 import org.apache.hadoop.mrunit.internal.output.OutputCollectable;
+import org.apache.hadoop.mrunit.types.OutputDigest;
 import org.apache.hadoop.mrunit.types.Pair;
 
 /**
@@ -224,6 +230,17 @@ public class ReduceDriver<K1, V1, K2, V2> extends
     return this;
   }
 
+  @Override
+  protected List<Pair<K2, V2>> runDiscardingCounters() throws IOException {
+    final Counters kept = getCounters();
+    setCounters(new Counters());
+    try {
+      return run();
+    } finally {
+      setCounters(kept);
+    }
+  }
+
   @Override
   public List<Pair<K2, V2>> run() throws IOException {
     if (inputKey == null || getInputValues().isEmpty()) {
@@ -237,12 +254,25 @@ public class ReduceDriver<K1, V1, K2, V2> extends
     inputs.add(new Pair<K1, List<V1>>(inputKey, getInputValues()));
 
     try {
-      final OutputCollectable<K2, V2> outputCollectable = mockOutputCreator
-          .createOutputCollectable(getConfiguration());
-      final MockReduceContextWrapper<K1, V1, K2, V2> wrapper = new MockReduceContextWrapper<K1, V1, K2, V2>(
-          inputs, getCounters(), getConfiguration(), outputCollectable);
-      myReducer.run(wrapper.getMockContext());
-      return outputCollectable.getOutputs();
+      newRunReport();
+      final OutputCollectable<K2, V2> outputCollectable = createOutputCollectable(mockOutputCreator);
+      final CountingOutputCollector<K2, V2> output = new CountingOutputCollector<K2, V2>(
+          outputCollectable);
+      final RunReport.Timer reduce = startPhase(Phase.REDUCE);
+      try {
+        final RunReport.RecordTimer groupTimer = timeRecords(Phase.REDUCE);
+        final MockReduceContextWrapper<K1, V1, K2, V2> wrapper = new MockReduceContextWrapper<K1, V1, K2, V2>(
+            inputs, inputs.iterator(), groupTimer, getCounters(),
+            getConfiguration(), output);
+        myReducer.run(wrapper.getMockContext());
+        if (groupTimer != null) {
+          groupTimer.finish();
+        }
+        reduce.stop(getInputValues().size(), output.getCount());
+      } finally {
+        reduce.close();
+      }
+      return getOutputs(outputCollectable);
     } catch (final InterruptedException ie) {
       throw new IOException(ie);
     }
@@ -279,6 +309,88 @@ public class ReduceDriver<K1, V1, K2, V2> extends
     return this;
   }
 
+  @Override
+  public ReduceDriver<K1, V1, K2, V2> withExpectedOutputDigest(
+      final OutputDigest digest) {
+    super.withExpectedOutputDigest(digest);
+    return this;
+  }
+
+  @Override
+  public ReduceDriver<K1, V1, K2, V2> withSerializedMatching(
+      final boolean serializedMatching) {
+    super.withSerializedMatching(serializedMatching);
+    return this;
+  }
+
+  @Override
+  public ReduceDriver<K1, V1, K2, V2> withRecordLatency(
+      final int slowestRecords) {
+    super.withRecordLatency(slowestRecords);
+    return this;
+  }
+
+  @Override
+  public ReduceDriver<K1, V1, K2, V2> withAllocationProfiling(
+      final boolean allocationProfiling) {
+    super.withAllocationProfiling(allocationProfiling);
+    return this;
+  }
+
+  @Override
+  public ReduceDriver<K1, V1, K2, V2> withMaxAllocatedBytesPerRecord(
+      final long maxAllocatedBytesPerRecord) {
+    super.withMaxAllocatedBytesPerRecord(maxAllocatedBytesPerRecord);
+    return this;
+  }
+
+  @Override
+  public ReduceDriver<K1, V1, K2, V2> withMaxRecordsLatency(
+      final long p99, final TimeUnit unit) {
+    super.withMaxRecordsLatency(p99, unit);
+    return this;
+  }
+
+  @Override
+  public ReduceDriver<K1, V1, K2, V2> withMinThroughput(
+      final double recordsPerSecond) {
+    super.withMinThroughput(recordsPerSecond);
+    return this;
+  }
+
+  @Override
+  public ReduceDriver<K1, V1, K2, V2> withMaxOutputAmplification(
+      final double ratio) {
+    super.withMaxOutputAmplification(ratio);
+    return this;
+  }
+
+  @Override
+  public ReduceDriver<K1, V1, K2, V2> withPerformanceRuns(
+      final int warmUpRuns, final int measuredRuns) {
+    super.withPerformanceRuns(warmUpRuns, measuredRuns);
+    return this;
+  }
+
+  @Override
+  public ReduceDriver<K1, V1, K2, V2> withPerformanceBaseline(
+      final File file, final String testName) {
+    super.withPerformanceBaseline(file, testName);
+    return this;
+  }
+
+  @Override
+  public ReduceDriver<K1, V1, K2, V2> withBaselineTolerance(
+      final double tolerance) {
+    super.withBaselineTolerance(tolerance);
+    return this;
+  }
+
+  @Override
+  protected List<Class<?>> getClassesUnderTest() {
+    return classesOf(getReducer());
+  }
+
   /**
    * Returns a new ReduceDriver without having to specify the generic types on
    * the right hand side of the object create statement.
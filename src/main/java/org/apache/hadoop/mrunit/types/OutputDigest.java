@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.types;
+
+/**
+ * A digest of the outputs of a run, standing in for the outputs themselves
+ * when there are too many to keep: the number of records, their serialized
+ * bytes and two hashes of the serialized records, one changing with their
+ * order and one not. Digests of runs with the same outputs are equal.
+ */
+public final class OutputDigest {
+
+  /** multiplies the ordered hash before each record's hash is added */
+  static final long PRIME = 1099511628211L;
+
+  private final long records;
+  private final long bytes;
+  private final long orderedHash;
+  private final long unorderedHash;
+
+  /**
+   * @param records
+   * @param bytes
+   *          serialized bytes of the keys and values
+   * @param orderedHash
+   *          the record hashes h1 ... hn as ((h1 * P + h2) * P + ...) + hn
+   * @param unorderedHash
+   *          the sum of the record hashes
+   */
+  public OutputDigest(final long records, final long bytes,
+      final long orderedHash, final long unorderedHash) {
+    this.records = records;
+    this.bytes = bytes;
+    this.orderedHash = orderedHash;
+    this.unorderedHash = unorderedHash;
+  }
+
+  /**
+   * @param recordHash
+   *          of the serialized key and value of a record
+   * @param recordBytes
+   * @return the digest of these records followed by that record
+   */
+  public OutputDigest followedBy(final long recordHash, final int recordBytes) {
+    return new OutputDigest(records + 1, bytes + recordBytes, orderedHash
+        * PRIME + recordHash, unorderedHash + recordHash);
+  }
+
+  /**
+   * @param next
+   * @return the digest of these records followed by those of next
+   */
+  public OutputDigest followedBy(final OutputDigest next) {
+    long shift = 1;
+    long factor = PRIME;
+    for (long n = next.records; n > 0; n >>>= 1) {
+      if ((n & 1) != 0) {
+        shift *= factor;
+      }
+      factor *= factor;
+    }
+    return new OutputDigest(records + next.records, bytes + next.bytes,
+        orderedHash * shift + next.orderedHash, unorderedHash
+            + next.unorderedHash);
+  }
+
+  public long getRecords() {
+    return records;
+  }
+
+  public long getBytes() {
+    return bytes;
+  }
+
+  public long getOrderedHash() {
+    return orderedHash;
+  }
+
+  public long getUnorderedHash() {
+    return unorderedHash;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (!(o instanceof OutputDigest)) {
+      return false;
+    }
+    final OutputDigest other = (OutputDigest) o;
+    return records == other.records && bytes == other.bytes
+        && orderedHash == other.orderedHash
+        && unorderedHash == other.unorderedHash;
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) (orderedHash ^ (orderedHash >>> 32));
+  }
+
+  /**
+   * @return the digest as the arguments of its constructor, so a digest
+   *         logged by one run can be expected by the next
+   */
+  @Override
+  public String toString() {
+    return String.format("OutputDigest(%dL, %dL, 0x%016xL, 0x%016xL)",
+        records, bytes, orderedHash, unorderedHash);
+  }
+}
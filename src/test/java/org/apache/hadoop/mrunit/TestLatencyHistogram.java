@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.apache.hadoop.mrunit.LatencyHistogram.Sample;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestLatencyHistogram {
+
+  @Rule
+  public final ExpectedSuppliedException thrown = ExpectedSuppliedException
+      .none();
+
+  @Test
+  public void testPercentiles() {
+    final LatencyHistogram histogram = new LatencyHistogram(0);
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i * 1000L, null);
+    }
+    assertEquals(1000, histogram.getCount());
+    assertEquals(1000000, histogram.getMaxNanos());
+    assertEquals(1000000, histogram.getPercentileNanos(100));
+    assertWithinBucket(500000, histogram.getPercentileNanos(50));
+    assertWithinBucket(900000, histogram.getPercentileNanos(90));
+    assertWithinBucket(990000, histogram.getPercentileNanos(99));
+    assertTrue(histogram.getSlowest().isEmpty());
+  }
+
+  @Test
+  public void testSmallLatenciesAreExact() {
+    final LatencyHistogram histogram = new LatencyHistogram(0);
+    for (int i = 0; i < 64; i++) {
+      histogram.record(i, null);
+    }
+    assertEquals(31, histogram.getPercentileNanos(50));
+    assertEquals(63, histogram.getPercentileNanos(100));
+  }
+
+  @Test
+  public void testSlowest() {
+    final LatencyHistogram histogram = new LatencyHistogram(2);
+    histogram.record(5, "a");
+    histogram.record(9, "b");
+    histogram.record(1, "c");
+    histogram.record(7, "d");
+    final List<Sample> slowest = histogram.getSlowest();
+    assertEquals(2, slowest.size());
+    assertEquals("b", slowest.get(0).getKey());
+    assertEquals(9, slowest.get(0).getNanos());
+    assertEquals("d", slowest.get(1).getKey());
+  }
+
+  @Test
+  public void testAdd() {
+    final LatencyHistogram first = new LatencyHistogram(2);
+    first.record(5, "a");
+    first.record(9, "b");
+    final LatencyHistogram second = new LatencyHistogram(2);
+    second.record(Long.MAX_VALUE, "c");
+    first.add(second);
+    assertEquals(3, first.getCount());
+    assertEquals(Long.MAX_VALUE, first.getMaxNanos());
+    assertEquals(Long.MAX_VALUE, first.getPercentileNanos(100));
+    assertEquals(9, first.getPercentileNanos(50));
+    assertEquals("c", first.getSlowest().get(0).getKey());
+    assertEquals("b", first.getSlowest().get(1).getKey());
+  }
+
+  @Test
+  public void testPercentileOutOfRange() {
+    thrown.expectMessage(IllegalArgumentException.class,
+        "A percentile must be above 0 and at most 100, not 0.0");
+    new LatencyHistogram(0).getPercentileNanos(0);
+  }
+
+  /** asserts actual is at least expected and within 1/32 of it */
+  private static void assertWithinBucket(final long expected, final long actual) {
+    assertTrue(actual + " < " + expected, actual >= expected);
+    assertTrue(actual + " > " + expected, actual <= expected + expected / 32);
+  }
+}
@@ -20,6 +20,8 @@ package org.apache.hadoop.mrunit;
 import static org.apache.hadoop.mrunit.ExtendedAssert.assertListEquals;
 import static org.junit.Assert.assertEquals;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -28,6 +30,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.MapReduceBase;
 import org.apache.hadoop.mapred.Mapper;
@@ -158,9 +161,8 @@ public class TestMapDriver {
   @Test
   public void testTestRun7() {
     thrown
-        .expectAssertionErrorMessage("2 Error(s): (Matched expected output (foo, bar) but at "
-            + "incorrect position 0 (expected position 1), "
-            + "Missing expected output (someotherkey, bar) at position 0.)");
+        .expectAssertionErrorMessage("2 Error(s): (Missing expected output (someotherkey, bar) at position 0., "
+            + "Matched expected output (foo, bar) but at incorrect position 0 (expected position 1))");
     driver.withInput(new Text("foo"), new Text("bar"))
         .withOutput(new Text("someotherkey"), new Text("bar"))
         .withOutput(new Text("foo"), new Text("bar")).runTest(true);
@@ -319,6 +321,108 @@ public class TestMapDriver {
     }
   }
 
+  @Test
+  public void testEqualOutputsSerializedDifferently() {
+    final MapDriver<Text, VersionedWritable, Text, VersionedWritable> versionedDriver = MapDriver
+        .newMapDriver(new IdentityMapper<Text, VersionedWritable>());
+    versionedDriver.withInput(new Text("foo"), new VersionedWritable(1, 1))
+        .withOutput(new Text("foo"), new VersionedWritable(1, 2)).runTest();
+
+    thrown.expectAssertionErrorMessage("2 Error(s): (Missing expected output "
+        + "(foo, 1) at position 0., Received unexpected output (foo, 1) at position 0.)");
+    versionedDriver.withSerializedMatching(true).runTest();
+  }
+
+  /**
+   * A Writable equal to those of the same value whatever their version,
+   * which is serialized too
+   */
+  public static class VersionedWritable implements Writable {
+    private int value;
+    private int version;
+
+    public VersionedWritable() {
+    }
+
+    public VersionedWritable(final int value, final int version) {
+      this.value = value;
+      this.version = version;
+    }
+
+    @Override
+    public void write(final DataOutput out) throws IOException {
+      out.writeInt(value);
+      out.writeInt(version);
+    }
+
+    @Override
+    public void readFields(final DataInput in) throws IOException {
+      value = in.readInt();
+      version = in.readInt();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      return o instanceof VersionedWritable
+          && ((VersionedWritable) o).value == value;
+    }
+
+    @Override
+    public int hashCode() {
+      return value;
+    }
+
+    @Override
+    public String toString() {
+      return String.valueOf(value);
+    }
+  }
+
+  @Test
+  public void testOutputsWithoutEquals() {
+    final MapDriver<Text, NoEqualsWritable, Text, NoEqualsWritable> noEqualsDriver = MapDriver
+        .newMapDriver(new IdentityMapper<Text, NoEqualsWritable>())
+        .withSerializedMatching(true);
+    noEqualsDriver.withInput(new Text("foo"), new NoEqualsWritable(1))
+        .withOutput(new Text("foo"), new NoEqualsWritable(1)).runTest();
+
+    thrown.expectAssertionErrorMessage("2 Error(s): (Missing expected output "
+        + "(foo, 2) at position 0., Received unexpected output (foo, 1) at position 0.)");
+    noEqualsDriver.resetOutput();
+    noEqualsDriver.withOutput(new Text("foo"), new NoEqualsWritable(2))
+        .runTest();
+  }
+
+  /**
+   * A Writable with the equals and hashCode of Object, outputs of which can
+   * only be matched by their bytes
+   */
+  public static class NoEqualsWritable implements Writable {
+    private int value;
+
+    public NoEqualsWritable() {
+    }
+
+    public NoEqualsWritable(final int value) {
+      this.value = value;
+    }
+
+    @Override
+    public void write(final DataOutput out) throws IOException {
+      out.writeInt(value);
+    }
+
+    @Override
+    public void readFields(final DataInput in) throws IOException {
+      value = in.readInt();
+    }
+
+    @Override
+    public String toString() {
+      return String.valueOf(value);
+    }
+  }
+
   @Test
   public void testNonTextWritableWithInputFromString() {
     final MapDriver<LongWritable, LongWritable, Text, Text> driver = MapDriver
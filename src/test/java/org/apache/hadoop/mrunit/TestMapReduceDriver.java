@@ -19,11 +19,19 @@ package org.apache.hadoop.mrunit;
 
 import static org.apache.hadoop.mrunit.ExtendedAssert.assertListEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.IntWritable;
@@ -33,15 +41,23 @@ import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.Mapper;
 import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Partitioner;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.SequenceFileInputFormat;
 import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.apache.hadoop.mapred.TextInputFormat;
 import org.apache.hadoop.mapred.TextOutputFormat;
+import org.apache.hadoop.mapred.lib.HashPartitioner;
 import org.apache.hadoop.mapred.lib.IdentityMapper;
 import org.apache.hadoop.mapred.lib.IdentityReducer;
 import org.apache.hadoop.mapred.lib.LongSumReducer;
+import org.apache.hadoop.mrunit.RunReport.Phase;
+import org.apache.hadoop.mrunit.internal.output.DigestOutputCollector;
+import org.apache.hadoop.mrunit.internal.util.AllocationAccounting;
+import org.apache.hadoop.mrunit.types.InstanceFactory;
+import org.apache.hadoop.mrunit.types.OutputDigest;
+import org.apache.hadoop.mrunit.types.OutputSink;
 import org.apache.hadoop.mrunit.types.Pair;
 import org.junit.Before;
 import org.junit.Rule;
@@ -345,6 +361,720 @@ public class TestMapReduceDriver {
     driver.runTest();
   }
 
+  @Test
+  public void testBinaryShuffle() {
+    driver.getConfiguration().setBoolean(
+        MapReduceDriverBase.BINARY_SHUFFLE_KEY, true);
+    driver.withCombiner(new LongSumReducer<Text>())
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withInput(new Text("bar"), new LongWritable(BAR_IN))
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_B))
+        .withOutput(new Text("bar"), new LongWritable(BAR_IN))
+        .withOutput(new Text("foo"), new LongWritable(FOO_OUT)).runTest();
+  }
+
+  // Test the key grouping comparator comparing serialized keys
+  @Test
+  public void testBinaryShuffleComparators() {
+    // group comparator - group by first character
+    final RawComparator<Text> groupComparator = new RawComparator<Text>() {
+      @Override
+      public int compare(final Text o1, final Text o2) {
+        throw new RuntimeException("Not implemented");
+      }
+
+      @Override
+      public int compare(final byte[] b1, final int s1, final int l1,
+          final byte[] b2, final int s2, final int l2) {
+        // skip the vint length of each Text
+        return b1[s1 + 1] - b2[s2 + 1];
+      }
+    };
+
+    // reducer to track the order of the input values using bit shifting
+    driver.withReducer(new Reducer<Text, LongWritable, Text, LongWritable>() {
+      @Override
+      public void reduce(final Text key, final Iterator<LongWritable> values,
+          final OutputCollector<Text, LongWritable> output,
+          final Reporter reporter) throws IOException {
+        long outputValue = 0;
+        int count = 0;
+        while (values.hasNext()) {
+          outputValue |= (values.next().get() << (count++ * 8));
+        }
+
+        output.collect(key, new LongWritable(outputValue));
+      }
+
+      @Override
+      public void configure(final JobConf job) {
+      }
+
+      @Override
+      public void close() throws IOException {
+      }
+    });
+
+    driver.getConfiguration().setBoolean(
+        MapReduceDriverBase.BINARY_SHUFFLE_KEY, true);
+    driver.withKeyGroupingComparator(groupComparator);
+
+    driver.addInput(new Text("a1"), new LongWritable(1));
+    driver.addInput(new Text("b1"), new LongWritable(1));
+    driver.addInput(new Text("a3"), new LongWritable(3));
+    driver.addInput(new Text("a2"), new LongWritable(2));
+
+    driver.addOutput(new Text("a1"), new LongWritable(0x1 | (0x2 << 8)
+        | (0x3 << 16)));
+    driver.addOutput(new Text("b1"), new LongWritable(0x1));
+
+    driver.runTest();
+  }
+
+  @Test
+  public void testBinaryShuffleSpills() {
+    driver.getConfiguration().setBoolean(
+        MapReduceDriverBase.BINARY_SHUFFLE_KEY, true);
+    // spills after every map output
+    driver.getConfiguration().setLong(
+        MapReduceDriverBase.SHUFFLE_MEMORY_BYTES_KEY, 1);
+    driver.withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withInput(new Text("bar"), new LongWritable(BAR_IN))
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_B))
+        .withOutput(new Text("bar"), new LongWritable(BAR_IN))
+        .withOutput(new Text("foo"), new LongWritable(FOO_OUT))
+        .withCounter(ShuffleCounters.SPILLS, 3)
+        .withCounter(ShuffleCounters.SPILLED_RECORDS, 3)
+        .withCounter(ShuffleCounters.SPILLED_BYTES, 3 * (4 + 8)).runTest();
+  }
+
+  @Test
+  public void testMapSortBuffer() {
+    final LifecycleCountingReducer combiner = new LifecycleCountingReducer();
+    driver.getConfiguration().setBoolean(
+        MapReduceDriverBase.MAP_SORT_BUFFER_KEY, true);
+    // spills every second map output
+    driver.getConfiguration().setInt("io.sort.mb", 1);
+    driver.getConfiguration().setFloat("io.sort.spill.percent", 0.00005f);
+    driver.withCombiner(combiner)
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withInput(new Text("bar"), new LongWritable(BAR_IN))
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_B))
+        .withOutput(new Text("bar"), new LongWritable(BAR_IN))
+        .withOutput(new Text("foo"), new LongWritable(FOO_OUT))
+        .withCounter(ShuffleCounters.MAP_SPILLS, 2)
+        // the combined first spill, the second and their merge
+        .withCounter(ShuffleCounters.MAP_SPILLED_RECORDS, 2 + 1 + 3)
+        .withCounter(ShuffleCounters.MAP_SPILLED_BYTES, (2 + 1 + 3) * (4 + 8))
+        .runTest();
+    // once for each spill
+    assertEquals(2, combiner.configures);
+    assertEquals(3, combiner.reduces);
+    assertEquals(2, combiner.closes);
+  }
+
+  @Test
+  public void testMapSortBufferWithBinaryShuffle() {
+    driver.getConfiguration().setBoolean(
+        MapReduceDriverBase.MAP_SORT_BUFFER_KEY, true);
+    driver.getConfiguration().setBoolean(
+        MapReduceDriverBase.BINARY_SHUFFLE_KEY, true);
+    driver.withCombiner(new LongSumReducer<Text>())
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withInput(new Text("bar"), new LongWritable(BAR_IN))
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_B))
+        .withOutput(new Text("bar"), new LongWritable(BAR_IN))
+        .withOutput(new Text("foo"), new LongWritable(FOO_OUT))
+        .withCounter(ShuffleCounters.MAP_SPILLS, 1)
+        .withCounter(ShuffleCounters.MAP_SPILLED_RECORDS, 2)
+        .withCounter(ShuffleCounters.SPILLS, 0).runTest();
+  }
+
+  @Test
+  public void testMapParallelism() {
+    final MapReduceDriver<Text, LongWritable, Text, LongWritable, Text, LongWritable> parallel = MapReduceDriver
+        .newMapReduceDriver(new RecordCountingMapper(),
+            new IdentityReducer<Text, LongWritable>());
+    parallel.withMapParallelism(3);
+    for (int i = 0; i < 7; i++) {
+      parallel.withInput(new Text("a"), new LongWritable(i));
+    }
+    // the values of the key stay in input order across the splits
+    for (int i = 0; i < 7; i++) {
+      parallel.withOutput(new Text("a"), new LongWritable(i));
+    }
+    parallel.withCounter("mapper", "records", 7).runTest();
+  }
+
+  @Test
+  public void testMapParallelismWithSortBuffer() {
+    driver = MapReduceDriver.newMapReduceDriver(new RecordCountingMapper(),
+        reducer, new LongSumReducer<Text>());
+    driver.getConfiguration().setBoolean(
+        MapReduceDriverBase.MAP_SORT_BUFFER_KEY, true);
+    driver.withMapParallelism(2)
+        .withInput(new Text("bar"), new LongWritable(BAR_IN))
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_B))
+        .withOutput(new Text("bar"), new LongWritable(BAR_IN))
+        .withOutput(new Text("foo"), new LongWritable(FOO_OUT))
+        // a spill for each split, the second combined to a single record
+        .withCounter(ShuffleCounters.MAP_SPILLS, 2)
+        .withCounter(ShuffleCounters.MAP_SPILLED_RECORDS, 2)
+        .withCounter("mapper", "records", 3).runTest();
+  }
+
+  @Test
+  public void testMapParallelismNeedsNoArgumentConstructor() {
+    driver = MapReduceDriver.newMapReduceDriver(
+        new IdentityMapper<Text, LongWritable>() {
+        }, reducer);
+    driver.withMapParallelism(2)
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withInput(new Text("bar"), new LongWritable(BAR_IN));
+    thrown.expectMessage(IllegalStateException.class,
+        "Map parallelism of 2 needs a new instance of "
+            + "org.apache.hadoop.mrunit.TestMapReduceDriver$");
+    driver.runTest();
+  }
+
+  @Test
+  public void testMapParallelismWithMapperFactory() {
+    final AtomicInteger created = new AtomicInteger();
+    driver = MapReduceDriver.newMapReduceDriver(new OffsetMapper(10),
+        new IdentityReducer<Text, LongWritable>());
+    driver.withMapParallelism(2)
+        .withMapperFactory(new InstanceFactory<OffsetMapper>() {
+          @Override
+          public OffsetMapper newInstance() {
+            created.incrementAndGet();
+            return new OffsetMapper(10);
+          }
+        }).withInput(new Text("a"), new LongWritable(1))
+        .withInput(new Text("a"), new LongWritable(2))
+        .withInput(new Text("b"), new LongWritable(3))
+        .withOutput(new Text("a"), new LongWritable(11))
+        .withOutput(new Text("a"), new LongWritable(12))
+        .withOutput(new Text("b"), new LongWritable(13)).runTest();
+    assertEquals(2, created.get());
+  }
+
+  @Test
+  public void testMapParallelismWithCombinerFactory() {
+    final AtomicInteger created = new AtomicInteger();
+    driver = MapReduceDriver.newMapReduceDriver(mapper, reducer,
+        new LongSumReducer<Text>() {
+        });
+    driver.getConfiguration().setBoolean(
+        MapReduceDriverBase.MAP_SORT_BUFFER_KEY, true);
+    driver.withMapParallelism(2)
+        .withCombinerFactory(new InstanceFactory<LongSumReducer<Text>>() {
+          @Override
+          public LongSumReducer<Text> newInstance() {
+            created.incrementAndGet();
+            return new LongSumReducer<Text>();
+          }
+        }).withInput(new Text("bar"), new LongWritable(BAR_IN))
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_B))
+        .withOutput(new Text("bar"), new LongWritable(BAR_IN))
+        .withOutput(new Text("foo"), new LongWritable(FOO_OUT))
+        .withCounter(ShuffleCounters.MAP_SPILLED_RECORDS, 2).runTest();
+    assertEquals(2, created.get());
+  }
+
+  /**
+   * Adds an offset given to its constructor to each value
+   */
+  static class OffsetMapper extends IdentityMapper<Text, LongWritable> {
+    private final long offset;
+
+    OffsetMapper(final long offset) {
+      this.offset = offset;
+    }
+
+    @Override
+    public void map(final Text key, final LongWritable value,
+        final OutputCollector<Text, LongWritable> output,
+        final Reporter reporter) throws IOException {
+      output.collect(key, new LongWritable(value.get() + offset));
+    }
+  }
+
+  @Test
+  public void testInvalidMapParallelism() {
+    thrown.expectMessage(IllegalArgumentException.class,
+        "Map parallelism must be at least 1, not 0");
+    driver.withMapParallelism(0);
+  }
+
+  static class RecordCountingMapper extends IdentityMapper<Text, LongWritable> {
+    @Override
+    public void map(final Text key, final LongWritable value,
+        final OutputCollector<Text, LongWritable> output,
+        final Reporter reporter) throws IOException {
+      reporter.incrCounter("mapper", "records", 1);
+      super.map(key, value, output, reporter);
+    }
+  }
+
+  @Test
+  public void testReducePartitions() {
+    final JobConf conf = new JobConf();
+    conf.setNumReduceTasks(3);
+    conf.setPartitionerClass(KeyLengthPartitioner.class);
+    driver.withConfiguration(conf)
+        .withInput(new Text("ccc"), new LongWritable(3))
+        .withInput(new Text("aa"), new LongWritable(1))
+        .withInput(new Text("b"), new LongWritable(2))
+        .withInput(new Text("aa"), new LongWritable(4))
+        .withInput(new Text("c"), new LongWritable(5))
+        // partition by partition
+        .withOutput(new Text("b"), new LongWritable(2))
+        .withOutput(new Text("c"), new LongWritable(5))
+        .withOutput(new Text("aa"), new LongWritable(5))
+        .withOutput(new Text("ccc"), new LongWritable(3)).runTest();
+
+    final List<List<Pair<Text, LongWritable>>> partitions = driver
+        .getPartitionOutputs();
+    assertEquals(3, partitions.size());
+    assertEquals(Arrays.asList(new Pair<Text, LongWritable>(new Text("aa"),
+        new LongWritable(5))), partitions.get(1));
+  }
+
+  @Test
+  public void testReducePartitionsWithBinaryShuffle() throws IOException {
+    final JobConf conf = new JobConf();
+    conf.setNumReduceTasks(2);
+    conf.setBoolean(MapReduceDriverBase.BINARY_SHUFFLE_KEY, true);
+    driver = MapReduceDriver.newMapReduceDriver(new RecordCountingMapper(),
+        new LifecycleCountingReducer(), new LongSumReducer<Text>());
+    driver.withConfiguration(conf);
+    for (int i = 0; i < 20; i++) {
+      driver.withInput(new Text("key" + i % 10), new LongWritable(i));
+    }
+    assertEquals(10, driver.run().size());
+
+    final HashPartitioner<Text, LongWritable> partitioner = new HashPartitioner<Text, LongWritable>();
+    final List<List<Pair<Text, LongWritable>>> partitions = driver
+        .getPartitionOutputs();
+    assertEquals(2, partitions.size());
+    for (int i = 0; i < partitions.size(); i++) {
+      for (final Pair<Text, LongWritable> output : partitions.get(i)) {
+        assertEquals(i, partitioner.getPartition(output.getFirst(),
+            output.getSecond(), 2));
+        final int key = Integer.parseInt(output.getFirst().toString()
+            .substring(3));
+        assertEquals(key * 2 + 10, output.getSecond().get());
+      }
+    }
+    assertEquals(20,
+        driver.getCounters().findCounter("mapper", "records").getValue());
+  }
+
+  @Test
+  public void testIllegalPartition() throws IOException {
+    final JobConf conf = new JobConf();
+    conf.setNumReduceTasks(3);
+    conf.setPartitionerClass(KeyLengthPartitioner.class);
+    driver.withConfiguration(conf)
+        .withInput(new Text("b"), new LongWritable(2))
+        .withInput(new Text("dddd"), new LongWritable(4));
+    thrown.expectMessage(IOException.class, "Illegal partition for dddd (3)");
+    driver.run();
+  }
+
+  @Test
+  public void testReducePartitionsNeedNoArgumentConstructor() {
+    final JobConf conf = new JobConf();
+    conf.setNumReduceTasks(2);
+    driver = MapReduceDriver.newMapReduceDriver(mapper,
+        new LongSumReducer<Text>() {
+        });
+    driver.withConfiguration(conf).withInput(new Text("foo"),
+        new LongWritable(FOO_IN_A));
+    thrown.expectMessage(IllegalStateException.class,
+        "2 reduce tasks need a new instance of "
+            + "org.apache.hadoop.mrunit.TestMapReduceDriver$");
+    driver.runTest();
+  }
+
+  @Test
+  public void testReducePartitionsWithReducerFactory() {
+    final AtomicInteger created = new AtomicInteger();
+    final JobConf conf = new JobConf();
+    conf.setNumReduceTasks(3);
+    conf.setPartitionerClass(KeyLengthPartitioner.class);
+    driver = MapReduceDriver.newMapReduceDriver(mapper,
+        new LongSumReducer<Text>() {
+        });
+    driver.withConfiguration(conf)
+        .withReducerFactory(new InstanceFactory<LongSumReducer<Text>>() {
+          @Override
+          public LongSumReducer<Text> newInstance() {
+            created.incrementAndGet();
+            return new LongSumReducer<Text>();
+          }
+        }).withInput(new Text("ccc"), new LongWritable(3))
+        .withInput(new Text("aa"), new LongWritable(1))
+        .withInput(new Text("b"), new LongWritable(2))
+        .withInput(new Text("aa"), new LongWritable(4))
+        .withOutput(new Text("b"), new LongWritable(2))
+        .withOutput(new Text("aa"), new LongWritable(5))
+        .withOutput(new Text("ccc"), new LongWritable(3)).runTest();
+    assertEquals(3, created.get());
+  }
+
+  /**
+   * Partitions by key length, 1 to numPartitions
+   */
+  public static class KeyLengthPartitioner implements
+      Partitioner<Text, LongWritable> {
+    @Override
+    public void configure(final JobConf job) {
+    }
+
+    @Override
+    public int getPartition(final Text key, final LongWritable value,
+        final int numPartitions) {
+      return key.getLength() - 1;
+    }
+  }
+
+  @Test
+  public void testInputIteratorAndOutputSink() throws IOException {
+    driver.getConfiguration().setBoolean(
+        MapReduceDriverBase.BINARY_SHUFFLE_KEY, true);
+    driver.withInput(new Text("key0"), new LongWritable(1000)).withInputs(
+        new GeneratedInputs(100000));
+    final long[] sums = new long[10];
+    driver.run(new OutputSink<Text, LongWritable>() {
+      @Override
+      public void collect(final Text key, final LongWritable value) {
+        sums[Integer.parseInt(key.toString().substring(3))] += value.get();
+      }
+    });
+    // the values of each key are i, i + 10, ... up to 100000
+    assertEquals(499950000L + 1000, sums[0]);
+    assertEquals(499960000L, sums[1]);
+
+    // the iterator was read by the run, the input added stays
+    assertEquals(Arrays.asList(new Pair<Text, LongWritable>(new Text("key0"),
+        new LongWritable(1000))), driver.run());
+  }
+
+  @Test
+  public void testExpectedOutputDigest() throws IOException {
+    final JobConf conf = new JobConf();
+    conf.setNumReduceTasks(3);
+    conf.setPartitionerClass(KeyLengthPartitioner.class);
+    final OutputDigest digest = DigestOutputCollector.digest(Arrays.asList(
+        new Pair<Text, LongWritable>(new Text("b"), new LongWritable(2)),
+        new Pair<Text, LongWritable>(new Text("c"), new LongWritable(5)),
+        new Pair<Text, LongWritable>(new Text("aa"), new LongWritable(5)),
+        new Pair<Text, LongWritable>(new Text("ccc"), new LongWritable(3))),
+        conf);
+    driver.withConfiguration(conf)
+        .withInput(new Text("ccc"), new LongWritable(3))
+        .withInput(new Text("aa"), new LongWritable(1))
+        .withInput(new Text("b"), new LongWritable(2))
+        .withInput(new Text("aa"), new LongWritable(4))
+        .withInput(new Text("c"), new LongWritable(5))
+        .withExpectedOutputDigest(digest).runTest();
+
+    // the digests of the partitions are combined in partition order
+    assertEquals(digest, driver.getOutputDigest());
+    assertEquals(4, digest.getRecords());
+    assertTrue(driver.getPartitionOutputs().get(1).isEmpty());
+  }
+
+  @Test
+  public void testExpectedOutputDigestOrder() throws IOException {
+    final OutputDigest digest = DigestOutputCollector.digest(Arrays.asList(
+        new Pair<Text, LongWritable>(new Text("foo"), new LongWritable(
+            FOO_OUT)), new Pair<Text, LongWritable>(new Text("bar"),
+            new LongWritable(BAR_IN))), driver.getConfiguration());
+    driver.withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_B))
+        .withInput(new Text("bar"), new LongWritable(BAR_IN))
+        .withExpectedOutputDigest(digest).runTest(false);
+
+    thrown.expectAssertionErrorMessage("1 Error(s): (Matched output records "
+        + "but in incorrect order: expected digest " + digest);
+    driver.runTest();
+  }
+
+  @Test
+  public void testRunReport() throws IOException {
+    driver.withCombiner(reducer)
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_B))
+        .withInput(new Text("bar"), new LongWritable(BAR_IN))
+        .withOutput(new Text("bar"), new LongWritable(BAR_IN))
+        .withOutput(new Text("foo"), new LongWritable(FOO_OUT))
+        .withSerializedMatching(true).runTest();
+
+    final RunReport report = driver.getRunReport();
+    assertPhase(report, Phase.MAP, 1, 3, 3);
+    assertPhase(report, Phase.COMBINE, 1, 3, 2);
+    assertPhase(report, Phase.SHUFFLE, 1, 2, 2);
+    assertPhase(report, Phase.REDUCE, 1, 2, 2);
+    assertPhase(report, Phase.VALIDATE, 1, 2, 2);
+    assertEquals(0, report.getPhase(Phase.OUTPUT_FORMAT).getTasks());
+    assertTrue(report.getPhase(Phase.MAP).getBytes() > 0);
+    assertTrue(report.getPhase(Phase.COMBINE).getBytes() > 0);
+    assertEquals(0, report.getPhase(Phase.SHUFFLE).getBytes());
+    assertTrue(report.getPhase(Phase.REDUCE).getBytes() > 0);
+    assertTrue(report.getPhase(Phase.VALIDATE).getBytes() > 0);
+  }
+
+  @Test
+  public void testRunReportWithBinaryShuffle() throws IOException {
+    driver.getConfiguration().setBoolean(
+        MapReduceDriverBase.BINARY_SHUFFLE_KEY, true);
+    driver.getConfiguration().setInt("mapred.reduce.tasks", 2);
+    driver.withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_B))
+        .withInput(new Text("bar"), new LongWritable(BAR_IN)).run();
+
+    // a task for each reduce partition, the report is of the last run
+    final RunReport report = driver.getRunReport();
+    assertPhase(report, Phase.MAP, 1, 3, 3);
+    assertPhase(report, Phase.SHUFFLE, 2, 3, 3);
+    assertPhase(report, Phase.REDUCE, 2, 3, 2);
+    assertEquals(0, report.getPhase(Phase.VALIDATE).getTasks());
+    assertTrue(report.getPhase(Phase.SHUFFLE).getBytes() > 0);
+  }
+
+  @Test
+  public void testRecordLatency() throws IOException {
+    driver = MapReduceDriver.newMapReduceDriver(new SlowKeyMapper(), reducer);
+    driver.withRecordLatency(1)
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withInput(new Text(SlowKeyMapper.SLOW_KEY), new LongWritable(1))
+        .withInput(new Text("bar"), new LongWritable(BAR_IN)).run();
+
+    final LatencyHistogram map = driver.getRunReport().getLatency(Phase.MAP);
+    assertEquals(3, map.getCount());
+    assertEquals(1, map.getSlowest().size());
+    assertEquals(SlowKeyMapper.SLOW_KEY, map.getSlowest().get(0).getKey());
+    assertTrue(map.getMaxNanos() >= SlowKeyMapper.SLOW_MILLIS * 1000000L);
+    // a latency for each key group
+    assertEquals(3, driver.getRunReport().getLatency(Phase.REDUCE).getCount());
+    assertNull(driver.getRunReport().getLatency(Phase.COMBINE));
+  }
+
+  static class SlowKeyMapper extends IdentityMapper<Text, LongWritable> {
+    static final String SLOW_KEY = "slow";
+    static final long SLOW_MILLIS = 20;
+
+    @Override
+    public void map(final Text key, final LongWritable value,
+        final OutputCollector<Text, LongWritable> output,
+        final Reporter reporter) throws IOException {
+      if (key.toString().equals(SLOW_KEY)) {
+        try {
+          Thread.sleep(SLOW_MILLIS);
+        } catch (final InterruptedException e) {
+          throw new IOException(e);
+        }
+      }
+      super.map(key, value, output, reporter);
+    }
+  }
+
+  @Test
+  public void testAllocationProfiling() throws IOException {
+    assumeTrue(AllocationAccounting.isSupported());
+    driver.withAllocationProfiling(true).withMaxAllocatedBytesPerRecord(4096)
+        .withInputs(new GeneratedInputs(1000));
+    for (int i = 0; i < 10; i++) {
+      driver.withOutput(new Text("key" + i), new LongWritable(49500 + 100 * i));
+    }
+    driver.runTest();
+
+    // the copies of the outputs collected are not counted
+    final RunReport.PhaseReport map = driver.getRunReport().getPhase(
+        Phase.MAP);
+    assertEquals(2000, map.getCopies());
+    assertTrue(map.getAllocatedBytesPerInputRecord() < 4096);
+  }
+
+  @Test
+  public void testAllocationAccountingEndsWhenPhaseThrows() throws IOException {
+    driver = MapReduceDriver.newMapReduceDriver(new FailingMapper(), reducer);
+    driver.withAllocationProfiling(true).withInput(new Text("foo"),
+        new LongWritable(FOO_IN_A));
+    for (int i = 0; i < 3; i++) {
+      try {
+        driver.run();
+        fail();
+      } catch (final IllegalStateException e) {
+        assertEquals(FailingMapper.MESSAGE, e.getMessage());
+      }
+    }
+    assertFalse(AllocationAccounting.isAccounting());
+  }
+
+  static class FailingMapper extends IdentityMapper<Text, LongWritable> {
+    static final String MESSAGE = "map failed";
+
+    @Override
+    public void map(final Text key, final LongWritable value,
+        final OutputCollector<Text, LongWritable> output,
+        final Reporter reporter) {
+      throw new IllegalStateException(MESSAGE);
+    }
+  }
+
+  @Test
+  public void testMaxAllocatedBytesPerRecord() {
+    assumeTrue(AllocationAccounting.isSupported());
+    driver = MapReduceDriver.newMapReduceDriver(new AllocatingMapper(),
+        reducer);
+    driver.withMaxAllocatedBytesPerRecord(AllocatingMapper.BYTES / 2)
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withOutput(new Text("foo"), new LongWritable(FOO_IN_A));
+    thrown.expectAssertionErrorMessage("1 Error(s): (MAP phase allocated ");
+    driver.runTest();
+  }
+
+  static class AllocatingMapper extends IdentityMapper<Text, LongWritable> {
+    static final int BYTES = 1 << 20;
+    static volatile byte[] allocated;
+
+    @Override
+    public void map(final Text key, final LongWritable value,
+        final OutputCollector<Text, LongWritable> output,
+        final Reporter reporter) throws IOException {
+      allocated = new byte[BYTES];
+      super.map(key, value, output, reporter);
+    }
+  }
+
+  @Test
+  public void testMaxOutputAmplification() {
+    driver = MapReduceDriver.newMapReduceDriver(new DuplicatingMapper(),
+        reducer);
+    driver.withMaxOutputAmplification(1.5)
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withInput(new Text("bar"), new LongWritable(BAR_IN))
+        .withOutput(new Text("bar"), new LongWritable(2 * BAR_IN))
+        .withOutput(new Text("foo"), new LongWritable(2 * FOO_IN_A));
+    thrown.expectAssertionErrorMessage("1 Error(s): (MAP phase wrote 2.00 "
+        + "records per input record, more than the most of 1.50)");
+    driver.runTest();
+  }
+
+  static class DuplicatingMapper extends IdentityMapper<Text, LongWritable> {
+    @Override
+    public void map(final Text key, final LongWritable value,
+        final OutputCollector<Text, LongWritable> output,
+        final Reporter reporter) throws IOException {
+      super.map(key, value, output, reporter);
+      super.map(key, value, output, reporter);
+    }
+  }
+
+  @Test
+  public void testMaxRecordsLatency() {
+    driver = MapReduceDriver.newMapReduceDriver(new SlowKeyMapper(), reducer);
+    driver.withMaxRecordsLatency(1, TimeUnit.MILLISECONDS)
+        .withPerformanceRuns(0, 1)
+        .withInput(new Text(SlowKeyMapper.SLOW_KEY), new LongWritable(1))
+        .withOutput(new Text(SlowKeyMapper.SLOW_KEY), new LongWritable(1));
+    // a cold reduce call may be over the budget as well
+    thrown.expectAssertionErrorMessage("MAP phase p99 record latency of ");
+    driver.runTest();
+  }
+
+  @Test
+  public void testMinThroughput() {
+    driver.withMinThroughput(1e15)
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withOutput(new Text("foo"), new LongWritable(FOO_IN_A));
+    thrown.expectAssertionErrorMessage("1 Error(s): (Throughput of ");
+    driver.runTest();
+  }
+
+  @Test
+  public void testPerformanceBudgetsMet() {
+    driver = MapReduceDriver.newMapReduceDriver(new RecordCountingMapper(),
+        reducer);
+    // the counters are of the validated run, not of every run
+    driver.withMinThroughput(1).withMaxRecordsLatency(1, TimeUnit.MINUTES)
+        .withMaxOutputAmplification(1).withPerformanceRuns(1, 3)
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_B))
+        .withInput(new Text("bar"), new LongWritable(BAR_IN))
+        .withOutput(new Text("bar"), new LongWritable(BAR_IN))
+        .withOutput(new Text("foo"), new LongWritable(FOO_OUT))
+        .withCounter("mapper", "records", 3).runTest();
+    assertEquals(3, driver.getRunReport().getLatency(Phase.MAP).getCount());
+  }
+
+  @Test
+  public void testPerformanceBudgetsWithInputIterator() {
+    driver.withMinThroughput(1).withInputs(new GeneratedInputs(10));
+    thrown.expectMessage(IllegalStateException.class,
+        "Performance budgets need inputs added to the driver");
+    driver.runTest();
+  }
+
+  @Test
+  public void testInvalidPerformanceRuns() {
+    thrown.expectMessage(IllegalArgumentException.class,
+        "Need at least 0 warm up runs and 1 measured run, not 2 and 0");
+    driver.withPerformanceRuns(2, 0);
+  }
+
+  static void assertPhase(final RunReport report, final Phase phase,
+      final int tasks, final long inputRecords, final long outputRecords) {
+    final RunReport.PhaseReport phaseReport = report.getPhase(phase);
+    assertEquals(phase + " tasks", tasks, phaseReport.getTasks());
+    assertEquals(phase + " inputs", inputRecords,
+        phaseReport.getInputRecords());
+    assertEquals(phase + " outputs", outputRecords,
+        phaseReport.getOutputRecords());
+  }
+
+  @Test
+  public void testInputIteratorWithMapParallelism() {
+    driver.withMapParallelism(2).withInputs(new GeneratedInputs(10));
+    thrown.expectMessage(IllegalStateException.class,
+        "Map parallelism of 2 needs inputs added to the driver");
+    driver.runTest();
+  }
+
+  /**
+   * Generates (key(i % 10), i) inputs as they are read
+   */
+  public static class GeneratedInputs implements Iterator<Pair<Text, LongWritable>> {
+    private final int inputs;
+    private int next;
+
+    public GeneratedInputs(final int inputs) {
+      this.inputs = inputs;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next < inputs;
+    }
+
+    @Override
+    public Pair<Text, LongWritable> next() {
+      final int i = next++;
+      return new Pair<Text, LongWritable>(new Text("key" + i % 10),
+          new LongWritable(i));
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
   @Test
   public void testNoMapper() {
     driver = MapReduceDriver.newMapReduceDriver();
@@ -465,4 +1195,81 @@ public class TestMapReduceDriver {
     driver.withOutput(new LongWritable(), new Text("a\t3"));
     driver.runTest();
   }
+
+  @Test
+  public void testMapperConfiguredAndClosedOnce() throws IOException {
+    final LifecycleCountingMapper mapper = new LifecycleCountingMapper();
+    MapReduceDriver.newMapReduceDriver(mapper, reducer)
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withInput(new Text("bar"), new LongWritable(BAR_IN))
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_B))
+        .withOutput(new Text("bar"), new LongWritable(BAR_IN))
+        .withOutput(new Text("foo"), new LongWritable(FOO_OUT)).runTest();
+    assertEquals(1, mapper.configures);
+    assertEquals(3, mapper.maps);
+    assertEquals(1, mapper.closes);
+  }
+
+  static class LifecycleCountingMapper extends
+      IdentityMapper<Text, LongWritable> {
+    private int configures;
+    private int maps;
+    private int closes;
+
+    @Override
+    public void configure(final JobConf job) {
+      configures++;
+    }
+
+    @Override
+    public void map(final Text key, final LongWritable value,
+        final OutputCollector<Text, LongWritable> output,
+        final Reporter reporter) throws IOException {
+      maps++;
+      super.map(key, value, output, reporter);
+    }
+
+    @Override
+    public void close() {
+      closes++;
+    }
+  }
+
+  @Test
+  public void testReducerConfiguredAndClosedOnce() throws IOException {
+    final LifecycleCountingReducer reducer = new LifecycleCountingReducer();
+    MapReduceDriver.newMapReduceDriver(mapper, reducer)
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withInput(new Text("bar"), new LongWritable(BAR_IN))
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_B))
+        .withOutput(new Text("bar"), new LongWritable(BAR_IN))
+        .withOutput(new Text("foo"), new LongWritable(FOO_OUT)).runTest();
+    assertEquals(1, reducer.configures);
+    assertEquals(2, reducer.reduces);
+    assertEquals(1, reducer.closes);
+  }
+
+  static class LifecycleCountingReducer extends LongSumReducer<Text> {
+    private int configures;
+    private int reduces;
+    private int closes;
+
+    @Override
+    public void configure(final JobConf job) {
+      configures++;
+    }
+
+    @Override
+    public void reduce(final Text key, final Iterator<LongWritable> values,
+        final OutputCollector<Text, LongWritable> output,
+        final Reporter reporter) throws IOException {
+      reduces++;
+      super.reduce(key, values, output, reporter);
+    }
+
+    @Override
+    public void close() {
+      closes++;
+    }
+  }
 }
@@ -0,0 +1,187 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.lib.IdentityMapper;
+import org.apache.hadoop.mapred.lib.LongSumReducer;
+import org.apache.hadoop.mrunit.internal.util.AllocationAccounting;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestPerformanceBaseline {
+
+  private static final String KEY = keyOf(IdentityMapper.class);
+
+  @Rule
+  public final ExpectedSuppliedException thrown = ExpectedSuppliedException
+      .none();
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private File file;
+
+  @Before
+  public void setUp() {
+    file = new File(folder.getRoot(), "baseline/performance.properties");
+  }
+
+  private static String keyOf(final Class<?> mapperClass) {
+    return "test(" + mapperClass.getName() + ","
+        + LongSumReducer.class.getName() + ")";
+  }
+
+  private MapReduceDriver<Text, LongWritable, Text, LongWritable, Text, LongWritable> newDriver(
+      final Mapper<Text, LongWritable, Text, LongWritable> mapper) {
+    final MapReduceDriver<Text, LongWritable, Text, LongWritable, Text, LongWritable> driver = MapReduceDriver
+        .newMapReduceDriver(mapper, new LongSumReducer<Text>());
+    return driver.withPerformanceBaseline(file, "test")
+        .withPerformanceRuns(0, 1)
+        .withInput(new Text("foo"), new LongWritable(1))
+        .withInput(new Text("foo"), new LongWritable(2))
+        .withInput(new Text("bar"), new LongWritable(3))
+        .withOutput(new Text("bar"), new LongWritable(3))
+        .withOutput(new Text("foo"), new LongWritable(3));
+  }
+
+  private MapReduceDriver<Text, LongWritable, Text, LongWritable, Text, LongWritable> newDriver() {
+    return newDriver(new IdentityMapper<Text, LongWritable>());
+  }
+
+  private Properties load() throws IOException {
+    final Properties properties = new Properties();
+    final InputStream in = new FileInputStream(file);
+    try {
+      properties.load(in);
+    } finally {
+      in.close();
+    }
+    return properties;
+  }
+
+  private void store(final Properties properties) throws IOException {
+    final OutputStream out = new FileOutputStream(file);
+    try {
+      properties.store(out, null);
+    } finally {
+      out.close();
+    }
+  }
+
+  @Test
+  public void testFirstRunStoresMetrics() throws IOException {
+    newDriver().runTest();
+    final Properties properties = load();
+    assertEquals("3", properties.getProperty(KEY + ".MAP.inputRecords"));
+    assertEquals("2", properties.getProperty(KEY + ".REDUCE.outputRecords"));
+    assertEquals("0", properties.getProperty(KEY + ".shuffle.SPILLS"));
+    assertFalse(Double.isNaN(Double.parseDouble(properties
+        .getProperty(KEY + ".throughput"))));
+  }
+
+  @Test
+  public void testSameRunMatches() {
+    newDriver().runTest();
+    // a tolerance so a cold first run is not a throughput to keep up with
+    newDriver().withBaselineTolerance(1).runTest();
+  }
+
+  @Test
+  public void testRecordCountsMustMatch() {
+    newDriver().runTest();
+    thrown.expectAssertionErrorMessage(
+        "MAP.inputRecords of 4 differs from the baseline of 3");
+    newDriver().withBaselineTolerance(1)
+        .withInput(new Text("qux"), new LongWritable(4))
+        .withOutput(new Text("qux"), new LongWritable(4)).runTest();
+  }
+
+  @Test
+  public void testMetricsAreKeyedByClassesUnderTest() throws IOException {
+    newDriver().runTest();
+    final MapReduceDriver<Text, LongWritable, Text, LongWritable, Text, LongWritable> driver = newDriver(new TestMapReduceDriver.DuplicatingMapper());
+    driver.resetOutput();
+    driver.withOutput(new Text("bar"), new LongWritable(6))
+        .withOutput(new Text("foo"), new LongWritable(6)).runTest();
+
+    final Properties properties = load();
+    assertEquals("3", properties.getProperty(KEY + ".MAP.outputRecords"));
+    assertEquals("6", properties.getProperty(keyOf(
+        TestMapReduceDriver.DuplicatingMapper.class) + ".MAP.outputRecords"));
+  }
+
+  @Test
+  public void testThroughputRegression() throws IOException {
+    newDriver().runTest();
+    final Properties properties = load();
+    properties.setProperty(KEY + ".throughput", "1e15");
+    store(properties);
+    thrown.expectAssertionErrorMessage("Throughput of ");
+    newDriver().runTest();
+  }
+
+  @Test
+  public void testAllocationRegression() throws IOException {
+    assumeTrue(AllocationAccounting.isSupported());
+    newDriver(new TestMapReduceDriver.AllocatingMapper()).runTest();
+    final Properties properties = load();
+    properties.setProperty(keyOf(TestMapReduceDriver.AllocatingMapper.class)
+        + ".MAP.allocatedBytesPerRecord", "0");
+    store(properties);
+    thrown.expectAssertionErrorMessage("MAP.allocatedBytesPerRecord of ");
+    newDriver(new TestMapReduceDriver.AllocatingMapper())
+        .withBaselineTolerance(1).runTest();
+  }
+
+  @Test
+  public void testUpdate() throws IOException {
+    newDriver().runTest();
+    System.setProperty(PerformanceBaseline.UPDATE_PROPERTY, "true");
+    try {
+      newDriver().withInput(new Text("qux"), new LongWritable(4))
+          .withOutput(new Text("qux"), new LongWritable(4)).runTest();
+    } finally {
+      System.clearProperty(PerformanceBaseline.UPDATE_PROPERTY);
+    }
+    assertEquals("4", load().getProperty(KEY + ".MAP.inputRecords"));
+  }
+
+  @Test
+  public void testInvalidTolerance() {
+    thrown.expectMessage(IllegalArgumentException.class,
+        "The baseline tolerance must not be negative, not -1.0");
+    newDriver().withBaselineTolerance(-1);
+  }
+}
@@ -150,9 +150,9 @@ public class TestReduceDriver {
   @Test
   public void testTestRun5() {
     thrown
-        .expectAssertionErrorMessage("3 Error(s): (Missing expected output (foo, 6) at position 1., "
-            + "Missing expected output (foo, 4) at position 0., "
-            + "Received unexpected output (foo, 10) at position 0.)");
+        .expectAssertionErrorMessage("3 Error(s): (Missing expected output (foo, 4) at position 0., "
+            + "Received unexpected output (foo, 10) at position 0., "
+            + "Missing expected output (foo, 6) at position 1.)");
     driver.withInputKey(new Text("foo")).withInputValue(new LongWritable(IN_A))
         .withInputValue(new LongWritable(IN_B))
         .withOutput(new Text("foo"), new LongWritable(IN_A))
@@ -162,8 +162,8 @@ public class TestReduceDriver {
   @Test
   public void testTestRun5OrderInsensitive() {
     thrown
-        .expectAssertionErrorMessage("3 Error(s): (Missing expected output (foo, 6), "
-            + "Missing expected output (foo, 4), "
+        .expectAssertionErrorMessage("3 Error(s): (Missing expected output (foo, 4), "
+            + "Missing expected output (foo, 6), "
             + "Received unexpected output (foo, 10))");
     driver.withInputKey(new Text("foo")).withInputValue(new LongWritable(IN_A))
         .withInputValue(new LongWritable(IN_B))
@@ -171,6 +171,49 @@ public class TestReduceDriver {
         .withOutput(new Text("foo"), new LongWritable(IN_B)).runTest(false);
   }
 
+  @Test
+  public void testDuplicateOutputsOutOfOrder() {
+    thrown
+        .expectAssertionErrorMessage("2 Error(s): (Matched expected output (foo, 2) but at "
+            + "incorrect position 2 (expected position 0), "
+            + "Matched expected output (foo, 1) but at incorrect position 0 (expected position 2))");
+    driver.withReducer(new IdentityReducer<Text, LongWritable>())
+        .withInputKey(new Text("foo")).withInputValue(new LongWritable(1))
+        .withInputValue(new LongWritable(1))
+        .withInputValue(new LongWritable(2))
+        .withOutput(new Text("foo"), new LongWritable(2))
+        .withOutput(new Text("foo"), new LongWritable(1))
+        .withOutput(new Text("foo"), new LongWritable(1)).runTest(true);
+  }
+
+  @Test
+  public void testReportedErrorsAreCapped() {
+    thrown
+        .expectAssertionErrorMessage("5 Error(s): (Missing expected output (foo, 0), "
+            + "Missing expected output (foo, 1), and 3 more)");
+    driver.getConfiguration().setInt(TestDriver.MAX_REPORTED_ERRORS_KEY, 2);
+    driver.withReducer(new IdentityReducer<Text, LongWritable>())
+        .withInputKey(new Text("foo"));
+    for (int i = 0; i < 5; i++) {
+      driver.withOutput(new Text("foo"), new LongWritable(i));
+    }
+    driver.withInputValue(new LongWritable(10)).withOutput(new Text("foo"),
+        new LongWritable(10)).runTest(false);
+  }
+
+  @Test
+  public void testManyOutputsInAnyOrder() {
+    driver.withReducer(new IdentityReducer<Text, LongWritable>())
+        .withInputKey(new Text("foo"));
+    for (int i = 0; i < 10000; i++) {
+      driver.withInputValue(new LongWritable(i));
+    }
+    for (int i = 10000 - 1; i >= 0; i--) {
+      driver.withOutput(new Text("foo"), new LongWritable(i));
+    }
+    driver.runTest(false);
+  }
+
   @Test
   public void testTestRun6() {
     thrown
@@ -18,10 +18,24 @@
 package org.apache.hadoop.mrunit.internal.io;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mrunit.internal.io.Serialization;
+import org.apache.hadoop.mrunit.types.Immutable;
 import org.junit.Test;
 
 public class TestSerialization {
@@ -58,4 +72,217 @@ public class TestSerialization {
     assertEquals(new Integer(2), int2);
   }
 
+  @Test
+  public void testRepeatedCopiesOfMixedClasses() {
+    final Configuration conf = new Configuration();
+    conf.setStrings("io.serializations",
+        "org.apache.hadoop.io.serializer.WritableSerialization",
+        "org.apache.hadoop.io.serializer.JavaSerialization");
+    Serialization serialization = new Serialization(conf);
+    for (int i = 0; i < 3; i++) {
+      assertEquals(new Text("text" + i), serialization.copy(new Text("text"
+          + i)));
+      assertEquals(new Integer(i), serialization.copy(new Integer(i)));
+      assertEquals(new IntWritable(i), serialization.copy(new IntWritable(i)));
+      assertEquals("string" + i, serialization.copy("string" + i));
+    }
+  }
+
+  @Test
+  public void testCopyWithConfUsesNewConf() {
+    Serialization serialization = new Serialization(new Configuration());
+    assertEquals(new IntWritable(1), serialization.copy(new IntWritable(1)));
+    final Configuration conf = new Configuration();
+    conf.setStrings("io.serializations",
+        "org.apache.hadoop.io.serializer.JavaSerialization");
+    assertEquals(new Integer(1),
+        serialization.copyWithConf(new Integer(1), conf));
+  }
+
+  @Test
+  public void testCopyWithConfPicksUpChangedSerializations() {
+    final Configuration conf = new Configuration();
+    Serialization serialization = new Serialization(conf);
+    assertEquals(new IntWritable(1),
+        serialization.copyWithConf(new IntWritable(1), conf));
+    conf.setStrings("io.serializations",
+        "org.apache.hadoop.io.serializer.JavaSerialization");
+    assertEquals(new Integer(1),
+        serialization.copyWithConf(new Integer(1), conf));
+  }
+
+  @Test
+  public void testSmallCopyAfterLargeCopy() {
+    Serialization serialization = new Serialization(new Configuration());
+    final StringBuilder large = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      large.append(i);
+    }
+    assertEquals(new Text(large.toString()),
+        serialization.copy(new Text(large.toString())));
+    final int capacity = CopyBuffers.get().getCapacity();
+    assertEquals(new Text("small"), serialization.copy(new Text("small")));
+    assertEquals(capacity, CopyBuffers.get().getCapacity());
+  }
+
+  @Test
+  public void testBuffersArePerThread() throws InterruptedException {
+    final Serialization serialization = new Serialization(new Configuration());
+    assertEquals(new Text("main"), serialization.copy(new Text("main")));
+    final CopyBuffers mainBuffers = CopyBuffers.get();
+    assertSame(mainBuffers, CopyBuffers.get());
+
+    final AtomicReference<Object> result = new AtomicReference<Object>();
+    final Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          final Text copy = serialization.copy(new Text("other"));
+          result.set(CopyBuffers.get() == mainBuffers ? "shared buffers"
+              : copy);
+        } catch (final Throwable t) {
+          result.set(t);
+        }
+      }
+    };
+    thread.start();
+    thread.join();
+    assertEquals(new Text("other"), result.get());
+    assertEquals(new Text("main"), serialization.copy(new Text("main")));
+  }
+
+  @Test
+  public void testWritableWithPrivateConstructor() {
+    Serialization serialization = new Serialization(new Configuration());
+    final PrivateWritable orig = PrivateWritable.create(5);
+    final PrivateWritable copy = serialization.copy(orig);
+    assertNotSame(orig, copy);
+    assertEquals(5, copy.value);
+  }
+
+  @Test
+  public void testConfigurableWritableGetsConf() {
+    final Configuration conf = new Configuration();
+    Serialization serialization = new Serialization(conf);
+    final ConfigurableWritable copy = serialization
+        .copy(new ConfigurableWritable());
+    assertSame(conf, copy.getConf());
+  }
+
+  private static class PrivateWritable implements Writable {
+    private int value;
+
+    private PrivateWritable() {
+    }
+
+    static PrivateWritable create(final int value) {
+      final PrivateWritable writable = new PrivateWritable();
+      writable.value = value;
+      return writable;
+    }
+
+    @Override
+    public void write(final DataOutput out) throws IOException {
+      out.writeInt(value);
+    }
+
+    @Override
+    public void readFields(final DataInput in) throws IOException {
+      value = in.readInt();
+    }
+  }
+
+  public static class ConfigurableWritable implements Writable, Configurable {
+    private Configuration conf;
+
+    @Override
+    public void setConf(final Configuration conf) {
+      this.conf = conf;
+    }
+
+    @Override
+    public Configuration getConf() {
+      return conf;
+    }
+
+    @Override
+    public void write(final DataOutput out) throws IOException {
+    }
+
+    @Override
+    public void readFields(final DataInput in) throws IOException {
+    }
+  }
+
+  @Test
+  public void testImmutableTypesAreShared() {
+    Serialization serialization = new Serialization(new Configuration());
+    final String string = new String("string");
+    final Long number = new Long(1000);
+    assertSame(string, serialization.copy(string));
+    assertSame(number, serialization.copy(number));
+    assertSame(NullWritable.get(), serialization.copy(NullWritable.get()));
+    assertSame(TimeUnit.SECONDS, serialization.copy(TimeUnit.SECONDS));
+    assertSame(string, serialization.copy(string, new String("other")));
+  }
+
+  @Test
+  public void testAnnotatedImmutableTypeIsShared() {
+    Serialization serialization = new Serialization(new Configuration());
+    final ImmutableWritable orig = new ImmutableWritable();
+    assertSame(orig, serialization.copy(orig));
+  }
+
+  @Test
+  public void testConfiguredImmutableTypeIsShared() {
+    final Configuration conf = new Configuration();
+    Serialization serialization = new Serialization(conf);
+    final Text text = new Text("text");
+    assertNotSame(text, serialization.copyWithConf(text, conf));
+    conf.setStrings("mrunit.copy.immutable.classes", Text.class.getName());
+    assertSame(text, serialization.copyWithConf(text, conf));
+  }
+
+  @Test
+  public void testConfiguredCopierFactoryComesFirst() {
+    final Configuration conf = new Configuration();
+    conf.setStrings(Serialization.COPIER_FACTORIES_KEY,
+        TextCopierFactory.class.getName());
+    Serialization serialization = new Serialization(conf);
+    assertEquals(new Text(TextCopierFactory.COPY),
+        serialization.copy(new Text("text")));
+    // classes the factory leaves alone get the built-in copiers
+    assertEquals(new IntWritable(1), serialization.copy(new IntWritable(1)));
+  }
+
+  public static class TextCopierFactory implements CopierFactory {
+    static final String COPY = "copied by the factory";
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Copier<T> newCopier(final Class<T> clazz,
+        final Configuration conf) {
+      if (clazz != Text.class) {
+        return null;
+      }
+      return (Copier<T>) new Copier<Text>() {
+        @Override
+        public Text copy(final Text orig, final Text copy) {
+          return new Text(COPY);
+        }
+      };
+    }
+  }
+
+  @Immutable
+  public static class ImmutableWritable implements Writable {
+    @Override
+    public void write(final DataOutput out) throws IOException {
+    }
+
+    @Override
+    public void readFields(final DataInput in) throws IOException {
+    }
+  }
+
 }
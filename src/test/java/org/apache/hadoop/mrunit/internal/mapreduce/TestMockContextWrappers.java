@@ -0,0 +1,197 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.mapreduce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mrunit.ExpectedSuppliedException;
+import org.apache.hadoop.mrunit.internal.output.MockOutputCollector;
+import org.apache.hadoop.mrunit.types.Pair;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestMockContextWrappers {
+
+  @Rule
+  public final ExpectedSuppliedException thrown = ExpectedSuppliedException
+      .none();
+
+  private final Configuration conf = new Configuration();
+  private final Counters counters = new Counters();
+
+  @Test
+  public void testMapContextIsNotMock() throws IOException,
+      InterruptedException {
+    final List<Pair<Text, IntWritable>> inputs = new ArrayList<Pair<Text, IntWritable>>();
+    inputs.add(new Pair<Text, IntWritable>(new Text("a"), new IntWritable(1)));
+    inputs.add(new Pair<Text, IntWritable>(new Text("b"), new IntWritable(2)));
+    final MockOutputCollector<Text, IntWritable> output = new MockOutputCollector<Text, IntWritable>(
+        conf);
+    final Mapper<Text, IntWritable, Text, IntWritable>.Context context = new MockMapContextWrapper<Text, IntWritable, Text, IntWritable>(
+        inputs, counters, conf, output).getMockContext();
+
+    // mocks return null for anything not stubbed
+    assertNotNull(context.getTaskAttemptID());
+    assertTrue(context.nextKeyValue());
+    assertEquals(new Text("a"), context.getCurrentKey());
+    context.write(context.getCurrentKey(), context.getCurrentValue());
+    assertTrue(context.nextKeyValue());
+    assertEquals(new IntWritable(2), context.getCurrentValue());
+    assertFalse(context.nextKeyValue());
+    context.getCounter("group", "name").increment(3);
+
+    assertEquals(Arrays.asList(new Pair<Text, IntWritable>(new Text("a"),
+        new IntWritable(1))), output.getOutputs());
+    assertEquals(3, counters.findCounter("group", "name").getValue());
+    assertEquals("MockInputSplit", context.getInputSplit().toString());
+  }
+
+  @Test
+  public void testReduceContextIsNotMockForWritables() throws IOException,
+      InterruptedException {
+    final List<Pair<Text, List<LongWritable>>> inputs = new ArrayList<Pair<Text, List<LongWritable>>>();
+    inputs.add(new Pair<Text, List<LongWritable>>(new Text("a"), Arrays
+        .asList(new LongWritable(1), new LongWritable(2))));
+    inputs.add(new Pair<Text, List<LongWritable>>(new Text("b"), Arrays
+        .asList(new LongWritable(3))));
+    final Reducer<Text, LongWritable, Text, LongWritable>.Context context = new MockReduceContextWrapper<Text, LongWritable, Text, LongWritable>(
+        inputs, counters, conf,
+        new MockOutputCollector<Text, LongWritable>(conf)).getMockContext();
+
+    assertNotNull(context.getTaskAttemptID());
+    assertTrue(context.nextKey());
+    assertEquals(new Text("a"), context.getCurrentKey());
+    final List<Long> values = new ArrayList<Long>();
+    for (final LongWritable value : context.getValues()) {
+      values.add(value.get());
+    }
+    assertEquals(Arrays.asList(1L, 2L), values);
+    assertTrue(context.nextKey());
+    assertEquals(new Text("b"), context.getCurrentKey());
+    assertEquals(new LongWritable(3), context.getValues().iterator().next());
+    assertFalse(context.nextKey());
+  }
+
+  @Test
+  public void testReduceContextIsMockForMixedValueClasses()
+      throws IOException, InterruptedException {
+    final List<Object> mixed = Arrays.<Object> asList(new LongWritable(1),
+        new Text("2"));
+    final List<Pair<Text, List<Object>>> inputs = new ArrayList<Pair<Text, List<Object>>>();
+    inputs.add(new Pair<Text, List<Object>>(new Text("a"), mixed));
+    final Reducer<Text, Object, Text, Object>.Context context = new MockReduceContextWrapper<Text, Object, Text, Object>(
+        inputs, counters, conf, new MockOutputCollector<Text, Object>(conf))
+        .getMockContext();
+
+    assertNull(context.getTaskAttemptID());
+    assertTrue(context.nextKey());
+    final List<Object> values = new ArrayList<Object>();
+    for (final Object value : context.getValues()) {
+      values.add(value);
+    }
+    assertEquals(mixed, values);
+    assertEquals(1, inputs.size());
+  }
+
+  @Test
+  public void testMapInputsNotModified() throws IOException,
+      InterruptedException {
+    final List<Pair<Text, Text>> inputs = new ArrayList<Pair<Text, Text>>();
+    inputs.add(new Pair<Text, Text>(new Text("a"), new Text("b")));
+    final Mapper<Text, Text, Text, Text>.Context context = new MockMapContextWrapper<Text, Text, Text, Text>(
+        inputs, counters, conf, new MockOutputCollector<Text, Text>(conf))
+        .getMockContext();
+    assertTrue(context.nextKeyValue());
+    assertFalse(context.nextKeyValue());
+    assertEquals(1, inputs.size());
+  }
+
+  @Test
+  public void testReduceInputsFromIterator() throws IOException,
+      InterruptedException {
+    final Iterator<Pair<Text, List<LongWritable>>> inputs = new Iterator<Pair<Text, List<LongWritable>>>() {
+      private int next;
+
+      @Override
+      public boolean hasNext() {
+        return next < 3;
+      }
+
+      @Override
+      public Pair<Text, List<LongWritable>> next() {
+        next++;
+        return new Pair<Text, List<LongWritable>>(new Text("k" + next),
+            Arrays.asList(new LongWritable(next)));
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+    final Reducer<Text, LongWritable, Text, LongWritable>.Context context = new MockReduceContextWrapper<Text, LongWritable, Text, LongWritable>(
+        inputs, counters, conf,
+        new MockOutputCollector<Text, LongWritable>(conf)).getMockContext();
+    long sum = 0;
+    int keys = 0;
+    while (context.nextKey()) {
+      keys++;
+      for (final LongWritable value : context.getValues()) {
+        sum += value.get();
+      }
+    }
+    assertEquals(3, keys);
+    assertEquals(6, sum);
+  }
+
+  @Test
+  public void testReduceInputsFromIteratorOfMixedClasses()
+      throws IOException, InterruptedException {
+    final List<Pair<Text, List<Writable>>> inputs = new ArrayList<Pair<Text, List<Writable>>>();
+    inputs.add(new Pair<Text, List<Writable>>(new Text("a"), Arrays
+        .<Writable> asList(new LongWritable(1))));
+    inputs.add(new Pair<Text, List<Writable>>(new Text("b"), Arrays
+        .<Writable> asList(new Text("2"))));
+    final Reducer<Text, Writable, Text, Writable>.Context context = new MockReduceContextWrapper<Text, Writable, Text, Writable>(
+        inputs.iterator(), counters, conf,
+        new MockOutputCollector<Text, Writable>(conf)).getMockContext();
+    thrown.expectMessage(IllegalStateException.class,
+        "Reduce input 2 is a org.apache.hadoop.io.Text");
+    while (context.nextKey()) {
+      context.getValues().iterator().next();
+    }
+  }
+}
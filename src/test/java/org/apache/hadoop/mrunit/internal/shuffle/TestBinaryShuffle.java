@@ -0,0 +1,301 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.shuffle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mrunit.ExpectedSuppliedException;
+import org.apache.hadoop.mrunit.types.Pair;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestBinaryShuffle {
+
+  @Rule
+  public final ExpectedSuppliedException thrown = ExpectedSuppliedException
+      .none();
+
+  @Rule
+  public final TemporaryFolder tmp = new TemporaryFolder();
+
+  /** groups Text keys by their first byte */
+  private static final RawComparator<Text> FIRST_BYTE_COMPARATOR = new RawComparator<Text>() {
+    @Override
+    public int compare(final byte[] b1, final int s1, final int l1,
+        final byte[] b2, final int s2, final int l2) {
+      return WritableComparator.compareBytes(b1,
+          s1 + WritableUtils.decodeVIntSize(b1[s1]), 1, b2,
+          s2 + WritableUtils.decodeVIntSize(b2[s2]), 1);
+    }
+
+    @Override
+    public int compare(final Text o1, final Text o2) {
+      throw new UnsupportedOperationException();
+    }
+  };
+
+  private static BinaryShuffle<Text, LongWritable> shuffle(
+      final RawComparator<Text> groupComparator, final String... keys)
+      throws IOException {
+    final BinaryShuffle<Text, LongWritable> shuffle = new BinaryShuffle<Text, LongWritable>(
+        new Configuration(), null, groupComparator, 0);
+    for (int i = 0; i < keys.length; i++) {
+      shuffle.collect(new Text(keys[i]), new LongWritable(i));
+    }
+    return shuffle;
+  }
+
+  private static void assertGroup(final String key, final List<Long> values,
+      final Pair<Text, List<LongWritable>> group) {
+    assertEquals(new Text(key), group.getFirst());
+    assertEquals(values.size(), group.getSecond().size());
+    for (int i = 0; i < values.size(); i++) {
+      assertEquals(new LongWritable(values.get(i)), group.getSecond().get(i));
+    }
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    assertFalse(shuffle(null).getGroups().hasNext());
+  }
+
+  @Test
+  public void testSortedByKeyWithValuesInOrderCollected() throws IOException {
+    final Iterator<Pair<Text, List<LongWritable>>> groups = shuffle(null,
+        "b", "a", "c", "b", "a").getGroups();
+    assertGroup("a", Arrays.asList(1L, 4L), groups.next());
+    assertGroup("b", Arrays.asList(0L, 3L), groups.next());
+    assertGroup("c", Arrays.asList(2L), groups.next());
+    assertFalse(groups.hasNext());
+  }
+
+  @Test
+  public void testGroupingComparator() throws IOException {
+    final Iterator<Pair<Text, List<LongWritable>>> groups = shuffle(
+        FIRST_BYTE_COMPARATOR, "b2", "a2", "b1", "a1", "c").getGroups();
+    // each group has its first key in sort order
+    assertGroup("a1", Arrays.asList(3L, 1L), groups.next());
+    assertGroup("b1", Arrays.asList(2L, 0L), groups.next());
+    assertGroup("c", Arrays.asList(4L), groups.next());
+    assertFalse(groups.hasNext());
+  }
+
+  @Test
+  public void testGroupingComparatorFromConfiguration() throws IOException {
+    final Configuration conf = new Configuration();
+    conf.setClass("mapred.output.value.groupfn.class",
+        FirstByteComparator.class, RawComparator.class);
+    final BinaryShuffle<Text, LongWritable> shuffle = new BinaryShuffle<Text, LongWritable>(
+        conf, null, null, 0);
+    shuffle.collect(new Text("a2"), new LongWritable(0));
+    shuffle.collect(new Text("a1"), new LongWritable(1));
+    final Iterator<Pair<Text, List<LongWritable>>> groups = shuffle
+        .getGroups();
+    assertGroup("a1", Arrays.asList(1L, 0L), groups.next());
+    assertFalse(groups.hasNext());
+  }
+
+  public static class FirstByteComparator extends WritableComparator {
+    public FirstByteComparator() {
+      super(Text.class);
+    }
+
+    @Override
+    public int compare(final byte[] b1, final int s1, final int l1,
+        final byte[] b2, final int s2, final int l2) {
+      return FIRST_BYTE_COMPARATOR.compare(b1, s1, l1, b2, s2, l2);
+    }
+  }
+
+  private static BinaryShuffle<Text, LongWritable> spillingShuffle(
+      final Configuration conf, final String... keys) throws IOException {
+    // spills after every record
+    final BinaryShuffle<Text, LongWritable> shuffle = new BinaryShuffle<Text, LongWritable>(
+        conf, null, null, 1);
+    for (int i = 0; i < keys.length; i++) {
+      shuffle.collect(new Text(keys[i]), new LongWritable(i));
+    }
+    return shuffle;
+  }
+
+  @Test
+  public void testSpillsMerged() throws IOException {
+    final BinaryShuffle<Text, LongWritable> shuffle = spillingShuffle(
+        new Configuration(), "b", "a", "c", "b", "a");
+    final Iterator<Pair<Text, List<LongWritable>>> groups = shuffle
+        .getGroups();
+    assertGroup("a", Arrays.asList(1L, 4L), groups.next());
+    assertGroup("b", Arrays.asList(0L, 3L), groups.next());
+    assertGroup("c", Arrays.asList(2L), groups.next());
+    assertFalse(groups.hasNext());
+    assertEquals(5, shuffle.getSpills());
+    assertEquals(5, shuffle.getSpilledRecords());
+    // a one byte vint length and one byte of Text, and a long
+    assertEquals(5 * (2 + 8), shuffle.getSpilledBytes());
+  }
+
+  @Test
+  public void testSpillsMergedInPasses() throws IOException {
+    final Configuration conf = new Configuration();
+    conf.setInt("io.sort.factor", 2);
+    final BinaryShuffle<Text, LongWritable> shuffle = spillingShuffle(conf,
+        "b", "a", "c", "b", "a");
+    final Iterator<Pair<Text, List<LongWritable>>> groups = shuffle
+        .getGroups();
+    assertGroup("a", Arrays.asList(1L, 4L), groups.next());
+    assertGroup("b", Arrays.asList(0L, 3L), groups.next());
+    assertGroup("c", Arrays.asList(2L), groups.next());
+    assertFalse(groups.hasNext());
+    assertEquals(5, shuffle.getSpills());
+    // down to one spill to read with the records in memory: spills 0 and 1
+    // merged, then 2 and 3, then those two merges, then that and spill 4
+    assertEquals(5 + 2 + 2 + 3 + 5, shuffle.getSpilledRecords());
+  }
+
+  @Test
+  public void testSpillsMergedSmallestFirst() throws IOException {
+    final Configuration conf = new Configuration();
+    conf.setInt("io.sort.factor", 3);
+    final BinaryShuffle<Text, LongWritable> shuffle = spillingShuffle(conf,
+        "b", "a", "c", "b", "a", "c", "a", "b", "c");
+    final Iterator<Pair<Text, List<LongWritable>>> groups = shuffle
+        .getGroups();
+    assertGroup("a", Arrays.asList(1L, 4L, 6L), groups.next());
+    assertGroup("b", Arrays.asList(0L, 3L, 7L), groups.next());
+    assertGroup("c", Arrays.asList(2L, 5L, 8L), groups.next());
+    assertFalse(groups.hasNext());
+    // a first pass of 2 spills, so the passes of 3 after it leave 2 spills
+    // to read with the records in memory, merging the fewest bytes each time
+    assertEquals(9 + 2 + 3 + 3 + 7, shuffle.getSpilledRecords());
+  }
+
+  @Test
+  public void testSpillsDeletedAfterLastGroup() throws IOException {
+    final int spillDirs = countSpillDirs();
+    final Iterator<Pair<Text, List<LongWritable>>> groups = spillingShuffle(
+        tmpDirConf(), "b", "a").getGroups();
+    assertEquals(spillDirs + 1, countSpillDirs());
+    groups.next();
+    groups.next();
+    assertEquals(spillDirs, countSpillDirs());
+  }
+
+  @Test
+  public void testSpillsDeletedOnClose() throws IOException {
+    final int spillDirs = countSpillDirs();
+    final BinaryShuffle<Text, LongWritable> shuffle = spillingShuffle(
+        tmpDirConf(), "b", "a");
+    shuffle.getGroups().next();
+    shuffle.close();
+    assertEquals(spillDirs, countSpillDirs());
+  }
+
+  @Test
+  public void testSpillsUnderHadoopTmpDir() throws IOException {
+    final File tmpDir = new File(tmp.getRoot(), "hadoop/tmp");
+    final Configuration conf = new Configuration();
+    conf.set("hadoop.tmp.dir", tmpDir.toString());
+    final BinaryShuffle<Text, LongWritable> shuffle = spillingShuffle(conf,
+        "b", "a");
+    // the missing parents are created
+    final String[] dirs = tmpDir.list();
+    assertEquals(1, dirs.length);
+    assertTrue(dirs[0].startsWith("mrunit-shuffle-"));
+    shuffle.close();
+    assertEquals(0, tmpDir.list().length);
+  }
+
+  /**
+   * @return a configuration that spills under the temporary folder
+   */
+  private Configuration tmpDirConf() {
+    final Configuration conf = new Configuration();
+    conf.set("hadoop.tmp.dir", tmp.getRoot().toString());
+    return conf;
+  }
+
+  private int countSpillDirs() {
+    final String[] dirs = tmp.getRoot().list(new FilenameFilter() {
+      @Override
+      public boolean accept(final File dir, final String name) {
+        return name.startsWith("mrunit-shuffle-");
+      }
+    });
+    assertTrue(dirs != null);
+    return dirs.length;
+  }
+
+  @Test
+  public void testValueIterationReusesInstance() throws IOException {
+    final List<LongWritable> values = shuffle(null, "a", "a").getGroups()
+        .next().getSecond();
+    final Iterator<LongWritable> iterator = values.iterator();
+    final LongWritable first = iterator.next();
+    assertEquals(new LongWritable(0), first);
+    assertSame(first, iterator.next());
+    assertEquals(new LongWritable(1), first);
+
+    assertNotSame(values.get(0), values.get(1));
+    assertEquals(Arrays.asList(new LongWritable(0), new LongWritable(1)),
+        Arrays.asList(values.toArray()));
+  }
+
+  @Test
+  public void testMixedClasses() throws IOException {
+    final BinaryShuffle<Object, Object> shuffle = new BinaryShuffle<Object, Object>(
+        new Configuration(), null, null, 0);
+    shuffle.collect(new Text("a"), new LongWritable(0));
+    thrown.expectMessage(IllegalStateException.class,
+        "Map output 1 is a org.apache.hadoop.io.IntWritable but earlier "
+            + "outputs were org.apache.hadoop.io.LongWritable, "
+            + "the binary shuffle needs map outputs of a single class");
+    shuffle.collect(new Text("b"), new IntWritable(1));
+  }
+
+  @Test
+  public void testKeyWithoutRawComparator() throws IOException {
+    final Configuration conf = new Configuration();
+    conf.setStrings("io.serializations", conf.get("io.serializations"),
+        "org.apache.hadoop.io.serializer.JavaSerialization");
+    final BinaryShuffle<Integer, LongWritable> shuffle = new BinaryShuffle<Integer, LongWritable>(
+        conf, null, null, 0);
+    thrown.expectMessage(IllegalStateException.class,
+        "No RawComparator for map output key java.lang.Integer, "
+            + "set one with setKeyOrderComparator or in the configuration");
+    shuffle.collect(1, new LongWritable(0));
+  }
+}
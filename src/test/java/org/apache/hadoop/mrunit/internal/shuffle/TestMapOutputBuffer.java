@@ -0,0 +1,244 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.internal.shuffle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mrunit.ExpectedSuppliedException;
+import org.apache.hadoop.mrunit.types.Pair;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestMapOutputBuffer {
+
+  @Rule
+  public final ExpectedSuppliedException thrown = ExpectedSuppliedException
+      .none();
+
+  @Rule
+  public final TemporaryFolder tmp = new TemporaryFolder();
+
+  /**
+   * the spill percent of a 1MB buffer at which a Text of one byte and a long,
+   * 26 bytes with the record metadata, spill every third record
+   */
+  private static final float THREE_RECORD_SPILL_PERCENT = 0.00006f;
+
+  /** sums the values of each key, counting the spills it is run over */
+  private static class SummingCombiner implements Combiner<Text, LongWritable> {
+    private int runs;
+
+    @Override
+    public void combine(final Iterator<Pair<Text, List<LongWritable>>> groups,
+        final OutputCollector<Text, LongWritable> output) throws IOException {
+      runs++;
+      while (groups.hasNext()) {
+        final Pair<Text, List<LongWritable>> group = groups.next();
+        long sum = 0;
+        for (final LongWritable value : group.getSecond()) {
+          sum += value.get();
+        }
+        output.collect(group.getFirst(), new LongWritable(sum));
+      }
+    }
+  }
+
+  private static class ListCollector implements
+      OutputCollector<Text, LongWritable> {
+    private final List<Pair<Text, LongWritable>> outputs = new ArrayList<Pair<Text, LongWritable>>();
+
+    @Override
+    public void collect(final Text key, final LongWritable value) {
+      outputs.add(new Pair<Text, LongWritable>(key, value));
+    }
+  }
+
+  private Configuration threeRecordSpills() {
+    final Configuration conf = tmpDirConf();
+    conf.setInt("io.sort.mb", 1);
+    conf.setFloat("io.sort.spill.percent", THREE_RECORD_SPILL_PERCENT);
+    return conf;
+  }
+
+  /**
+   * @return the outputs of a buffer given each key with its index as value
+   */
+  private static List<Pair<Text, LongWritable>> flush(
+      final MapOutputBuffer<Text, LongWritable> buffer, final String... keys)
+      throws IOException {
+    for (int i = 0; i < keys.length; i++) {
+      buffer.collect(new Text(keys[i]), new LongWritable(i));
+    }
+    final ListCollector output = new ListCollector();
+    try {
+      buffer.flush(output);
+    } finally {
+      buffer.close();
+    }
+    return output.outputs;
+  }
+
+  private static void assertOutputs(
+      final List<Pair<Text, LongWritable>> outputs, final Object... expected) {
+    assertEquals(expected.length / 2, outputs.size());
+    for (int i = 0; i < outputs.size(); i++) {
+      assertEquals(new Text((String) expected[2 * i]), outputs.get(i)
+          .getFirst());
+      assertEquals(
+          new LongWritable(((Number) expected[2 * i + 1]).longValue()),
+          outputs.get(i).getSecond());
+    }
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    final MapOutputBuffer<Text, LongWritable> buffer = new MapOutputBuffer<Text, LongWritable>(
+        new Configuration(), null, null);
+    assertEquals(0, flush(buffer).size());
+    assertEquals(0, buffer.getSpills());
+  }
+
+  @Test
+  public void testSortedWithoutCombiner() throws IOException {
+    final MapOutputBuffer<Text, LongWritable> buffer = new MapOutputBuffer<Text, LongWritable>(
+        new Configuration(), null, null);
+    assertOutputs(flush(buffer, "b", "a", "c", "b", "a"), "a", 1, "a", 4,
+        "b", 0, "b", 3, "c", 2);
+    assertEquals(1, buffer.getSpills());
+    assertEquals(5, buffer.getSpilledRecords());
+    // a one byte vint length and one byte of Text, and a long
+    assertEquals(5 * (2 + 8), buffer.getSpilledBytes());
+  }
+
+  @Test
+  public void testCombinedInMemory() throws IOException {
+    final SummingCombiner combiner = new SummingCombiner();
+    final int spillDirs = countSpillDirs();
+    final MapOutputBuffer<Text, LongWritable> buffer = new MapOutputBuffer<Text, LongWritable>(
+        tmpDirConf(), null, combiner);
+    assertOutputs(flush(buffer, "b", "a", "c", "b", "a"), "a", 5, "b", 3,
+        "c", 2);
+    assertEquals(1, combiner.runs);
+    assertEquals(1, buffer.getSpills());
+    assertEquals(3, buffer.getSpilledRecords());
+    assertEquals(spillDirs, countSpillDirs());
+  }
+
+  @Test
+  public void testSpillsCombinedAndMergeCombined() throws IOException {
+    final SummingCombiner combiner = new SummingCombiner();
+    final MapOutputBuffer<Text, LongWritable> buffer = new MapOutputBuffer<Text, LongWritable>(
+        threeRecordSpills(), null, combiner);
+    // spills of a0 b1 a2, b3 a4 b5 and a6
+    assertOutputs(flush(buffer, "a", "b", "a", "b", "a", "b", "a"), "a",
+        0 + 2 + 4 + 6, "b", 1 + 3 + 5);
+    // once for each spill and again for the merge of three spills
+    assertEquals(4, combiner.runs);
+    assertEquals(3, buffer.getSpills());
+    // two records in each of the first two spills, one in the last and two
+    // in the output
+    assertEquals(2 + 2 + 1 + 2, buffer.getSpilledRecords());
+    assertEquals((2 + 2 + 1 + 2) * (2 + 8), buffer.getSpilledBytes());
+  }
+
+  @Test
+  public void testMergeNotCombinedBelowMinSpills() throws IOException {
+    final Configuration conf = threeRecordSpills();
+    conf.setInt("min.num.spills.for.combine", 4);
+    final SummingCombiner combiner = new SummingCombiner();
+    final MapOutputBuffer<Text, LongWritable> buffer = new MapOutputBuffer<Text, LongWritable>(
+        conf, null, combiner);
+    assertOutputs(flush(buffer, "a", "b", "a", "b", "a", "b", "a"), "a", 2,
+        "a", 4, "a", 6, "b", 1, "b", 8);
+    assertEquals(3, combiner.runs);
+    assertEquals(2 + 2 + 1 + 5, buffer.getSpilledRecords());
+  }
+
+  @Test
+  public void testSingleSpillNotRewritten() throws IOException {
+    final MapOutputBuffer<Text, LongWritable> buffer = new MapOutputBuffer<Text, LongWritable>(
+        threeRecordSpills(), null, null);
+    assertOutputs(flush(buffer, "b", "a", "c"), "a", 1, "b", 0, "c", 2);
+    assertEquals(1, buffer.getSpills());
+    assertEquals(3, buffer.getSpilledRecords());
+  }
+
+  @Test
+  public void testSpillsDeletedOnClose() throws IOException {
+    final int spillDirs = countSpillDirs();
+    final MapOutputBuffer<Text, LongWritable> buffer = new MapOutputBuffer<Text, LongWritable>(
+        threeRecordSpills(), null, null);
+    for (int i = 0; i < 3; i++) {
+      buffer.collect(new Text("a"), new LongWritable(i));
+    }
+    assertEquals(spillDirs + 1, countSpillDirs());
+    buffer.close();
+    assertEquals(spillDirs, countSpillDirs());
+  }
+
+  /**
+   * @return a configuration that spills under the temporary folder
+   */
+  private Configuration tmpDirConf() {
+    final Configuration conf = new Configuration();
+    conf.set("hadoop.tmp.dir", tmp.getRoot().toString());
+    return conf;
+  }
+
+  private int countSpillDirs() {
+    final String[] dirs = tmp.getRoot().list(new FilenameFilter() {
+      @Override
+      public boolean accept(final File dir, final String name) {
+        return name.startsWith("mrunit-map-");
+      }
+    });
+    assertTrue(dirs != null);
+    return dirs.length;
+  }
+
+  @Test
+  public void testInvalidSpillPercent() {
+    final Configuration conf = new Configuration();
+    conf.setFloat("io.sort.spill.percent", 1.5f);
+    thrown.expectMessage(IllegalStateException.class,
+        "Invalid \"io.sort.spill.percent\": 1.5");
+    new MapOutputBuffer<Text, LongWritable>(conf, null, null);
+  }
+
+  @Test
+  public void testInvalidSortMb() {
+    final Configuration conf = new Configuration();
+    conf.setInt("io.sort.mb", 2048);
+    thrown.expectMessage(IllegalStateException.class,
+        "Invalid \"io.sort.mb\": 2048");
+    new MapOutputBuffer<Text, LongWritable>(conf, null, null);
+  }
+}
@@ -22,6 +22,7 @@ import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.hadoop.conf.Configuration;
@@ -37,6 +38,10 @@ import org.apache.hadoop.mapreduce.lib.map.InverseMapper;
 import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.apache.hadoop.mrunit.ExpectedSuppliedException;
+import org.apache.hadoop.mrunit.RunReport;
+import org.apache.hadoop.mrunit.RunReport.Phase;
+import org.apache.hadoop.mrunit.internal.output.DigestOutputCollector;
+import org.apache.hadoop.mrunit.types.OutputDigest;
 import org.apache.hadoop.mrunit.types.Pair;
 import org.junit.Before;
 import org.junit.Rule;
@@ -68,6 +73,29 @@ public class TestMapDriver {
     assertListEquals(out, expected);
   }
 
+  @Test
+  public void testExpectedOutputDigest() throws IOException {
+    final OutputDigest digest = DigestOutputCollector.digest(Arrays.asList(
+        new Pair<Text, Text>(new Text("foo"), new Text("bar"))),
+        driver.getConfiguration());
+    driver.withInput(new Text("foo"), new Text("bar"))
+        .withExpectedOutputDigest(digest).runTest();
+    assertEquals(digest, driver.getOutputDigest());
+    // only the digest of the outputs is kept
+    assertEquals(0, driver.run().size());
+  }
+
+  @Test
+  public void testExpectedOutputDigestMismatch() throws IOException {
+    final OutputDigest digest = DigestOutputCollector.digest(Arrays.asList(
+        new Pair<Text, Text>(new Text("foo"), new Text("baz"))),
+        driver.getConfiguration());
+    thrown.expectAssertionErrorMessage("1 Error(s): (Mismatch in output "
+        + "records: expected digest " + digest);
+    driver.withInput(new Text("foo"), new Text("bar"))
+        .withExpectedOutputDigest(digest).runTest();
+  }
+
   @Test
   public void testTestRun1() {
     driver.withInput(new Text("foo"), new Text("bar"))
@@ -158,8 +186,8 @@ public class TestMapDriver {
   @Test
   public void testTestRun7() {
     thrown
-        .expectAssertionErrorMessage("2 Error(s): (Matched expected output (foo, bar) but at "
-            + "incorrect position 0 (expected position 1), Missing expected output (someotherkey, bar) at position 0.)");
+        .expectAssertionErrorMessage("2 Error(s): (Missing expected output (someotherkey, bar) at position 0., "
+            + "Matched expected output (foo, bar) but at incorrect position 0 (expected position 1))");
     driver.withInput(new Text("foo"), new Text("bar"))
         .withOutput(new Text("someotherkey"), new Text("bar"))
         .withOutput(new Text("foo"), new Text("bar")).runTest(true);
@@ -313,6 +341,35 @@ public class TestMapDriver {
     driver.runTest();
   }
 
+  @Test
+  public void testRunReportCountsCopiedBytes() {
+    driver.withInput(new Text("a"), new Text("1"));
+    driver.withOutput(new Text("a"), new Text("1"));
+    driver.runTest();
+
+    // the output key and value copied, 2 bytes each
+    final RunReport report = driver.getRunReport();
+    assertEquals(2, report.getPhase(Phase.MAP).getCopies());
+    assertEquals(4, report.getPhase(Phase.MAP).getBytes());
+  }
+
+  @Test
+  public void testRunReportWithOutputFormat() {
+    driver.withOutputFormat(SequenceFileOutputFormat.class,
+        SequenceFileInputFormat.class);
+    driver.withInput(new Text("a"), new Text("1"));
+    driver.withOutput(new Text("a"), new Text("1"));
+    driver.runTest();
+
+    final RunReport report = driver.getRunReport();
+    assertEquals(1, report.getPhase(Phase.MAP).getTasks());
+    assertEquals(1, report.getPhase(Phase.MAP).getInputRecords());
+    assertEquals(1, report.getPhase(Phase.MAP).getOutputRecords());
+    assertEquals(1, report.getPhase(Phase.OUTPUT_FORMAT).getTasks());
+    assertEquals(1, report.getPhase(Phase.VALIDATE).getTasks());
+    assertEquals(0, report.getPhase(Phase.REDUCE).getTasks());
+  }
+
   @Test
   public void testOutputFormatWithMismatchInOutputClasses() {
     final MapDriver<Text, Text, LongWritable, Text> driver = MapDriver
@@ -19,10 +19,17 @@ package org.apache.hadoop.mrunit.mapreduce;
 
 import static org.apache.hadoop.mrunit.ExtendedAssert.assertListEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.io.DataOutput;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.IntWritable;
@@ -30,7 +37,9 @@ import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.RawComparator;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Partitioner;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
@@ -40,8 +49,15 @@ import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.apache.hadoop.mapreduce.lib.reduce.IntSumReducer;
 import org.apache.hadoop.mapreduce.lib.reduce.LongSumReducer;
 import org.apache.hadoop.mrunit.ExpectedSuppliedException;
+import org.apache.hadoop.mrunit.LatencyHistogram;
+import org.apache.hadoop.mrunit.RunReport.Phase;
+import org.apache.hadoop.mrunit.MapReduceDriverBase;
+import org.apache.hadoop.mrunit.ShuffleCounters;
 import org.apache.hadoop.mrunit.mapreduce.TestMapDriver.ConfigurationMapper;
 import org.apache.hadoop.mrunit.mapreduce.TestReduceDriver.ConfigurationReducer;
+import org.apache.hadoop.mrunit.TestMapReduceDriver.GeneratedInputs;
+import org.apache.hadoop.mrunit.types.InstanceFactory;
+import org.apache.hadoop.mrunit.types.OutputSink;
 import org.apache.hadoop.mrunit.types.Pair;
 import org.junit.Before;
 import org.junit.Rule;
@@ -345,6 +361,286 @@ public class TestMapReduceDriver {
         .withOutput(new Text("foo"), new LongWritable(FOO_OUT)).runTest();
   }
 
+  @Test
+  public void testBinaryShuffle() {
+    driver.getConfiguration().setBoolean(
+        MapReduceDriverBase.BINARY_SHUFFLE_KEY, true);
+    driver.withCombiner(new LongSumReducer<Text>())
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withInput(new Text("bar"), new LongWritable(BAR_IN))
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_B))
+        .withOutput(new Text("bar"), new LongWritable(BAR_IN))
+        .withOutput(new Text("foo"), new LongWritable(FOO_OUT)).runTest();
+  }
+
+  @Test
+  public void testBinaryShuffleHandsReducerShuffledBytes() throws IOException {
+    driver.getConfiguration().setBoolean(
+        MapReduceDriverBase.BINARY_SHUFFLE_KEY, true);
+    driver.withInput(new Text("foo"), new WriteCountingWritable(FOO_IN_A))
+        .withInput(new Text("bar"), new WriteCountingWritable(BAR_IN))
+        .withInput(new Text("foo"), new WriteCountingWritable(FOO_IN_B));
+    WriteCountingWritable.writes = 0;
+    assertListEquals(Arrays.asList(
+        new Pair<Text, LongWritable>(new Text("bar"), new LongWritable(BAR_IN)),
+        new Pair<Text, LongWritable>(new Text("foo"), new LongWritable(FOO_OUT))),
+        driver.run());
+    // each map output is written once as it is shuffled, the reduce context
+    // reads the shuffled bytes rather than writing the values again
+    assertEquals(3, WriteCountingWritable.writes);
+  }
+
+  public static class WriteCountingWritable extends LongWritable {
+    static int writes;
+
+    public WriteCountingWritable() {
+    }
+
+    WriteCountingWritable(final long value) {
+      super(value);
+    }
+
+    @Override
+    public void write(final DataOutput out) throws IOException {
+      writes++;
+      super.write(out);
+    }
+  }
+
+  @Test
+  public void testBinaryShuffleSpills() {
+    driver.getConfiguration().setBoolean(
+        MapReduceDriverBase.BINARY_SHUFFLE_KEY, true);
+    // spills after every map output
+    driver.getConfiguration().setLong(
+        MapReduceDriverBase.SHUFFLE_MEMORY_BYTES_KEY, 1);
+    driver.withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withInput(new Text("bar"), new LongWritable(BAR_IN))
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_B))
+        .withOutput(new Text("bar"), new LongWritable(BAR_IN))
+        .withOutput(new Text("foo"), new LongWritable(FOO_OUT))
+        .withCounter(ShuffleCounters.SPILLS, 3)
+        .withCounter(ShuffleCounters.SPILLED_RECORDS, 3)
+        .withCounter(ShuffleCounters.SPILLED_BYTES, 3 * (4 + 8)).runTest();
+  }
+
+  @Test
+  public void testMapSortBuffer() {
+    driver.getConfiguration().setBoolean(
+        MapReduceDriverBase.MAP_SORT_BUFFER_KEY, true);
+    // spills every second map output
+    driver.getConfiguration().setInt("io.sort.mb", 1);
+    driver.getConfiguration().setFloat("io.sort.spill.percent", 0.00005f);
+    driver.withCombiner(new LongSumReducer<Text>())
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withInput(new Text("bar"), new LongWritable(BAR_IN))
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_B))
+        .withOutput(new Text("bar"), new LongWritable(BAR_IN))
+        .withOutput(new Text("foo"), new LongWritable(FOO_OUT))
+        .withCounter(ShuffleCounters.MAP_SPILLS, 2)
+        // the combined first spill, the second and their merge
+        .withCounter(ShuffleCounters.MAP_SPILLED_RECORDS, 2 + 1 + 3)
+        .withCounter(ShuffleCounters.MAP_SPILLED_BYTES, (2 + 1 + 3) * (4 + 8))
+        .runTest();
+  }
+
+  @Test
+  public void testMapParallelism() {
+    final MapReduceDriver<Text, LongWritable, Text, LongWritable, Text, LongWritable> parallel = MapReduceDriver
+        .newMapReduceDriver(new SetupCountingMapper(),
+            new Reducer<Text, LongWritable, Text, LongWritable>());
+    parallel.withMapParallelism(3);
+    for (int i = 0; i < 7; i++) {
+      parallel.withInput(new Text("a"), new LongWritable(i));
+    }
+    // the values of the key stay in input order across the splits
+    for (int i = 0; i < 7; i++) {
+      parallel.withOutput(new Text("a"), new LongWritable(i));
+    }
+    // set up once for each split
+    parallel.withCounter("mapper", "setups", 3).runTest();
+  }
+
+  @Test
+  public void testMapParallelismWithBinaryShuffle() {
+    driver = MapReduceDriver.newMapReduceDriver(new SetupCountingMapper(),
+        reducer);
+    driver.getConfiguration().setBoolean(
+        MapReduceDriverBase.BINARY_SHUFFLE_KEY, true);
+    driver.withMapParallelism(5)
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withInput(new Text("bar"), new LongWritable(BAR_IN))
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_B))
+        .withOutput(new Text("bar"), new LongWritable(BAR_IN))
+        .withOutput(new Text("foo"), new LongWritable(FOO_OUT))
+        // no more splits than inputs
+        .withCounter("mapper", "setups", 3).runTest();
+  }
+
+  @Test
+  public void testMapParallelismWithMapperFactory() {
+    final AtomicInteger created = new AtomicInteger();
+    driver = MapReduceDriver.newMapReduceDriver(new OffsetMapper(10),
+        new Reducer<Text, LongWritable, Text, LongWritable>());
+    driver.withMapParallelism(2)
+        .withMapperFactory(new InstanceFactory<OffsetMapper>() {
+          @Override
+          public OffsetMapper newInstance() {
+            created.incrementAndGet();
+            return new OffsetMapper(10);
+          }
+        }).withInput(new Text("a"), new LongWritable(1))
+        .withInput(new Text("a"), new LongWritable(2))
+        .withInput(new Text("b"), new LongWritable(3))
+        .withOutput(new Text("a"), new LongWritable(11))
+        .withOutput(new Text("a"), new LongWritable(12))
+        .withOutput(new Text("b"), new LongWritable(13)).runTest();
+    assertEquals(2, created.get());
+  }
+
+  /**
+   * Adds an offset given to its constructor to each value
+   */
+  static class OffsetMapper extends
+      Mapper<Text, LongWritable, Text, LongWritable> {
+    private final long offset;
+
+    OffsetMapper(final long offset) {
+      this.offset = offset;
+    }
+
+    @Override
+    protected void map(final Text key, final LongWritable value,
+        final Context context) throws IOException, InterruptedException {
+      context.write(key, new LongWritable(value.get() + offset));
+    }
+  }
+
+  static class SetupCountingMapper extends
+      Mapper<Text, LongWritable, Text, LongWritable> {
+    @Override
+    protected void setup(final Context context) {
+      context.getCounter("mapper", "setups").increment(1);
+    }
+  }
+
+  @Test
+  public void testReducePartitionsWithReducerFactory() throws IOException {
+    final AtomicInteger created = new AtomicInteger();
+    final Job job = new Job();
+    job.setPartitionerClass(KeyLengthPartitioner.class);
+    job.getConfiguration().setInt("mapreduce.job.reduces", 3);
+    driver = MapReduceDriver.newMapReduceDriver(mapper,
+        new LongSumReducer<Text>() {
+        });
+    driver.withConfiguration(job.getConfiguration())
+        .withReducerFactory(new InstanceFactory<LongSumReducer<Text>>() {
+          @Override
+          public LongSumReducer<Text> newInstance() {
+            created.incrementAndGet();
+            return new LongSumReducer<Text>();
+          }
+        }).withInput(new Text("ccc"), new LongWritable(3))
+        .withInput(new Text("aa"), new LongWritable(1))
+        .withInput(new Text("b"), new LongWritable(2))
+        .withInput(new Text("aa"), new LongWritable(4))
+        .withOutput(new Text("b"), new LongWritable(2))
+        .withOutput(new Text("aa"), new LongWritable(5))
+        .withOutput(new Text("ccc"), new LongWritable(3)).runTest();
+    assertEquals(3, created.get());
+  }
+
+  @Test
+  public void testReducePartitions() throws IOException {
+    final Job job = new Job();
+    job.setPartitionerClass(KeyLengthPartitioner.class);
+    job.getConfiguration().setInt("mapreduce.job.reduces", 3);
+    driver = MapReduceDriver.newMapReduceDriver(mapper,
+        new SetupCountingReducer());
+    driver.withConfiguration(job.getConfiguration())
+        .withInput(new Text("ccc"), new LongWritable(3))
+        .withInput(new Text("aa"), new LongWritable(1))
+        .withInput(new Text("b"), new LongWritable(2))
+        .withInput(new Text("aa"), new LongWritable(4))
+        .withInput(new Text("c"), new LongWritable(5))
+        // partition by partition
+        .withOutput(new Text("b"), new LongWritable(2))
+        .withOutput(new Text("c"), new LongWritable(5))
+        .withOutput(new Text("aa"), new LongWritable(5))
+        .withOutput(new Text("ccc"), new LongWritable(3))
+        // a reducer for each partition
+        .withCounter("reducer", "setups", 3).runTest();
+
+    final List<List<Pair<Text, LongWritable>>> partitions = driver
+        .getPartitionOutputs();
+    assertEquals(3, partitions.size());
+    assertEquals(2, partitions.get(0).size());
+  }
+
+  @Test
+  public void testReducePartitionsWithBinaryShuffle() throws IOException {
+    final Job job = new Job();
+    job.setNumReduceTasks(2);
+    job.setPartitionerClass(KeyLengthPartitioner.class);
+    job.getConfiguration().setBoolean(MapReduceDriverBase.BINARY_SHUFFLE_KEY,
+        true);
+    driver = MapReduceDriver.newMapReduceDriver(mapper,
+        new SetupCountingReducer(), reducer);
+    driver.withConfiguration(job.getConfiguration())
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withInput(new Text("b"), new LongWritable(BAR_IN))
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_B))
+        .withOutput(new Text("b"), new LongWritable(BAR_IN))
+        .withOutput(new Text("foo"), new LongWritable(FOO_OUT))
+        .withCounter("reducer", "setups", 2).runTest();
+  }
+
+  /**
+   * Partitions by key length, 1 to numPartitions, wrapping around
+   */
+  public static class KeyLengthPartitioner extends
+      Partitioner<Text, LongWritable> {
+    @Override
+    public int getPartition(final Text key, final LongWritable value,
+        final int numPartitions) {
+      return (key.getLength() - 1) % numPartitions;
+    }
+  }
+
+  static class SetupCountingReducer extends LongSumReducer<Text> {
+    @Override
+    protected void setup(final Context context) {
+      context.getCounter("reducer", "setups").increment(1);
+    }
+  }
+
+  @Test
+  public void testInputIteratorAndOutputSink() throws IOException {
+    final Job job = new Job();
+    job.setNumReduceTasks(2);
+    job.getConfiguration().setBoolean(MapReduceDriverBase.BINARY_SHUFFLE_KEY,
+        true);
+    driver.withConfiguration(job.getConfiguration()).withInputs(
+        new GeneratedInputs(100000));
+    final List<Pair<Text, LongWritable>> outputs = new ArrayList<Pair<Text, LongWritable>>();
+    driver.run(new OutputSink<Text, LongWritable>() {
+      @Override
+      public void collect(final Text key, final LongWritable value) {
+        outputs.add(new Pair<Text, LongWritable>(new Text(key),
+            new LongWritable(value.get())));
+      }
+    });
+    assertEquals(10, outputs.size());
+    for (final Pair<Text, LongWritable> output : outputs) {
+      final int key = Integer.parseInt(output.getFirst().toString()
+          .substring(3));
+      // the sum of key, key + 10, ... up to 100000
+      assertEquals(499950000L + key * 10000L, output.getSecond().get());
+    }
+    assertEquals(2, driver.getPartitionOutputs().size());
+    assertEquals(0, driver.getPartitionOutputs().get(0).size());
+  }
+
   @Test
   public void testNoMapper() {
     driver = MapReduceDriver.newMapReduceDriver();
@@ -433,4 +729,141 @@ public class TestMapReduceDriver {
     driver.withOutput(new LongWritable(), new Text("a\t3"));
     driver.runTest();
   }
+
+  @Test
+  public void testMapperSetupAndCleanupRunOnce() throws IOException {
+    final LifecycleCountingMapper mapper = new LifecycleCountingMapper();
+    MapReduceDriver.newMapReduceDriver(mapper, reducer)
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withInput(new Text("bar"), new LongWritable(BAR_IN))
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_B))
+        .withOutput(new Text("bar"), new LongWritable(BAR_IN))
+        .withOutput(new Text("foo"), new LongWritable(FOO_OUT)).runTest();
+    assertEquals(1, mapper.setups);
+    assertEquals(3, mapper.maps);
+    assertEquals(1, mapper.cleanups);
+  }
+
+  static class LifecycleCountingMapper extends
+      Mapper<Text, LongWritable, Text, LongWritable> {
+    private int setups;
+    private int maps;
+    private int cleanups;
+
+    @Override
+    protected void setup(final Context context) {
+      setups++;
+    }
+
+    @Override
+    protected void map(final Text key, final LongWritable value,
+        final Context context) throws IOException, InterruptedException {
+      maps++;
+      context.write(key, value);
+    }
+
+    @Override
+    protected void cleanup(final Context context) {
+      cleanups++;
+    }
+  }
+
+  @Test
+  public void testReducerSetupAndCleanupRunOnce() throws IOException {
+    final LifecycleCountingReducer reducer = new LifecycleCountingReducer();
+    MapReduceDriver.newMapReduceDriver(mapper, reducer)
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withInput(new Text("bar"), new LongWritable(BAR_IN))
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_B))
+        .withOutput(new Text("bar"), new LongWritable(BAR_IN))
+        .withOutput(new Text("foo"), new LongWritable(FOO_OUT)).runTest();
+    assertEquals(1, reducer.setups);
+    assertEquals(2, reducer.reduces);
+    assertEquals(1, reducer.cleanups);
+  }
+
+  static class LifecycleCountingReducer extends LongSumReducer<Text> {
+    private int setups;
+    private int reduces;
+    private int cleanups;
+
+    @Override
+    protected void setup(final Context context) {
+      setups++;
+    }
+
+    @Override
+    public void reduce(final Text key, final Iterable<LongWritable> values,
+        final Context context)
+        throws IOException, InterruptedException {
+      reduces++;
+      super.reduce(key, values, context);
+    }
+
+    @Override
+    protected void cleanup(final Context context) {
+      cleanups++;
+    }
+  }
+
+  @Test
+  public void testRecordLatency() throws IOException {
+    final MapReduceDriver<Text, LongWritable, Text, LongWritable, Text, LongWritable> slow = MapReduceDriver
+        .newMapReduceDriver(mapper, new SlowKeyReducer());
+    slow.withRecordLatency(2).withMapParallelism(2)
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withInput(new Text(SlowKeyReducer.SLOW_KEY), new LongWritable(1))
+        .withInput(new Text("bar"), new LongWritable(BAR_IN))
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_B)).run();
+
+    // the latencies of both splits added together
+    assertEquals(4, slow.getRunReport().getLatency(Phase.MAP).getCount());
+    final LatencyHistogram reduce = slow.getRunReport().getLatency(
+        Phase.REDUCE);
+    assertEquals(3, reduce.getCount());
+    assertEquals(2, reduce.getSlowest().size());
+    assertEquals(SlowKeyReducer.SLOW_KEY, reduce.getSlowest().get(0).getKey());
+    assertTrue(reduce.getPercentileNanos(100) >= SlowKeyReducer.SLOW_MILLIS
+        * 1000000L);
+  }
+
+  @Test
+  public void testRecordLatencyOnHadoopReduceContext() throws IOException {
+    final KeyInstanceReducer instances = new KeyInstanceReducer();
+    final MapReduceDriver<Text, LongWritable, Text, LongWritable, Text, LongWritable> timed = MapReduceDriver
+        .newMapReduceDriver(mapper, instances);
+    timed.withRecordLatency(1)
+        .withInput(new Text("foo"), new LongWritable(FOO_IN_A))
+        .withInput(new Text("bar"), new LongWritable(BAR_IN)).run();
+
+    // the Hadoop reduce context deserializes every key into one instance
+    assertEquals(1, instances.keys.size());
+    assertEquals(2, timed.getRunReport().getLatency(Phase.REDUCE).getCount());
+  }
+
+  static class KeyInstanceReducer extends
+      Reducer<Text, LongWritable, Text, LongWritable> {
+    final Set<Text> keys = Collections
+        .newSetFromMap(new IdentityHashMap<Text, Boolean>());
+
+    @Override
+    protected void reduce(final Text key,
+        final Iterable<LongWritable> values, final Context context) {
+      keys.add(key);
+    }
+  }
+
+  static class SlowKeyReducer extends LongSumReducer<Text> {
+    static final String SLOW_KEY = "slow";
+    static final long SLOW_MILLIS = 20;
+
+    @Override
+    public void reduce(final Text key, final Iterable<LongWritable> values,
+        final Context context) throws IOException, InterruptedException {
+      if (key.toString().equals(SLOW_KEY)) {
+        Thread.sleep(SLOW_MILLIS);
+      }
+      super.reduce(key, values, context);
+    }
+  }
 }
@@ -150,9 +150,9 @@ public class TestReduceDriver {
   @Test
   public void testTestRun5() {
     thrown
-        .expectAssertionErrorMessage("3 Error(s): (Missing expected output (foo, 6) at position 1., "
-            + "Missing expected output (foo, 4) at position 0., "
-            + "Received unexpected output (foo, 10) at position 0.)");
+        .expectAssertionErrorMessage("3 Error(s): (Missing expected output (foo, 4) at position 0., "
+            + "Received unexpected output (foo, 10) at position 0., "
+            + "Missing expected output (foo, 6) at position 1.)");
     driver.withInputKey(new Text("foo")).withInputValue(new LongWritable(IN_A))
         .withInputValue(new LongWritable(IN_B))
         .withOutput(new Text("foo"), new LongWritable(IN_A))
@@ -162,8 +162,8 @@ public class TestReduceDriver {
   @Test
   public void testTestRun5OrderInsensitive() {
     thrown
-        .expectAssertionErrorMessage("3 Error(s): (Missing expected output (foo, 6), "
-            + "Missing expected output (foo, 4), "
+        .expectAssertionErrorMessage("3 Error(s): (Missing expected output (foo, 4), "
+            + "Missing expected output (foo, 6), "
             + "Received unexpected output (foo, 10))");
     driver.withInputKey(new Text("foo")).withInputValue(new LongWritable(IN_A))
         .withInputValue(new LongWritable(IN_B))
@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mrunit.types;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mrunit.internal.output.DigestOutputCollector;
+import org.junit.Test;
+
+public class TestOutputDigest {
+
+  private final Configuration conf = new Configuration();
+
+  private final Pair<Text, IntWritable> a = new Pair<Text, IntWritable>(
+      new Text("a"), new IntWritable(1));
+  private final Pair<Text, IntWritable> b = new Pair<Text, IntWritable>(
+      new Text("b"), new IntWritable(2));
+  private final Pair<Text, IntWritable> c = new Pair<Text, IntWritable>(
+      new Text("c"), new IntWritable(3));
+
+  @Test
+  public void testFollowedBy() throws IOException {
+    final OutputDigest all = DigestOutputCollector.digest(
+        Arrays.asList(a, b, c), conf);
+    assertEquals(all, DigestOutputCollector.digest(Arrays.asList(a), conf)
+        .followedBy(DigestOutputCollector.digest(Arrays.asList(b, c), conf)));
+    assertEquals(all, DigestOutputCollector.digest(Arrays.asList(a, b), conf)
+        .followedBy(DigestOutputCollector.digest(Arrays.asList(c), conf)));
+    // 3 records of 2 bytes of text and 4 of int
+    assertEquals(3, all.getRecords());
+    assertEquals(18, all.getBytes());
+  }
+
+  @Test
+  public void testOrder() throws IOException {
+    final OutputDigest abc = DigestOutputCollector.digest(
+        Arrays.asList(a, b, c), conf);
+    final OutputDigest cba = DigestOutputCollector.digest(
+        Arrays.asList(c, b, a), conf);
+    assertEquals(abc.getUnorderedHash(), cba.getUnorderedHash());
+    assertFalse(abc.getOrderedHash() == cba.getOrderedHash());
+    assertFalse(abc.equals(cba));
+  }
+
+  @Test
+  public void testKeyValueBoundary() throws IOException {
+    // the same bytes split differently between key and value
+    final OutputDigest ab = DigestOutputCollector.digest(
+        Arrays.asList(new Pair<Text, Text>(new Text("ab"), new Text(""))),
+        conf);
+    final OutputDigest a_b = DigestOutputCollector.digest(
+        Arrays.asList(new Pair<Text, Text>(new Text("a"), new Text("b"))),
+        conf);
+    assertFalse(ab.getUnorderedHash() == a_b.getUnorderedHash());
+  }
+}